@@ -0,0 +1,287 @@
+package se.cha.chip8.screen;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Collections;
+
+/**
+ * UDP listener thread receiving packets through a non-blocking {@link DatagramChannel} into one reused buffer.
+ * <p>
+ * When packets arrive, all packets queued in the socket receive buffer are drained (up to {@link #MAX_PACKETS_PER_DRAIN})
+ * before the burst is ended, so a processor can coalesce the packets of a burst instead of falling behind.
+ * <p>
+ * The receive buffer is one byte larger than the maximum datagram size, the channel silently discards what does not
+ * fit in the buffer, so a packet filling the whole buffer is a truncated packet. Truncated packets are counted and dropped.
+ * Messages that do not decode are dropped by the processor, and counted in the {@link Metrics}; the decoders reject
+ * sizes no message can have before allocating anything, see {@link PeripheralStateDecoder.InvalidMessageException}.
+ * A packet the processor fails on with a runtime exception is counted and dropped here, and the listener goes on with
+ * the next packet. Errors, like running out of memory, are not caught.
+ * <p>
+ * With a multicast group configured the listener joins the group, so one packet sent by the emulator to the group
+ * reaches every screen listening to the group. The port is bound with SO_REUSEADDR, so several screens on the same
+ * host can listen to the same group and port.
+ * <p>
+ * With a capture file configured, every packet passed on is also written to the file, see {@link PacketCaptureWriter}.
+ */
+public abstract class AbstractUdpMessageListener implements Runnable {
+
+    static final int MAX_PACKETS_PER_DRAIN = 64;
+
+    /**
+     * Largest possible UDP payload.
+     */
+    public static final int MAX_UDP_PAYLOAD_SIZE = 65507;
+
+    private static final long REPORT_INTERVAL_NANOS = 10_000_000_000L;
+
+    private final int port;
+    private final int maxDatagramSize;
+    private final boolean printStatistics;
+    private final ByteBuffer receiveBuffer;
+    private DatagramChannel udpListeningChannel;
+    private Selector selector;
+    private ReceiveStatistics statistics;
+    private PacketCaptureWriter capture = null;
+    private long lastReport;
+    private volatile boolean continueListen = true;
+
+    /**
+     * Uses the listener port, socket receive buffer size, max datagram size, multicast group and interface,
+     * and whether to print statistics, of the configuration.
+     *
+     * @param directBuffer receive into a direct buffer, instead of a heap buffer backed by an array
+     */
+    protected AbstractUdpMessageListener(Configuration configuration, boolean directBuffer) {
+        this.port = configuration.getListenerPort();
+        this.maxDatagramSize = Math.max(1, Math.min(configuration.getMaxDatagramSize(), MAX_UDP_PAYLOAD_SIZE));
+        this.printStatistics = configuration.isFrameStatistics();
+        if (configuration.getCaptureFile() != null) {
+            try {
+                capture = new PacketCaptureWriter(new File(configuration.getCaptureFile()));
+            } catch (IOException e) {
+                System.err.println("Could not open packet capture file " + configuration.getCaptureFile() + ": " + e.getMessage());
+            }
+        }
+        receiveBuffer = directBuffer ? ByteBuffer.allocateDirect(this.maxDatagramSize + 1) : ByteBuffer.allocate(this.maxDatagramSize + 1);
+
+        final int receiveBufferSize = configuration.getReceiveBufferSize();
+        final InetAddress multicastGroup = configuration.getMulticastGroup();
+        try {
+            if (multicastGroup != null) {
+                udpListeningChannel = DatagramChannel.open((multicastGroup instanceof Inet6Address) ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+                udpListeningChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            } else {
+                udpListeningChannel = DatagramChannel.open();
+            }
+            if (receiveBufferSize > 0) {
+                udpListeningChannel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+                final int actualReceiveBufferSize = udpListeningChannel.getOption(StandardSocketOptions.SO_RCVBUF);
+                if (actualReceiveBufferSize < receiveBufferSize) {
+                    System.err.println("Socket receive buffer size is " + actualReceiveBufferSize + " bytes, not the requested "
+                            + receiveBufferSize + " bytes. The system limits the size (net.core.rmem_max on Linux).");
+                }
+            }
+            udpListeningChannel.bind(new InetSocketAddress(port));
+            if (multicastGroup != null) {
+                final NetworkInterface networkInterface = (configuration.getMulticastInterface() != null)
+                        ? configuration.getMulticastInterface() : defaultMulticastInterface();
+                udpListeningChannel.join(multicastGroup, networkInterface);
+                System.out.println("Joined multicast group " + multicastGroup.getHostAddress() + " on interface " + networkInterface.getName());
+            }
+            udpListeningChannel.configureBlocking(false);
+            selector = Selector.open();
+            udpListeningChannel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            System.err.println("Listen channel setup: " + port);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The first network interface that is up and supports multicast, preferring interfaces that are not loopback.
+     */
+    static NetworkInterface defaultMulticastInterface() throws SocketException {
+        NetworkInterface loopbackInterface = null;
+        for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!networkInterface.isUp()) {
+                continue;
+            }
+
+            if (networkInterface.isLoopback()) {
+                loopbackInterface = networkInterface;
+            } else if (networkInterface.supportsMulticast()) {
+                return networkInterface;
+            }
+        }
+
+        if (loopbackInterface == null) {
+            throw new SocketException("No network interface for multicast found.");
+        }
+
+        return loopbackInterface;
+    }
+
+    /**
+     * The buffer packets are received into, reused for every packet.
+     */
+    protected ByteBuffer getReceiveBuffer() {
+        return receiveBuffer;
+    }
+
+    /**
+     * A packet was received into the receive buffer, from position 0 to the given length.
+     *
+     * @param source       the address the packet was sent from
+     * @param receiveNanos the time the packet was received, {@link System#nanoTime()}
+     */
+    protected abstract void onPacketReceived(ByteBuffer receiveBuffer, int length, SocketAddress source, long receiveNanos);
+
+    /**
+     * All received packets are passed to {@link #onPacketReceived(ByteBuffer, int, SocketAddress, long)}, a burst of packets has ended.
+     */
+    protected abstract void onPacketsDrained();
+
+    public void stop() {
+        continueListen = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Receive counters, only to be read by the listener thread.
+     */
+    public ReceiveStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public void run() {
+        statistics = new ReceiveStatistics(port, System.nanoTime());
+        lastReport = System.nanoTime();
+
+        while (continueListen) {
+            try {
+                if (printStatistics) {
+                    selector.select(REPORT_INTERVAL_NANOS / 1_000_000);
+                    printReportIfDue();
+                } else {
+                    selector.select();
+                }
+                selector.selectedKeys().clear();
+                if (continueListen) {
+                    drain();
+                }
+            } catch (IOException e) {
+                if (continueListen) {
+                    System.out.println("UDP listener caught an exception during receive: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        try {
+            udpListeningChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (capture != null) {
+            closeCapture();
+        }
+
+        System.out.println("Ending UDP listener thread.");
+    }
+
+    private void printReportIfDue() {
+        final long now = System.nanoTime();
+        if (now - lastReport >= REPORT_INTERVAL_NANOS) {
+            System.out.println(statistics.report(now));
+            lastReport = now;
+        }
+    }
+
+    /**
+     * Receive the packets queued in the socket receive buffer, without waiting for more.
+     */
+    private void drain() throws IOException {
+        int packetCount = 0;
+        while (packetCount < MAX_PACKETS_PER_DRAIN) {
+            receiveBuffer.clear();
+            final SocketAddress source = udpListeningChannel.receive(receiveBuffer);
+            if (source == null) {
+                break;
+            }
+            final long receiveNanos = System.nanoTime();
+            packetCount++;
+
+            final int length = receiveBuffer.position();
+            if (length > maxDatagramSize) {
+                if (statistics.getTruncatedCount() == 0) {
+                    System.err.println("Dropped a packet larger than the maximum datagram size of " + maxDatagramSize + " bytes.");
+                }
+                statistics.packetTruncated();
+                continue;
+            }
+
+            statistics.packetReceived(length);
+            if (capture != null) {
+                capturePacket(receiveNanos, length, source);
+            }
+            try {
+                onPacketReceived(receiveBuffer, length, source, receiveNanos);
+            } catch (RuntimeException e) {
+                packetFailed(e);
+            }
+        }
+
+        if (packetCount > 0) {
+            if (capture != null) {
+                capture.endBurst();
+            }
+            try {
+                onPacketsDrained();
+            } catch (RuntimeException e) {
+                packetFailed(e);
+            }
+        }
+    }
+
+    private void packetFailed(RuntimeException e) {
+        if (statistics.getFailedCount() == 0) {
+            System.err.println("Dropped a packet that could not be processed, further failed packets are only counted: " + e);
+            e.printStackTrace();
+        }
+        statistics.packetFailed();
+    }
+
+    private void capturePacket(long receiveNanos, int length, SocketAddress source) {
+        try {
+            capture.write(receiveNanos, receiveBuffer, length, source);
+        } catch (IOException e) {
+            System.err.println("Packet capture failed, no more packets are captured: " + e.getMessage());
+            closeCapture();
+        }
+    }
+
+    private void closeCapture() {
+        try {
+            capture.close();
+            System.out.println("Captured " + capture.getPacketCount() + " packets.");
+        } catch (IOException e) {
+            System.err.println("Could not close packet capture file: " + e.getMessage());
+        }
+        capture = null;
+    }
+}
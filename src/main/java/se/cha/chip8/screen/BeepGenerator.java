@@ -5,16 +5,17 @@ import javax.sound.sampled.*;
 public class BeepGenerator extends Thread {
 
     private static final int FREQUENCY = 44100;
-    private static final byte[] SAMPLE_BUFFER = new byte[2]; // A two byte buffer, as we flashingly will add a harmonic (one octave higher) to the sine sound wave
     private static final AudioFormat AUDIO_FORMAT = new AudioFormat(FREQUENCY, 8, 2, true, false);
 
     private static SourceDataLine sourceDataLine;
     private static BeepGenerator beepGenerator;
+    private static volatile boolean beeping = false; // The line is started, running or starved
 
     private boolean stop = false;
 
     private final int hz;
     private final double volume;
+    private final Metrics metrics = Metrics.get(); // Null unless metrics are on
 
 
     private BeepGenerator(int hz, double volume) {
@@ -43,14 +44,17 @@ public class BeepGenerator extends Thread {
         }
 
         sourceDataLine.start();
+        beeping = true;
     }
 
     public synchronized static void pauseBeep() {
+        beeping = false;
         sourceDataLine.stop();
     }
 
     public synchronized static void stopBeepGenerator() {
         // Stop audio beep. Clear that source data line and end it.
+        beeping = false;
         sourceDataLine.stop();
 
         if (beepGenerator != null) {
@@ -71,9 +75,30 @@ public class BeepGenerator extends Thread {
         }
     }
 
+    /**
+     * Synthesize two channel samples of a sine wave, with a harmonic (one octave higher) in the second channel.
+     *
+     * @param sampleBuffer   destination, two bytes per sample
+     * @param sampleCount    number of samples to synthesize
+     * @param soundWaveIndex sample index to start at
+     * @return the sample index to continue at
+     */
+    static int synthesize(byte[] sampleBuffer, int sampleCount, int soundWaveIndex, int hz, double volume) {
+        for (int i = 0; i < sampleCount; i++) {
+            final double angle = 1.0 * soundWaveIndex / (1.0 * FREQUENCY / hz) * (2.0 * Math.PI);
+            sampleBuffer[i * 2] = (byte) (Math.sin(angle) * 255.0 * volume * 1.0);
+            sampleBuffer[i * 2 + 1] = (byte) (Math.sin(2.0 * angle) * 255.0 * volume * 0.6); // Harmonics at double frequency, and lower volume
+
+            soundWaveIndex = (soundWaveIndex + 1) % FREQUENCY;
+        }
+
+        return soundWaveIndex;
+    }
+
     @Override
     public void run() {
         int soundWaveIndex = 0;
+        byte[] sampleBuffer = new byte[0];
 
         while (!stop) {
             try {
@@ -83,17 +108,19 @@ public class BeepGenerator extends Thread {
             }
 
             final int sourceDataLineDataCapacity = sourceDataLine.available();
+            if ((metrics != null) && beeping && (sourceDataLineDataCapacity >= sourceDataLine.getBufferSize())) {
+                // Beeping, with no samples left in the line. A starved line is not running, so the started line is checked
+                metrics.audioUnderrun();
+            }
 
             // Fill the audio source data line with more delicate beeping sine-waveform sound
-            for (int i = 0; i < (sourceDataLineDataCapacity / 2); i++) {
-                final double angle = 1.0 * soundWaveIndex / (1.0 * FREQUENCY / hz) * (2.0 * Math.PI);
-                SAMPLE_BUFFER[0] = (byte) (Math.sin(angle) * 255.0 * volume * 1.0);
-                SAMPLE_BUFFER[1] = (byte) (Math.sin(2.0 * angle) * 255.0 * volume * 0.6); // Harmonics at double frequency, and lower volume
-
-                sourceDataLine.write(SAMPLE_BUFFER, 0, SAMPLE_BUFFER.length);
-
-                soundWaveIndex = (soundWaveIndex + 1) % FREQUENCY;
+            final int sampleCount = sourceDataLineDataCapacity / 2;
+            if (sampleBuffer.length < sampleCount * 2) {
+                sampleBuffer = new byte[sampleCount * 2];
             }
+            soundWaveIndex = synthesize(sampleBuffer, sampleCount, soundWaveIndex, hz, volume);
+
+            sourceDataLine.write(sampleBuffer, 0, sampleCount * 2);
         }
 
     }
@@ -1,109 +1,184 @@
 package se.cha.chip8.screen;
 
 /**
+ * Gaussian blur approximation of ARGB pixels, by three successive box blurs.
+ * <p>
  * https://blog.ivank.net/fastest-gaussian-blur.html
+ * <p>
+ * Each box blur is separable; a horizontal pass over the rows and a vertical pass over the columns.
+ * Both passes use sliding window sums, so the cost per pixel does not depend on the blur radius.
+ * The vertical pass keeps one window sum per column and walks the rows in memory order.
+ * All buffers are allocated once, for the image size given at construction.
+ * <p>
+ * The horizontal passes are split in stripes of rows, and the vertical passes in stripes of columns,
+ * processed by the post-processing pipeline.
  */
 public class Blur {
-/*
-    public static void gaussBlur_4(scl, tcl, int w, int h, double r) {
-        var bxs = boxesForGauss(r, 3);
-        boxBlur_4(scl, tcl, w, h, (bxs[0] - 1) / 2);
-        boxBlur_4(tcl, scl, w, h, (bxs[1] - 1) / 2);
-        boxBlur_4(scl, tcl, w, h, (bxs[2] - 1) / 2);
-    }
 
-    private static void boxBlur_4(scl, tcl, int w, int h, double r) {
-        for (var i = 0; i < scl.length; i++) {
-            tcl[i] = scl[i];
+    private static final int BOX_COUNT = 3;
+
+    private final int width;
+    private final int height;
+    private final int[] boxRadius;
+    private final int[] temp;
+    // Vertical pass window sums, four channels per column
+    private final int[] columnSums;
+    private final PostProcessingPipeline pipeline;
+
+    /**
+     * @param sigma    standard deviation of the gaussian blur to approximate
+     * @param pipeline pipeline to process the stripes of the image with
+     */
+    public Blur(int width, int height, double sigma, PostProcessingPipeline pipeline) {
+        this.width = width;
+        this.height = height;
+
+        final int[] boxSizes = boxesForGauss(sigma, BOX_COUNT);
+        boxRadius = new int[BOX_COUNT];
+        for (int i = 0; i < BOX_COUNT; i++) {
+            boxRadius[i] = (boxSizes[i] - 1) / 2;
         }
-        boxBlurH_4(tcl, scl, w, h, r);
-        boxBlurT_4(scl, tcl, w, h, r);
+
+        temp = new int[width * height];
+        columnSums = new int[width * 4];
+        this.pipeline = pipeline;
     }
 
-    private static void boxBlurH_4(scl, tcl, int w, int h, double r) {
-        var iarr = 1.0 / (r + r + 1.0);
-        for (var i = 0; i < h; i++) {
-            var ti = i * w;
-            var li = ti;
-            var ri = ti + r;
+    public int getWidth() {
+        return width;
+    }
 
-            var fv = scl[ti], lv = scl[ti + w - 1], val = (r + 1) * fv;
-            for (var j = 0; j < r; j++) {
-                val += scl[ti + j];
-            }
-            for (var j = 0; j <= r; j++) {
-                val += scl[ri++] - fv;
-                tcl[ti++] = Math.round(val * iarr);
-            }
-            for (var j = r + 1; j < w - r; j++) {
-                val += scl[ri++] - scl[li++];
-                tcl[ti++] = Math.round(val * iarr);
-            }
-            for (var j = w - r; j < w; j++) {
-                val += lv - scl[li++];
-                tcl[ti++] = Math.round(val * iarr);
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Blur the source pixels into the target pixels. The source pixels are left untouched.
+     */
+    public void blur(int[] source, int[] target) {
+        if (source == target) {
+            throw new IllegalArgumentException("Source and target must not be the same pixels");
+        }
+
+        int[] boxSource = source;
+        for (int radius : boxRadius) {
+            if (radius > 0) {
+                final int[] horizontalSource = boxSource;
+                pipeline.run(height, (from, to) -> boxBlurHorizontal(horizontalSource, temp, radius, from, to));
+                pipeline.run(width, (from, to) -> boxBlurVertical(temp, target, radius, from, to));
+            } else if (boxSource != target) {
+                System.arraycopy(boxSource, 0, target, 0, boxSource.length);
             }
+            boxSource = target;
         }
     }
 
-    private static void boxBlurT_4(scl, tcl, int w, int h, double r) {
-        var iarr = 1.0 / (r + r + 1.0);
-        for (var i = 0; i < w; i++) {
-            var ti = i;
-            var li = ti;
-            var ri = ti + r * w;
+    /**
+     * Box blur the rows {@code fromRow} (inclusive) to {@code toRow} (exclusive). Pixels outside the image are the edge pixels.
+     */
+    private void boxBlurHorizontal(int[] source, int[] target, int radius, int fromRow, int toRow) {
+        final int scale = (1 << 16) / (radius + radius + 1);
+        final int lastX = width - 1;
 
-            var fv = scl[ti];
-            var lv = scl[ti + w * (h - 1)];
-            var val = (r + 1) * fv;
+        for (int y = fromRow; y < toRow; y++) {
+            final int rowIndex = y * width;
 
-            for (var j = 0; j < r; j++) {
-                val += scl[ti + j * w];
-            }
-            for (var j = 0; j <= r; j++) {
-                val += scl[ri] - fv;
-                tcl[ti] = Math.round(val * iarr);
-                ri += w;
-                ti += w;
+            int sumA = 0;
+            int sumR = 0;
+            int sumG = 0;
+            int sumB = 0;
+            for (int x = -radius; x <= radius; x++) {
+                final int pixel = source[rowIndex + Math.min(Math.max(x, 0), lastX)];
+                sumA += pixel >>> 24;
+                sumR += (pixel >>> 16) & 0xFF;
+                sumG += (pixel >>> 8) & 0xFF;
+                sumB += pixel & 0xFF;
             }
-            for (var j = r + 1; j < h - r; j++) {
-                val += scl[ri] - scl[li];
-                tcl[ti] = Math.round(val * iarr);
-                li += w;
-                ri += w;
-                ti += w;
+
+            for (int x = 0; x < width; x++) {
+                target[rowIndex + x] = pixel(sumA, sumR, sumG, sumB, scale);
+
+                final int enteringPixel = source[rowIndex + Math.min(x + radius + 1, lastX)];
+                final int leavingPixel = source[rowIndex + Math.max(x - radius, 0)];
+                sumA += (enteringPixel >>> 24) - (leavingPixel >>> 24);
+                sumR += ((enteringPixel >>> 16) & 0xFF) - ((leavingPixel >>> 16) & 0xFF);
+                sumG += ((enteringPixel >>> 8) & 0xFF) - ((leavingPixel >>> 8) & 0xFF);
+                sumB += (enteringPixel & 0xFF) - (leavingPixel & 0xFF);
             }
-            for (var j = h - r; j < h; j++) {
-                val += lv - scl[li];
-                tcl[ti] = Math.round(val * iarr);
-                li += w;
-                ti += w;
+        }
+    }
+
+    /**
+     * Box blur the columns {@code fromColumn} (inclusive) to {@code toColumn} (exclusive). Pixels outside the image are the edge pixels.
+     */
+    private void boxBlurVertical(int[] source, int[] target, int radius, int fromColumn, int toColumn) {
+        final int scale = (1 << 16) / (radius + radius + 1);
+        final int lastY = height - 1;
+
+        for (int x = fromColumn; x < toColumn; x++) {
+            columnSums[x * 4] = 0;
+            columnSums[x * 4 + 1] = 0;
+            columnSums[x * 4 + 2] = 0;
+            columnSums[x * 4 + 3] = 0;
+        }
+        for (int y = -radius; y <= radius; y++) {
+            addRow(source, Math.min(Math.max(y, 0), lastY) * width, 1, fromColumn, toColumn);
+        }
+
+        for (int y = 0; y < height; y++) {
+            final int rowIndex = y * width;
+            for (int x = fromColumn; x < toColumn; x++) {
+                final int sumIndex = x * 4;
+                target[rowIndex + x] = pixel(columnSums[sumIndex], columnSums[sumIndex + 1], columnSums[sumIndex + 2], columnSums[sumIndex + 3], scale);
             }
+
+            addRow(source, Math.min(y + radius + 1, lastY) * width, 1, fromColumn, toColumn);
+            addRow(source, Math.max(y - radius, 0) * width, -1, fromColumn, toColumn);
+        }
+    }
+
+    private void addRow(int[] source, int rowIndex, int sign, int fromColumn, int toColumn) {
+        for (int x = fromColumn; x < toColumn; x++) {
+            final int pixel = source[rowIndex + x];
+            final int sumIndex = x * 4;
+            columnSums[sumIndex] += sign * (pixel >>> 24);
+            columnSums[sumIndex + 1] += sign * ((pixel >>> 16) & 0xFF);
+            columnSums[sumIndex + 2] += sign * ((pixel >>> 8) & 0xFF);
+            columnSums[sumIndex + 3] += sign * (pixel & 0xFF);
         }
     }
-*/
+
+    /**
+     * Average of window sums, as an ARGB pixel. The scale is 2^16 divided by the window size.
+     */
+    private static int pixel(int sumA, int sumR, int sumG, int sumB, int scale) {
+        return (((sumA * scale + 0x8000) >>> 16) << 24)
+                | (((sumR * scale + 0x8000) >>> 16) << 16)
+                | (((sumG * scale + 0x8000) >>> 16) << 8)
+                | ((sumB * scale + 0x8000) >>> 16);
+    }
+
     /**
      * @param sigma standard deviation,
      * @param n     number of boxes
+     * @return box sizes (odd widths), that in succession approximate a gaussian blur
      */
-    /*
-    private static double[] boxesForGauss(double sigma, int n) {
-        var wIdeal = Math.sqrt((12 * sigma * sigma / n) + 1);  // Ideal averaging filter width
-        var wl = Math.floor(wIdeal);
-        if (wl % 2 == 0) wl--;
-        var wu = wl + 2;
-
-        var mIdeal = (12 * sigma * sigma - n * wl * wl - 4 * n * wl - 3 * n) / (-4 * wl - 4);
-        var m = Math.round(mIdeal);
-        // var sigmaActual = Math.sqrt( (m*wl*wl + (n-m)*wu*wu - n)/12 );
-
-        var sizes = new double[n];
-        for (var i = 0; i < n; i++) {
+    static int[] boxesForGauss(double sigma, int n) {
+        final double wIdeal = Math.sqrt((12 * sigma * sigma / n) + 1);  // Ideal averaging filter width
+        int wl = (int) Math.floor(wIdeal);
+        if (wl % 2 == 0) {
+            wl--;
+        }
+        final int wu = wl + 2;
+
+        final double mIdeal = (12 * sigma * sigma - n * wl * wl - 4 * n * wl - 3 * n) / (-4.0 * wl - 4);
+        final long m = Math.round(mIdeal);
+
+        final int[] sizes = new int[n];
+        for (int i = 0; i < n; i++) {
             sizes[i] = (i < m ? wl : wu);
         }
 
         return sizes;
     }
-
-     */
 }
@@ -0,0 +1,134 @@
+package se.cha.chip8.screen;
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.List;
+
+/**
+ * Active rendering presenter, drawing frames on a {@link Canvas} through a page flipping {@link BufferStrategy}.
+ * <p>
+ * The frame is kept in a {@link VolatileImage}, where only the dirty areas are updated from the composed frame.
+ * Presenting a frame is then a single (accelerated, when available) blit to the back buffer followed by a flip,
+ * done directly from the render thread without passing through the Swing repaint manager.
+ */
+public class BufferStrategyPresenter implements ScreenPresenter {
+
+    private final Canvas canvas;
+    private VolatileImage frameVolatileImage = null;
+    private BufferedImage lastFrameImage = null;
+
+    public BufferStrategyPresenter(int width, int height) {
+        canvas = new Canvas() {
+            @Override
+            public void paint(Graphics g) {
+                // Window exposed or resized, show the last frame again
+                presentLastFrame();
+            }
+
+            @Override
+            public void update(Graphics g) {
+                paint(g);
+            }
+        };
+        canvas.setPreferredSize(new Dimension(width, height));
+        canvas.setBackground(Color.BLACK);
+        canvas.setIgnoreRepaint(true);
+        canvas.setFocusable(false); // Let the frame keep the focus, and the key events
+    }
+
+    @Override
+    public Component getComponent() {
+        return canvas;
+    }
+
+    @Override
+    public synchronized void present(BufferedImage frameImage, List<Rectangle> dirtyAreas) {
+        lastFrameImage = frameImage;
+        if (!canvas.isDisplayable()) {
+            return;
+        }
+
+        boolean fullUpdate = validateFrameVolatileImage(frameImage);
+        while (true) {
+            final Graphics2D g = frameVolatileImage.createGraphics();
+            if (fullUpdate) {
+                g.drawImage(frameImage, 0, 0, null);
+            } else {
+                for (Rectangle dirtyArea : dirtyAreas) {
+                    final int x2 = dirtyArea.x + dirtyArea.width;
+                    final int y2 = dirtyArea.y + dirtyArea.height;
+                    g.drawImage(frameImage, dirtyArea.x, dirtyArea.y, x2, y2, dirtyArea.x, dirtyArea.y, x2, y2, null);
+                }
+            }
+            g.dispose();
+
+            if (!frameVolatileImage.contentsLost()) {
+                break;
+            }
+
+            // Surface lost while drawing, redraw all of it
+            validateFrameVolatileImage(frameImage);
+            fullUpdate = true;
+        }
+
+        show();
+    }
+
+    private synchronized void presentLastFrame() {
+        if (lastFrameImage != null) {
+            present(lastFrameImage, List.of());
+        }
+    }
+
+    /**
+     * @return true if the volatile image was (re)created or restored, and all of it needs to be redrawn
+     */
+    private boolean validateFrameVolatileImage(BufferedImage frameImage) {
+        final GraphicsConfiguration graphicsConfiguration = canvas.getGraphicsConfiguration();
+
+        if ((frameVolatileImage == null)
+                || (frameVolatileImage.getWidth() != frameImage.getWidth())
+                || (frameVolatileImage.getHeight() != frameImage.getHeight())
+                || (frameVolatileImage.validate(graphicsConfiguration) == VolatileImage.IMAGE_INCOMPATIBLE)) {
+            if (frameVolatileImage != null) {
+                frameVolatileImage.flush();
+            }
+            frameVolatileImage = graphicsConfiguration.createCompatibleVolatileImage(frameImage.getWidth(), frameImage.getHeight(), Transparency.OPAQUE);
+            return true;
+        }
+
+        return frameVolatileImage.contentsLost();
+    }
+
+    private void show() {
+        BufferStrategy bufferStrategy = canvas.getBufferStrategy();
+        if (bufferStrategy == null) {
+            canvas.createBufferStrategy(2);
+            bufferStrategy = canvas.getBufferStrategy();
+        }
+
+        // Center the frame when the canvas is larger than the frame
+        final int x = Math.max(0, (canvas.getWidth() - frameVolatileImage.getWidth()) / 2);
+        final int y = Math.max(0, (canvas.getHeight() - frameVolatileImage.getHeight()) / 2);
+        final boolean fillBackground = (x > 0) || (y > 0);
+
+        do {
+            do {
+                final Graphics g = bufferStrategy.getDrawGraphics();
+                if (fillBackground) {
+                    g.setColor(Color.BLACK);
+                    g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+                }
+                g.drawImage(frameVolatileImage, x, y, null);
+                g.dispose();
+            } while (bufferStrategy.contentsRestored());
+
+            bufferStrategy.show();
+        } while (bufferStrategy.contentsLost());
+
+        // Flush the window system pipeline (X11), so the frame shows now instead of at some later point
+        Toolkit.getDefaultToolkit().sync();
+    }
+}
@@ -3,28 +3,160 @@ package se.cha.chip8.screen;
 import org.apache.commons.cli.*;
 
 import java.awt.*;
+import java.io.File;
+import java.io.IOException;
 import java.net.*;
+import java.util.Arrays;
 
 public class Chip8Screen {
 
     public static void main(String[] args) throws UnknownHostException {
         final Configuration configuration = parseArguments(args);
+        if (configuration.getMetricsPort() > 0) {
+            startMetricsServer(configuration.getMetricsPort());
+        }
+
+        switch (configuration.getSessionMode()) {
+            case MOSAIC: {
+                final MosaicFrame mosaicFrame = new MosaicFrame(configuration);
+                final SessionServer sessionServer = new SessionServer(mosaicFrame, configuration.getMaxSessions(), configuration.isFrameStatistics());
+                mosaicFrame.initialize(sessionServer);
+                printStartupInformation(configuration);
+                startListener(configuration, sessionServer, sessionServer);
+                break;
+            }
+            case HEADLESS: {
+                final FrameSink frameSink = openFrameSink(configuration);
+                final HeadlessMosaic headlessMosaic = new HeadlessMosaic(configuration);
+                final SessionServer sessionServer = new SessionServer(headlessMosaic, configuration.getMaxSessions(), configuration.isFrameStatistics());
+                headlessMosaic.initialize(sessionServer, frameSink);
+                Runtime.getRuntime().addShutdownHook(new Thread(headlessMosaic::stopRendering, "Headless mosaic shutdown"));
+                printStartupInformation(configuration);
+                startListener(configuration, sessionServer, sessionServer);
+                break;
+            }
+            case SINGLE:
+            default: {
+                if (configuration.isHeadless()) {
+                    startHeadless(configuration);
+                    break;
+                }
+
+                final ScreenFrame screenFrame = ScreenFrame.getOrCreateSingleton();
+                screenFrame.initialize(configuration);
+                printStartupInformation(configuration);
+
+                BeepGenerator.startBeepGenerator();
+                final UdpDataProcessor renderMessageProcessor = new UdpDataProcessor(screenFrame.getScreenState(), configuration.isFrameStatistics());
+                startListener(configuration, renderMessageProcessor, renderMessageProcessor);
+                break;
+            }
+        }
+    }
 
-        final ScreenFrame screenFrame = ScreenFrame.getOrCreateSingleton();
-        screenFrame.initialize(configuration);
+    /**
+     * Turn metrics on and serve them, before anything counting metrics is created.
+     */
+    private static void startMetricsServer(int port) {
+        try {
+            new MetricsServer(Metrics.enable(), port);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not start the metrics server on port " + port + ".", e);
+        }
+    }
+
+    private static void startHeadless(Configuration configuration) throws UnknownHostException {
+        final FrameSink frameSink = openFrameSink(configuration);
+        final HeadlessScreen headlessScreen = new HeadlessScreen(configuration);
+        headlessScreen.initialize(frameSink);
+        Runtime.getRuntime().addShutdownHook(new Thread(headlessScreen::stopRendering, "Headless screen shutdown"));
+        printStartupInformation(configuration);
+
+        final UdpDataProcessor renderMessageProcessor = new UdpDataProcessor(headlessScreen.getScreenState(), configuration.isFrameStatistics());
+        startListener(configuration, renderMessageProcessor, renderMessageProcessor);
+    }
+
+    /**
+     * Open the frame output, if any, and print everything but the frames to standard error when the frames go to standard output.
+     *
+     * @return the frame sink, null if no frames are written
+     */
+    private static FrameSink openFrameSink(Configuration configuration) {
+        final String frameOutput = configuration.getFrameOutput();
+        if (FrameSink.isStandardOutput(frameOutput)) {
+            // Standard output carries the frames, print everything else to standard error
+            System.setOut(System.err);
+        }
 
+        if (frameOutput == null) {
+            return null;
+        }
+
+        try {
+            return FrameSink.open(frameOutput, configuration.getFrameRate());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open frame output \"" + frameOutput + "\".", e);
+        }
+    }
+
+    private static void printStartupInformation(Configuration configuration) throws UnknownHostException {
         System.out.println("Currently running CHIP-8 screen on IP:       " + InetAddress.getLocalHost().getHostAddress());
-        System.out.println("Listening for CHIP-8 screen updates on port: " + configuration.getListenerPort());
+        if (configuration.getReplayFile() != null) {
+            System.out.println("Replaying CHIP-8 screen updates from:        " + configuration.getReplayFile());
+        } else {
+            System.out.println("Listening for CHIP-8 screen updates on port: " + configuration.getListenerPort());
+            if (configuration.getMulticastGroup() != null) {
+                System.out.println("Listening to multicast group:                " + configuration.getMulticastGroup().getHostAddress());
+            }
+        }
+        if (configuration.getCaptureFile() != null) {
+            System.out.println("Capturing received packets to:               " + configuration.getCaptureFile());
+        }
+        if (configuration.getMetricsPort() > 0) {
+            System.out.println("Serving metrics on:                          http://" + InetAddress.getLocalHost().getHostAddress() + ":" + configuration.getMetricsPort() + "/metrics");
+        }
         System.out.println();
         System.out.println("Using configuration: " + configuration);
         System.out.println();
+    }
+
+    /**
+     * Start the listener thread, passing packets to the buffer processor with the NIO listener, otherwise to the data processor.
+     * With a replay file the packets of the file are passed to the buffer processor instead.
+     */
+    private static void startListener(Configuration configuration, UdpChannelMessageListener.UDPPacketBufferProcessor bufferProcessor,
+                                      UdpPacketMessageListener.UDPPacketDataProcessor dataProcessor) {
+        if (configuration.getReplayFile() != null) {
+            final PacketReplay packetReplay = new PacketReplay(new File(configuration.getReplayFile()), configuration.getReplaySpeed(), bufferProcessor);
+            final boolean exitWhenDone = configuration.isHeadless() || (configuration.getSessionMode() == Configuration.SessionMode.HEADLESS);
+            final Thread replayThread = new Thread(() -> {
+                packetReplay.run();
+                if (exitWhenDone) {
+                    System.exit(0);
+                }
+            }, "Packet replay");
+            replayThread.start();
+            return;
+        }
 
-        BeepGenerator.startBeepGenerator();
-        final UdpDataProcessor renderMessageProcessor = new UdpDataProcessor();
-        final UdpPacketMessageListener dataListener = new UdpPacketMessageListener(renderMessageProcessor, configuration.getListenerPort());
+        final AbstractUdpMessageListener dataListener = configuration.isNioListener()
+                ? new UdpChannelMessageListener(bufferProcessor, configuration)
+                : new UdpPacketMessageListener(dataProcessor, configuration);
 
         final Thread messageThread = new Thread(dataListener);
         messageThread.start();
+
+        if (configuration.getCaptureFile() != null) {
+            // Stop the listener on exit, it closes the capture file
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                dataListener.stop();
+                try {
+                    messageThread.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "Packet capture shutdown"));
+        }
     }
 
     private static Configuration parseArguments(String[] args) {
@@ -33,6 +165,16 @@ public class Chip8Screen {
         Color darkColor = new Color(0x08, 0x18, 0x00, 0x40);
         int listenPort = 9999;
         String chip8AddressText = "localhost:9998";
+        Configuration.RenderBackend renderBackend = Configuration.RenderBackend.SWING;
+        String frameRateText = "60";
+        PhosphorPersistence.DecayCurve phosphorDecayCurve = PhosphorPersistence.DecayCurve.EXPONENTIAL;
+        int phosphorDecayMillis = 130;
+        int glowStrength = 0;
+        int renderThreads = Runtime.getRuntime().availableProcessors();
+        int receiveBufferSize = 0;
+        int maxDatagramSize = AbstractUdpMessageListener.MAX_UDP_PAYLOAD_SIZE;
+        Configuration.SessionMode sessionMode = Configuration.SessionMode.SINGLE;
+        int maxSessions = 64;
 
         final Option lpOption = new Option("lp", "listener-port", true,
                 "The listener port where the screen application listen for UDP packets with screen and sound updates." +
@@ -44,6 +186,100 @@ public class Chip8Screen {
         final Option cOption = new Option("c", "color", true,
                 "The RGB hex color for the bright (lit) color on the monochrome screen. Format for the RGB color value is \"#RRGGBB\"." +
                         " Default value is \"#" + String.format("%06X", 0x00FFFFFF & brightColor.getRGB()) + "\"");
+        final Option xcOption = new Option("xc", "xo-chip-colors", true,
+                "The RGB hex colors for XO-CHIP pixels lit on the second plane only, and on both planes, separated by comma." +
+                        " Format is \"#RRGGBB,#RRGGBB\". Pixels lit on the first plane only use the bright color." +
+                        " Default, if not specified, is half and three quarters of the bright color.");
+        final Option nioOption = new Option("nio", "nio-listener", false,
+                "Receive screen updates through a NIO datagram channel and a direct buffer, without copying packet data.");
+        final Option mgOption = new Option("mg", "multicast-group", true,
+                "Join a multicast group, like \"230.0.0.1\", and receive the screen updates the CHIP-8 application sends to the group and listener port." +
+                        " Any number of screens can listen to the same group, also on the same host." +
+                        " Default, if not specified, is to receive unicast packets only.");
+        final Option miOption = new Option("mi", "multicast-interface", true,
+                "Name of the network interface to join the multicast group on, like \"eth0\" or \"lo\"." +
+                        " Default, if not specified, is the first network interface that supports multicast.");
+        final Option sbOption = new Option("sb", "socket-buffer", true,
+                "Socket receive buffer size (SO_RCVBUF) in bytes. A larger buffer holds more packets while the listener is busy," +
+                        " instead of the system dropping them. The system may limit the size (net.core.rmem_max on Linux)." +
+                        " Default, if not specified, is the system default.");
+        final Option mdOption = new Option("md", "max-datagram", true,
+                "Largest packet to receive, in bytes. Larger packets are counted as truncated and dropped." +
+                        " Default, if not specified, is " + maxDatagramSize + ", the largest possible UDP packet.");
+        final Option cfOption = new Option("cf", "capture-file", true,
+                "Capture every received packet, with its receive time in nanoseconds, to a file for replay." +
+                        " Default, if not specified, is to capture nothing.");
+        final Option rfOption = new Option("rf", "replay-file", true,
+                "Replay the packets of a capture file, instead of listening for packets." +
+                        " A histogram of the time from a packet is due until it is decoded and unpacked is printed at the end," +
+                        " and a headless screen exits.");
+        final Option rsOption = new Option("rs", "replay-speed", true,
+                "Speed of the replay, a factor of the captured timing like \"1\" (real time) or \"4\", or \"max\" to replay" +
+                        " as fast as possible, as a benchmark of decoding and rendering." +
+                        " Default, if not specified, is 1.");
+        final Option rbOption = new Option("rb", "render-backend", true,
+                "How frames are presented on screen. \"swing\" shows the frame as an image in a Swing component," +
+                        " \"canvas\" draws the frame directly on an AWT canvas using page flipping and accelerated images," +
+                        " for lower and steadier presentation latency." +
+                        " Default, if not specified, is \"" + renderBackend.name().toLowerCase() + "\".");
+        final Option frOption = new Option("fr", "frame-rate", true,
+                "Target frame rate for the CRT rendering, in frames per second." +
+                        " Use \"display\" for the refresh rate of the display, or \"uncapped\" to render new frames as fast as they arrive" +
+                        " (the phosphor still fades at " + FrameScheduler.UNCAPPED_FADE_FRAME_RATE + " frames per second)." +
+                        " Default, if not specified, is " + frameRateText + ".");
+        final Option fsOption = new Option("fs", "frame-stats", false,
+                "Print frame pacing, packet receive (including kernel drops on Linux) and packet coalescing statistics every 10 seconds.");
+        final Option lrOption = new Option("lr", "latency-report", true,
+                "Print the frame latency, from packet receive to frame presented, every 10 seconds." +
+                        " The percentiles p50, p99 and max of the total latency, and of the decode, unpack and render stages," +
+                        " as \"text\" or as one line of \"json\"." +
+                        " Default, if not specified, is no report.");
+        final Option loOption = new Option("lo", "latency-overlay", false,
+                "Show the frame latency, from packet receive to frame presented, on the monitor bezel below the screen.");
+        final Option pdOption = new Option("pd", "phosphor-decay", true,
+                "Phosphor afterglow time in milliseconds, the time for an unlit pixel to fade to 10% of its full intensity," +
+                        " 1 to " + PhosphorPersistence.MAX_DECAY_MILLIS + "." +
+                        " Default, if not specified, is " + phosphorDecayMillis + ".");
+        final Option pcOption = new Option("pc", "phosphor-curve", true,
+                "Shape of the phosphor afterglow fade, \"exponential\" or \"linear\"." +
+                        " Default, if not specified, is \"" + phosphorDecayCurve.name().toLowerCase() + "\".");
+        final Option glOption = new Option("gl", "glow", true,
+                "Strength of the phosphor glow, light bleeding around lit pixels, in percent. 0 turns the glow off." +
+                        " Default, if not specified, is " + glowStrength + ".");
+        final Option crtOption = new Option("crt", "crt-effects", false,
+                "Show the screen on a curved CRT tube, with vignette and shadow mask.");
+        final Option rtOption = new Option("rt", "render-threads", true,
+                "Number of threads for the per pixel CRT post-processing (glow, glare and bezel blending)." +
+                        " 1 processes everything on the render thread." +
+                        " Default, if not specified, is the number of processors (" + renderThreads + ").");
+        final Option hlOption = new Option("hl", "headless", false,
+                "Render the CRT monitor off-screen, without any window, on machines without a display.");
+        final Option foOption = new Option("fo", "frame-output", true,
+                "Render headless and write the frames on the format \"format:target\"." +
+                        " \"raw:file\" writes raw RGBA frames, \"y4m:file\" a YUV4MPEG2 video stream, for example for ffmpeg," +
+                        " to a file or named pipe, or to standard output with the file \"-\"." +
+                        " \"png:frames/frame-%06d.png\" writes a PNG image sequence, with a file name pattern or a directory." +
+                        " With a capped frame rate a frame is written on every frame, also when nothing changed." +
+                        " Frames are dropped, not waited for, when the output can not keep up." +
+                        " Default, if not specified, is to write no frames.");
+        final Option osOption = new Option("os", "output-size", true,
+                "Size of the monitor, or the mosaic of sessions, rendered headless, in pixels, like \"716x536\"." +
+                        " Default, if not specified, is the size of the original monitor pictures.");
+        final Option msOption = new Option("ms", "multi-session", true,
+                "Receive from any number of CHIP-8 applications, each in a session of its own." +
+                        " Messages belong to the session of their \"session\" id, or of their source address when they have no session id." +
+                        " \"mosaic\" shows all sessions tiled in one window (view only, without key input), \"headless\" renders the same mosaic" +
+                        " without any window, and writes it to the frame output, in the output size (default 1280x800)." +
+                        " The sessions are rendered by the render threads." +
+                        " Default, if not specified, is one CHIP-8 application.");
+        final Option mxOption = new Option("mx", "max-sessions", true,
+                "Maximum number of sessions with the multi-session option. When reached, sessions silent for a minute are dropped" +
+                        " for new sessions, otherwise messages of new sessions are ignored." +
+                        " Default, if not specified, is " + maxSessions + ".");
+        final Option mpOption = new Option("mp", "metrics-port", true,
+                "Serve render, network and audio counters, and heap and garbage collection statistics, in the Prometheus text format" +
+                        " on http://host:port/metrics." +
+                        " Default, if not specified, is no metrics.");
         final Option hOption = new Option("h", "help", false,
                 "Show this help");
 
@@ -51,6 +287,31 @@ public class Chip8Screen {
         options.addOption(lpOption);
         options.addOption(caOption);
         options.addOption(cOption);
+        options.addOption(xcOption);
+        options.addOption(nioOption);
+        options.addOption(mgOption);
+        options.addOption(miOption);
+        options.addOption(sbOption);
+        options.addOption(mdOption);
+        options.addOption(cfOption);
+        options.addOption(rfOption);
+        options.addOption(rsOption);
+        options.addOption(rbOption);
+        options.addOption(frOption);
+        options.addOption(fsOption);
+        options.addOption(lrOption);
+        options.addOption(loOption);
+        options.addOption(pdOption);
+        options.addOption(pcOption);
+        options.addOption(glOption);
+        options.addOption(crtOption);
+        options.addOption(rtOption);
+        options.addOption(hlOption);
+        options.addOption(foOption);
+        options.addOption(osOption);
+        options.addOption(msOption);
+        options.addOption(mxOption);
+        options.addOption(mpOption);
         options.addOption(hOption);
 
         final CommandLineParser parser = new DefaultParser();
@@ -61,6 +322,14 @@ public class Chip8Screen {
             throw new RuntimeException(e);
         }
 
+        final String frameOutput = cmd.getOptionValue(foOption);
+        final String msValue = cmd.getOptionValue(msOption);
+        final boolean headless = cmd.hasOption(hlOption) || (frameOutput != null) || ((msValue != null) && msValue.trim().equalsIgnoreCase("headless"));
+        if (headless) {
+            // Before any use of AWT, it reads the property once
+            System.setProperty("java.awt.headless", "true");
+        }
+
         final String lpValue = cmd.getOptionValue(lpOption, Integer.toString(listenPort));
         try {
             listenPort = Integer.parseInt(lpValue);
@@ -96,12 +365,283 @@ public class Chip8Screen {
             System.exit(1);
         }
 
+        Color[] xoChipColors = null;
+        final String xcValue = cmd.getOptionValue(xcOption);
+        if (xcValue != null) {
+            try {
+                xoChipColors = Arrays.stream(xcValue.split(","))
+                        .map(colorText -> new Color(Integer.parseInt(colorText.toLowerCase().replace("#", "").trim(), 16)))
+                        .toArray(Color[]::new);
+                if (xoChipColors.length != Configuration.XO_CHIP_COLOR_COUNT) {
+                    throw new NumberFormatException("Number of XO-CHIP colors " + xoChipColors.length);
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Could not parse XO-CHIP colors \"" + xcValue + "\", expected " + Configuration.XO_CHIP_COLOR_COUNT
+                        + " colors in the format \"#RRGGBB,#RRGGBB\".");
+                printCommandHelp(options);
+                System.exit(1);
+            }
+        }
 
         if (cmd.hasOption(hOption)) {
             printCommandHelp(options);
         }
 
-        return new Configuration(listenPort, chip8SocketAddress, brightColor, darkColor);
+        final boolean nioListener = cmd.hasOption(nioOption);
+
+        InetAddress multicastGroup = null;
+        final String mgValue = cmd.getOptionValue(mgOption);
+        if (mgValue != null) {
+            try {
+                multicastGroup = InetAddress.getByName(mgValue.trim());
+                if (!multicastGroup.isMulticastAddress()) {
+                    throw new UnknownHostException("Not a multicast address " + mgValue);
+                }
+            } catch (UnknownHostException e) {
+                System.err.println("Could not parse multicast group \"" + mgValue + "\", expected a multicast address like \"230.0.0.1\".");
+                printCommandHelp(options);
+                System.exit(1);
+            }
+        }
+
+        NetworkInterface multicastInterface = null;
+        final String miValue = cmd.getOptionValue(miOption);
+        if (miValue != null) {
+            try {
+                multicastInterface = NetworkInterface.getByName(miValue.trim());
+                if (multicastInterface == null) {
+                    throw new SocketException("Unknown network interface " + miValue);
+                }
+            } catch (SocketException e) {
+                System.err.println("Unknown network interface \"" + miValue + "\".");
+                printCommandHelp(options);
+                System.exit(1);
+            }
+        }
+
+        final String sbValue = cmd.getOptionValue(sbOption, Integer.toString(receiveBufferSize));
+        try {
+            receiveBufferSize = Math.max(0, Integer.parseInt(sbValue.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Could not parse socket receive buffer size \"" + sbValue + "\".");
+            printCommandHelp(options);
+            System.exit(1);
+        }
+
+        final String mdValue = cmd.getOptionValue(mdOption, Integer.toString(maxDatagramSize));
+        try {
+            maxDatagramSize = Integer.parseInt(mdValue.trim());
+            if (maxDatagramSize < 1 || maxDatagramSize > AbstractUdpMessageListener.MAX_UDP_PAYLOAD_SIZE) {
+                throw new NumberFormatException("Max datagram size out of range " + maxDatagramSize);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Could not parse max datagram size \"" + mdValue + "\", expected 1 to " + AbstractUdpMessageListener.MAX_UDP_PAYLOAD_SIZE + " bytes.");
+            printCommandHelp(options);
+            System.exit(1);
+        }
+
+        final String captureFile = cmd.getOptionValue(cfOption);
+        final String replayFile = cmd.getOptionValue(rfOption);
+
+        double replaySpeed = 1.0;
+        final String rsValue = cmd.getOptionValue(rsOption, Double.toString(replaySpeed)).trim().toLowerCase();
+        try {
+            replaySpeed = "max".equals(rsValue) ? PacketReplay.AS_FAST_AS_POSSIBLE : Double.parseDouble(rsValue);
+            if (replaySpeed < 0 || Double.isNaN(replaySpeed) || Double.isInfinite(replaySpeed)) {
+                throw new NumberFormatException("Invalid replay speed " + rsValue);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Could not parse replay speed \"" + rsValue + "\", expected a factor like \"2\", or \"max\".");
+            printCommandHelp(options);
+            System.exit(1);
+        }
+
+        final String rbValue = cmd.getOptionValue(rbOption, renderBackend.name());
+        try {
+            renderBackend = Configuration.RenderBackend.valueOf(rbValue.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown render backend \"" + rbValue + "\".");
+            printCommandHelp(options);
+            System.exit(1);
+        }
+
+        int frameRate = 60;
+        frameRateText = cmd.getOptionValue(frOption, frameRateText).trim().toLowerCase();
+        try {
+            frameRate = parseFrameRate(frameRateText);
+        } catch (NumberFormatException e) {
+            System.err.println("Could not parse frame rate \"" + frameRateText + "\".");
+            printCommandHelp(options);
+            System.exit(1);
+        }
+
+        final boolean frameStatistics = cmd.hasOption(fsOption);
+
+        Configuration.LatencyReport latencyReport = Configuration.LatencyReport.OFF;
+        final String lrValue = cmd.getOptionValue(lrOption);
+        if (lrValue != null) {
+            try {
+                latencyReport = Configuration.LatencyReport.valueOf(lrValue.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown latency report format \"" + lrValue + "\", expected \"text\" or \"json\".");
+                printCommandHelp(options);
+                System.exit(1);
+            }
+        }
+
+        final boolean latencyOverlay = cmd.hasOption(loOption);
+
+        final String pdValue = cmd.getOptionValue(pdOption, Integer.toString(phosphorDecayMillis));
+        try {
+            phosphorDecayMillis = Integer.parseInt(pdValue.trim());
+            if (phosphorDecayMillis < 1 || phosphorDecayMillis > PhosphorPersistence.MAX_DECAY_MILLIS) {
+                throw new NumberFormatException("Phosphor decay time out of range " + phosphorDecayMillis);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Could not parse phosphor decay time \"" + pdValue + "\", expected 1 to " + PhosphorPersistence.MAX_DECAY_MILLIS + " milliseconds.");
+            printCommandHelp(options);
+            System.exit(1);
+        }
+
+        final String pcValue = cmd.getOptionValue(pcOption, phosphorDecayCurve.name());
+        try {
+            phosphorDecayCurve = PhosphorPersistence.DecayCurve.valueOf(pcValue.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown phosphor decay curve \"" + pcValue + "\".");
+            printCommandHelp(options);
+            System.exit(1);
+        }
+
+        final String glValue = cmd.getOptionValue(glOption, Integer.toString(glowStrength));
+        try {
+            glowStrength = Integer.parseInt(glValue.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Could not parse glow strength \"" + glValue + "\".");
+            printCommandHelp(options);
+            System.exit(1);
+        }
+
+        final boolean crtEffects = cmd.hasOption(crtOption);
+
+        final String rtValue = cmd.getOptionValue(rtOption, Integer.toString(renderThreads));
+        try {
+            renderThreads = Math.max(1, Integer.parseInt(rtValue.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Could not parse render threads \"" + rtValue + "\".");
+            printCommandHelp(options);
+            System.exit(1);
+        }
+
+        if ((frameOutput != null) && !frameOutput.matches("(?i)\\s*(raw|y4m|png)\\s*:.+")) {
+            System.err.println("Could not parse frame output \"" + frameOutput + "\", expected format \"raw:file\", \"y4m:file\" or \"png:pattern\".");
+            printCommandHelp(options);
+            System.exit(1);
+        }
+
+        Dimension outputSize = null;
+        final String osValue = cmd.getOptionValue(osOption);
+        if (osValue != null) {
+            try {
+                final String[] sizeValues = osValue.toLowerCase().split("x");
+                outputSize = new Dimension(Integer.parseInt(sizeValues[0].trim()), Integer.parseInt(sizeValues[1].trim()));
+                if ((sizeValues.length != 2) || (outputSize.width < 1) || (outputSize.height < 1)) {
+                    throw new NumberFormatException("Invalid output size " + osValue);
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                System.err.println("Could not parse output size \"" + osValue + "\", expected format \"WIDTHxHEIGHT\".");
+                printCommandHelp(options);
+                System.exit(1);
+            }
+        }
+
+        if (msValue != null) {
+            try {
+                sessionMode = Configuration.SessionMode.valueOf(msValue.trim().toUpperCase());
+                if (headless && (sessionMode == Configuration.SessionMode.MOSAIC)) {
+                    // No window without a display, the mosaic is rendered headless
+                    sessionMode = Configuration.SessionMode.HEADLESS;
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown multi-session display \"" + msValue + "\", expected \"mosaic\" or \"headless\".");
+                printCommandHelp(options);
+                System.exit(1);
+            }
+        }
+
+        final String mxValue = cmd.getOptionValue(mxOption, Integer.toString(maxSessions));
+        try {
+            maxSessions = Math.max(1, Integer.parseInt(mxValue.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Could not parse max sessions \"" + mxValue + "\".");
+            printCommandHelp(options);
+            System.exit(1);
+        }
+
+        int metricsPort = 0;
+        final String mpValue = cmd.getOptionValue(mpOption);
+        if (mpValue != null) {
+            try {
+                metricsPort = Integer.parseInt(mpValue.trim());
+                if ((metricsPort < 1) || (metricsPort > 65535)) {
+                    throw new NumberFormatException("Metrics port out of range " + metricsPort);
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Could not parse metrics port \"" + mpValue + "\".");
+                printCommandHelp(options);
+                System.exit(1);
+            }
+        }
+
+        return Configuration.builder()
+                .listenerPort(listenPort)
+                .chip8Address(chip8SocketAddress)
+                .brightColor(brightColor)
+                .darkColor(darkColor)
+                .xoChipColors(xoChipColors)
+                .nioListener(nioListener)
+                .receiveBufferSize(receiveBufferSize)
+                .maxDatagramSize(maxDatagramSize)
+                .multicastGroup(multicastGroup)
+                .multicastInterface(multicastInterface)
+                .captureFile(captureFile)
+                .replayFile(replayFile)
+                .replaySpeed(replaySpeed)
+                .renderBackend(renderBackend)
+                .frameRate(frameRate)
+                .frameStatistics(frameStatistics)
+                .latencyReport(latencyReport)
+                .latencyOverlay(latencyOverlay)
+                .headless(headless)
+                .frameOutput(frameOutput)
+                .outputSize(outputSize)
+                .phosphorDecayCurve(phosphorDecayCurve)
+                .phosphorDecayMillis(phosphorDecayMillis)
+                .glowStrength(glowStrength)
+                .crtEffects(crtEffects)
+                .renderThreads(renderThreads)
+                .sessionMode(sessionMode)
+                .maxSessions(maxSessions)
+                .metricsPort(metricsPort)
+                .build();
+    }
+
+    private static int parseFrameRate(String frameRateText) {
+        if ("uncapped".equals(frameRateText)) {
+            return FrameScheduler.UNCAPPED;
+        }
+
+        if ("display".equals(frameRateText)) {
+            final int refreshRate = GraphicsEnvironment.isHeadless() ? DisplayMode.REFRESH_RATE_UNKNOWN :
+                    GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+            return (refreshRate != DisplayMode.REFRESH_RATE_UNKNOWN) ? refreshRate : 60;
+        }
+
+        final int frameRate = Integer.parseInt(frameRateText);
+        if (frameRate < 0) {
+            throw new NumberFormatException("Negative frame rate " + frameRate);
+        }
+
+        return frameRate;
     }
 
     private static void printCommandHelp(Options options) {
@@ -1,17 +1,131 @@
 package se.cha.chip8.screen;
 
+import lombok.Builder;
 import lombok.Value;
 
 import java.awt.*;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
 import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.stream.Collectors;
 
 @Value
+@Builder
 public class Configuration {
 
+    /**
+     * Number of XO-CHIP colors, the palette colors besides the dark and the bright color.
+     */
+    public static final int XO_CHIP_COLOR_COUNT = ScreenUnpacker.PALETTE_SIZE - 2;
+
     int listenerPort;
     SocketAddress chip8Address;
     Color brightColor;
     Color darkColor;
+    /**
+     * Colors of XO-CHIP pixels lit on the second plane only, and on both planes, {@link #XO_CHIP_COLOR_COUNT} colors.
+     * Shades of the bright color if not set.
+     */
+    Color[] xoChipColors;
+    boolean nioListener;
+    /**
+     * Socket receive buffer size (SO_RCVBUF) in bytes, 0 for the system default.
+     */
+    int receiveBufferSize;
+    /**
+     * Largest packet received, larger packets are counted as truncated and dropped.
+     */
+    @Builder.Default
+    int maxDatagramSize = AbstractUdpMessageListener.MAX_UDP_PAYLOAD_SIZE;
+    /**
+     * Multicast group to join and receive screen updates from, null to receive unicast packets only.
+     * In IPv4, any address between 224.0.0.0 to 239.255.255.255 can be used as a multicast address.
+     */
+    InetAddress multicastGroup;
+    /**
+     * Network interface to join the multicast group on, null for the first multicast capable interface.
+     */
+    NetworkInterface multicastInterface;
+    /**
+     * File to capture the received packets to, null to capture nothing. See {@link PacketCaptureWriter}.
+     */
+    String captureFile;
+    /**
+     * Packet capture file to replay instead of receiving packets, null to receive packets. See {@link PacketReplay}.
+     */
+    String replayFile;
+    /**
+     * Speed factor of the replay, 1 for the captured timing, {@link PacketReplay#AS_FAST_AS_POSSIBLE} as fast as possible.
+     */
+    @Builder.Default
+    double replaySpeed = 1.0;
+    @Builder.Default
+    RenderBackend renderBackend = RenderBackend.SWING;
+    @Builder.Default
+    int frameRate = 60;
+    boolean frameStatistics;
+    /**
+     * Print the frame latencies, from packet receive to frame presented, every 10 seconds. See {@link FrameLatency}.
+     */
+    @Builder.Default
+    LatencyReport latencyReport = LatencyReport.OFF;
+    /**
+     * Show the frame latency on the monitor bezel.
+     */
+    boolean latencyOverlay;
+    /**
+     * Render off-screen, without any window. Used for one CHIP-8 application.
+     */
+    boolean headless;
+    /**
+     * Where to write the frames rendered headless, like "y4m:-", see {@link FrameSink#open(String, int)}. Null to write no frames.
+     */
+    String frameOutput;
+    /**
+     * Monitor size rendered headless, null for the size of the original monitor pictures.
+     */
+    Dimension outputSize;
+    @Builder.Default
+    PhosphorPersistence.DecayCurve phosphorDecayCurve = PhosphorPersistence.DecayCurve.EXPONENTIAL;
+    @Builder.Default
+    int phosphorDecayMillis = 130;
+    int glowStrength;
+    boolean crtEffects;
+    @Builder.Default
+    int renderThreads = Runtime.getRuntime().availableProcessors();
+    @Builder.Default
+    SessionMode sessionMode = SessionMode.SINGLE;
+    /**
+     * Maximum number of sessions, when receiving from several emulators.
+     */
+    @Builder.Default
+    int maxSessions = 64;
+    /**
+     * Port of the HTTP metrics endpoint, see {@link MetricsServer}. 0 for no metrics.
+     */
+    int metricsPort;
+
+    /**
+     * True if frame latencies are measured, for a report or the overlay.
+     */
+    public boolean isLatencyMeasured() {
+        return (latencyReport != LatencyReport.OFF) || latencyOverlay;
+    }
+
+    /**
+     * The screen colors per palette index, see {@link ScreenUnpacker}. Index 0 is the dark (unlit) color,
+     * index 1 the bright color, and indexes 2 and 3 the XO-CHIP colors.
+     */
+    public Color[] getPalette() {
+        final Color secondPlaneColor = ((xoChipColors != null) && (xoChipColors.length > 0)) ? xoChipColors[0] : shade(brightColor, 0.5f);
+        final Color bothPlanesColor = ((xoChipColors != null) && (xoChipColors.length > 1)) ? xoChipColors[1] : shade(brightColor, 0.75f);
+        return new Color[]{darkColor, brightColor, secondPlaneColor, bothPlanesColor};
+    }
+
+    private static Color shade(Color color, float brightness) {
+        return new Color(Math.round(color.getRed() * brightness), Math.round(color.getGreen() * brightness), Math.round(color.getBlue() * brightness));
+    }
 
     @Override
     public String toString() {
@@ -19,6 +133,61 @@ public class Configuration {
                 "screen update listen port: " + listenerPort +
                 ", chip8 emulator socket key state address:" + chip8Address +
                 ", color: #" + Integer.toHexString(brightColor.getRGB()) +
+                ", xo-chip colors: " + ((xoChipColors != null) ? Arrays.stream(xoChipColors).map(color -> "#" + Integer.toHexString(color.getRGB())).collect(Collectors.joining(",")) : "shades of color") +
+                ", nio listener: " + nioListener +
+                ", receive buffer: " + ((receiveBufferSize > 0) ? receiveBufferSize + " bytes" : "system default") +
+                ", max datagram size: " + maxDatagramSize + " bytes" +
+                ", multicast group: " + ((multicastGroup != null) ? multicastGroup.getHostAddress() + " on " + ((multicastInterface != null) ? multicastInterface.getName() : "default interface") : "none") +
+                ", capture: " + ((captureFile != null) ? captureFile : "off") +
+                ", replay: " + ((replayFile != null) ? replayFile + " at " + ((replaySpeed > PacketReplay.AS_FAST_AS_POSSIBLE) ? replaySpeed + "x speed" : "max speed") : "off") +
+                ", render backend: " + renderBackend.name().toLowerCase() +
+                ", frame rate: " + ((frameRate == FrameScheduler.UNCAPPED) ? "uncapped" : frameRate) +
+                ", latency report: " + latencyReport.name().toLowerCase() + (latencyOverlay ? " with overlay" : "") +
+                ", headless: " + (headless ? "frame output " + ((frameOutput != null) ? frameOutput : "none") + ((outputSize != null) ? " " + outputSize.width + "x" + outputSize.height : "") : "no") +
+                ", phosphor decay: " + phosphorDecayCurve.name().toLowerCase() + " " + phosphorDecayMillis + " ms" +
+                ", glow: " + ((glowStrength > 0) ? glowStrength + "%" : "off") +
+                ", crt effects: " + crtEffects +
+                ", render threads: " + renderThreads +
+                ", sessions: " + ((sessionMode == SessionMode.SINGLE) ? "single" : sessionMode.name().toLowerCase() + " (max " + maxSessions + ")") +
+                ", metrics: " + ((metricsPort > 0) ? "port " + metricsPort : "off") +
                 '}';
     }
+
+    public enum RenderBackend {
+        /**
+         * Swing image label, repainted by the Swing repaint manager.
+         */
+        SWING,
+        /**
+         * AWT canvas with page flipping buffer strategy, presented directly by the render thread.
+         */
+        CANVAS
+    }
+
+    public enum LatencyReport {
+        OFF,
+        /**
+         * Percentiles of every latency stage, as text.
+         */
+        TEXT,
+        /**
+         * Percentiles of every latency stage, as one line of JSON.
+         */
+        JSON
+    }
+
+    public enum SessionMode {
+        /**
+         * One emulator, shown in the monitor window with key input.
+         */
+        SINGLE,
+        /**
+         * Any number of emulators, shown tiled in one window. View only.
+         */
+        MOSAIC,
+        /**
+         * Any number of emulators, tiled like in the mosaic, rendered without any window to the frame output.
+         */
+        HEADLESS
+    }
 }
@@ -0,0 +1,364 @@
+package se.cha.chip8.screen;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Composes the CRT monitor picture; phosphor screen, glare, bezel and the sound and key lights.
+ * <p>
+ * Only the parts that changed since the last composition are redrawn, and reported as dirty areas.
+ * Nothing here needs a display, so it can be used headless.
+ * <p>
+ * The per pixel work of the phosphor screen; the glow and the blending of the glare and bezel over the phosphor,
+ * is processed in stripes by the post-processing pipeline.
+ * <p>
+ * The monitor can be composed in any size. All images, buffers, areas and the overlay font of a size are allocated
+ * when the size is set. A frame where only the phosphor changed allocates nothing; drawing changed lights or overlay
+ * text takes a {@link Graphics} of the image.
+ */
+public class CrtComposer {
+
+    // Position and size of the phosphor screen area within the monitor image, in the original monitor picture size
+    private static final Rectangle PHOSPHOR_AREA = new Rectangle(220 - 40, 200 - 40, 940, 720);
+    // Area of the CHIP-8 pixels within the phosphor screen area
+    private static final Rectangle PHOSPHOR_PICTURE_AREA = new Rectangle(40, 40, 860, 640);
+    private static final int GLOW_RADIUS = 30;
+    // Area of the overlay text, on the bezel below the phosphor screen, in the original monitor picture size
+    private static final Rectangle OVERLAY_AREA = new Rectangle(220, 890, 860, 40);
+    private static final int OVERLAY_FONT_SIZE = 22;
+    private static final Color OVERLAY_COLOR = new Color(0xE0, 0xE0, 0xD8);
+    private static final Color OVERLAY_SHADOW_COLOR = new Color(0x10, 0x10, 0x10);
+
+    private final Configuration configuration;
+    private final Dimension baseSize;
+    private final PostProcessingPipeline pipeline;
+    private final PhosphorPersistence phosphorPersistence;
+    private final Metrics metrics = Metrics.get(); // Null unless metrics are on
+
+    // Images and buffers of the current monitor size
+    private CrtLayerCache crtLayers;
+    private BufferedImage image;
+    private int[] imageData;
+    private Rectangle phosphorArea;
+    // Areas reported as dirty, never changed after they are set, so they can be reported again every frame
+    private Rectangle fullFrameArea;
+    private Rectangle phosphorDirtyArea;
+    private Rectangle overlayArea;
+    private Rectangle soundLightArea;
+    private final Rectangle[] keyLightAreas = new Rectangle[16];
+    private Font overlayFont;
+    // Glare and bezel pixels covering the phosphor screen area
+    private int[] phosphorOverlayData;
+    private PhosphorPicture phosphorPicture;
+    private PhosphorGlow phosphorGlow;
+    private double scaleX;
+    private double scaleY;
+    // The phosphor image drawn by the current composition, and the stage drawing it, to not allocate a stage per frame
+    private int[] phosphorData;
+    private final PostProcessingPipeline.Stage drawPhosphorStage = this::drawPhosphor;
+
+    // What is currently drawn in the image
+    private boolean phosphorChanged = false;
+    private boolean phosphorPictureDrawn = false;
+    private boolean staticFrameDrawn = false;
+    private int drawnKeyState = 0x0000;
+    private boolean drawnSoundState = false;
+    private String overlayText = null;
+    private String drawnOverlayText = null;
+    private final List<Rectangle> dirtyAreas = new ArrayList<>();
+
+    /**
+     * A composer of the monitor in the original monitor picture size.
+     */
+    public CrtComposer(Configuration configuration) {
+        this(configuration, new PostProcessingPipeline(configuration.getRenderThreads()), CrtLayerCache.getBaseSize());
+    }
+
+    /**
+     * A composer of the monitor in a given size, processing on a given pipeline.
+     * Composers used on different threads can share a {@link PostProcessingPipeline#singleThreaded()} pipeline.
+     */
+    public CrtComposer(Configuration configuration, PostProcessingPipeline pipeline, Dimension size) {
+        this.configuration = configuration;
+        baseSize = CrtLayerCache.getBaseSize();
+        this.pipeline = pipeline;
+        phosphorPersistence = new PhosphorPersistence(configuration.getPhosphorDecayCurve(), configuration.getPhosphorDecayMillis(), configuration.getFrameRate());
+
+        resize(size.width, size.height);
+    }
+
+    /**
+     * The size of the original monitor pictures, the size the monitor looks best in.
+     */
+    public Dimension getBaseSize() {
+        return new Dimension(baseSize);
+    }
+
+    /**
+     * Compose the monitor in a new size. The next composition is a full frame.
+     */
+    public void resize(int width, int height) {
+        if ((image != null) && (image.getWidth() == width) && (image.getHeight() == height)) {
+            return;
+        }
+
+        scaleX = (double) width / baseSize.width;
+        scaleY = (double) height / baseSize.height;
+
+        crtLayers = CrtLayerCache.forSize(width, height);
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        imageData = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        phosphorArea = scaleArea(PHOSPHOR_AREA);
+        fullFrameArea = new Rectangle(0, 0, width, height);
+        phosphorDirtyArea = new Rectangle(phosphorArea);
+        overlayArea = scaleArea(OVERLAY_AREA);
+        soundLightArea = scaleArea(getSoundLightArea(baseSize.width));
+        for (int keyBitIndex = 0; keyBitIndex < keyLightAreas.length; keyBitIndex++) {
+            keyLightAreas[keyBitIndex] = scaleArea(getKeyLightArea(keyBitIndex, baseSize.width, baseSize.height));
+        }
+        overlayFont = new Font(Font.MONOSPACED, Font.PLAIN, Math.max(6, (int) Math.round(OVERLAY_FONT_SIZE * scaleY)));
+        phosphorOverlayData = crtLayers.getOverlayImage().getRGB(phosphorArea.x, phosphorArea.y, phosphorArea.width, phosphorArea.height, null, 0, phosphorArea.width);
+
+        final Rectangle pictureArea = scaleArea(PHOSPHOR_PICTURE_AREA);
+        phosphorPicture = configuration.isCrtEffects()
+                ? new CrtRemap(phosphorArea.width, phosphorArea.height, pictureArea, configuration.getPalette(), pipeline)
+                : new PhosphorUpscaler(phosphorArea.width, phosphorArea.height, pictureArea, configuration.getPalette());
+        phosphorGlow = (configuration.getGlowStrength() > 0)
+                ? new PhosphorGlow(phosphorArea.width, phosphorArea.height, Math.max(1, (int) Math.round(GLOW_RADIUS * Math.min(scaleX, scaleY))), configuration.getGlowStrength(), pipeline)
+                : null;
+
+        phosphorPictureDrawn = false;
+        staticFrameDrawn = false;
+    }
+
+    /**
+     * Advance the phosphor one frame towards the given screen pixels (palette indexes, lit if non zero).
+     *
+     * @return true if any phosphor pixel changed, i.e. the phosphor is still fading
+     */
+    public boolean updatePhosphor(int[] argbPixels, int width, int height) {
+        if ((width != phosphorPersistence.getWidth()) || (height != phosphorPersistence.getHeight())) {
+            // A new screen resolution starts over with a new phosphor, that is drawn even if the new screen is blank
+            phosphorPictureDrawn = false;
+        }
+        phosphorChanged = phosphorPersistence.update(argbPixels, width, height);
+        if (phosphorChanged || !phosphorPictureDrawn) {
+            // A new phosphor picture (after a resize or resolution change) is drawn in full, even if no phosphor pixel changed
+            phosphorPicture.render(phosphorPersistence);
+            if (phosphorGlow != null) {
+                phosphorGlow.render(phosphorPicture.getImageData());
+            }
+            phosphorPictureDrawn = true;
+            phosphorChanged = true;
+        }
+
+        return phosphorChanged;
+    }
+
+    /**
+     * Draw the parts of the monitor changed since the last composition.
+     * The areas drawn are available from {@link #getDirtyAreas()} until the next composition.
+     */
+    public void compose(int keyState, boolean soundState) {
+        dirtyAreas.clear();
+
+        final boolean fullFrame = !staticFrameDrawn;
+        final boolean overlayChanged = !Objects.equals(overlayText, drawnOverlayText);
+        if (fullFrame || overlayChanged || (keyState != drawnKeyState) || (soundState != drawnSoundState)) {
+            final Graphics imageGraphics = image.getGraphics();
+            if (fullFrame) {
+                imageGraphics.drawImage(crtLayers.getStaticFrameImage(), 0, 0, null);
+                dirtyAreas.add(fullFrameArea);
+                staticFrameDrawn = true;
+                drawnKeyState = 0x0000;
+                drawnSoundState = false;
+                drawnOverlayText = null;
+            }
+
+            drawLights(imageGraphics, keyState, soundState);
+            if (!Objects.equals(overlayText, drawnOverlayText)) {
+                drawOverlay(imageGraphics);
+            }
+
+            imageGraphics.dispose();
+        }
+
+        // Phosphor screen, and the glare and bezel parts covering it
+        if (phosphorChanged || fullFrame) {
+            phosphorData = (phosphorGlow != null) ? phosphorGlow.getImageData() : phosphorPicture.getImageData();
+            pipeline.run(phosphorArea.height, drawPhosphorStage);
+            dirtyAreas.add(phosphorDirtyArea);
+        }
+    }
+
+    /**
+     * Text to show on the bezel below the phosphor screen, like the frame latency, null for none.
+     * Drawn by the next composition if changed.
+     */
+    public void setOverlayText(String overlayText) {
+        this.overlayText = overlayText;
+    }
+
+    private void drawOverlay(Graphics imageGraphics) {
+        drawArea(imageGraphics, crtLayers.getStaticFrameImage(), overlayArea);
+
+        if (overlayText != null) {
+            final Graphics2D graphics = (Graphics2D) imageGraphics.create(overlayArea.x, overlayArea.y, overlayArea.width, overlayArea.height);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setFont(overlayFont);
+            final FontMetrics fontMetrics = graphics.getFontMetrics();
+            final int baseline = (overlayArea.height - fontMetrics.getHeight()) / 2 + fontMetrics.getAscent();
+            // A shadow keeps the text readable on the lighter parts of the bezel
+            final int shadowOffset = Math.max(1, (int) Math.round(2 * scaleY));
+            graphics.setColor(OVERLAY_SHADOW_COLOR);
+            graphics.drawString(overlayText, shadowOffset, baseline + shadowOffset);
+            graphics.setColor(OVERLAY_COLOR);
+            graphics.drawString(overlayText, 0, baseline);
+            graphics.dispose();
+        }
+
+        drawnOverlayText = overlayText;
+        dirtyAreas.add(overlayArea);
+    }
+
+    /**
+     * Draw the phosphor rows {@code fromRow} to {@code toRow}, with the glare and bezel on top.
+     */
+    private void drawPhosphor(int fromRow, int toRow) {
+        final int[] phosphorData = this.phosphorData;
+        final int imageWidth = image.getWidth();
+        final int phosphorWidth = phosphorArea.width;
+        for (int y = fromRow; y < toRow; y++) {
+            final int phosphorRowIndex = y * phosphorWidth;
+            final int imageRowIndex = (phosphorArea.y + y) * imageWidth + phosphorArea.x;
+            for (int x = 0; x < phosphorWidth; x++) {
+                imageData[imageRowIndex + x] = Pixels.over(phosphorOverlayData[phosphorRowIndex + x], phosphorData[phosphorRowIndex + x]);
+            }
+        }
+    }
+
+    /**
+     * Render a frame of a screen state; advance the phosphor towards the latest screen, and compose the monitor with
+     * the key and sound state. This is the frame rendered by the render thread of a monitor.
+     *
+     * @return true if the phosphor is still fading, see {@link #updatePhosphor(int[], int, int)}
+     */
+    public boolean render(ScreenState screenState) {
+        final long start = (metrics != null) ? System.nanoTime() : 0;
+
+        final ScreenState.ScreenBuffer screen = screenState.getScreen();
+        final boolean phosphorFading = updatePhosphor(screen.getPixels(), screen.getWidth(), screen.getHeight());
+        compose(screenState.getKeyState(), screenState.isSoundOn());
+
+        if (metrics != null) {
+            metrics.frameRendered(System.nanoTime() - start);
+        }
+
+        return phosphorFading;
+    }
+
+    /**
+     * Stop the post-processing threads, nothing can be composed after this.
+     */
+    public void shutdown() {
+        pipeline.shutdown();
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public List<Rectangle> getDirtyAreas() {
+        return dirtyAreas;
+    }
+
+    /**
+     * Draw (copy) an area of an image to the same area in the graphics destination.
+     */
+    private static void drawArea(Graphics graphics, Image image, Rectangle area) {
+        final int x2 = area.x + area.width;
+        final int y2 = area.y + area.height;
+        graphics.drawImage(image, area.x, area.y, x2, y2, area.x, area.y, x2, y2, null);
+    }
+
+    /**
+     * Draw the sound and key lights that changed since they were last drawn.
+     */
+    private void drawLights(Graphics imageGraphics, int currentKeyState, boolean currentSoundState) {
+        if (currentSoundState != drawnSoundState) {
+            drawLight(imageGraphics, soundLightArea, currentSoundState);
+            drawnSoundState = currentSoundState;
+        }
+
+        final int changedKeys = currentKeyState ^ drawnKeyState;
+        for (int keyBitIndex = 0; keyBitIndex <= 0xF; keyBitIndex++) {
+            if (((changedKeys >>> keyBitIndex) & 1) > 0) {
+                final boolean keyPressed = ((currentKeyState >>> keyBitIndex) & 1) > 0;
+                drawLight(imageGraphics, keyLightAreas[keyBitIndex], keyPressed);
+            }
+        }
+        drawnKeyState = currentKeyState;
+    }
+
+    private void drawLight(Graphics imageGraphics, Rectangle lightArea, boolean lit) {
+        drawArea(imageGraphics, crtLayers.getStaticFrameImage(), lightArea);
+        if (lit) {
+            drawArea(imageGraphics, crtLayers.getActiveLightsImage(), lightArea);
+        }
+        dirtyAreas.add(lightArea);
+    }
+
+    /**
+     * An area in the original monitor picture size, scaled to the current monitor size. The scaled area covers all
+     * pixels the original area covers.
+     */
+    private Rectangle scaleArea(Rectangle area) {
+        final int x1 = (int) Math.floor(area.x * scaleX);
+        final int y1 = (int) Math.floor(area.y * scaleY);
+        final int x2 = Math.min(image.getWidth(), (int) Math.ceil((area.x + area.width) * scaleX));
+        final int y2 = Math.min(image.getHeight(), (int) Math.ceil((area.y + area.height) * scaleY));
+        return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * Light areas in the original monitor picture size.
+     */
+    private static Rectangle getSoundLightArea(int width) {
+        final int ledX = width - 195;
+        final int ledY = 220;
+        final int ledSize = 35;
+        return new Rectangle(ledX, ledY, ledSize, ledSize);
+    }
+
+    private static Rectangle getKeyLightArea(int keyBitIndex, int width, int height) {
+        final int xs = width - 240;
+        final int ys = height - 315;
+        final int kw = 31;
+
+        int kx = 0;
+        int ky = 0;
+        if ((keyBitIndex >= 0x1) && (keyBitIndex <= 0x9)) {
+            kx = (keyBitIndex - 1) % 3;
+            ky = (keyBitIndex - 1) / 3;
+        } else if ((keyBitIndex >= 0xC) && (keyBitIndex <= 0xF)) {
+            kx = 3;
+            ky = keyBitIndex - 0xC;
+        } else if (keyBitIndex == 0xA) {
+            kx = 0;
+            ky = 3;
+        } else if (keyBitIndex == 0x0) {
+            kx = 1;
+            ky = 3;
+        } else if (keyBitIndex == 0xB) {
+            kx = 2;
+            ky = 3;
+        }
+
+        return new Rectangle(xs + kx * kw, ys + ky * kw, kw, kw);
+    }
+}
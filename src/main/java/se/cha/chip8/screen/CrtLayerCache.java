@@ -0,0 +1,151 @@
+package se.cha.chip8.screen;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The static layers of the CRT monitor picture, composited once per monitor size instead of once per frame.
+ * <p>
+ * Layers are created as images compatible with the screen device (when there is one),
+ * so Java2D can keep accelerated copies of them.
+ * <p>
+ * The monitor pictures are scaled from the original pictures, and the layers of the last few sizes are cached,
+ * as a window resize tends to go back and forth between a few sizes.
+ */
+public class CrtLayerCache {
+
+    private static final int CACHED_SIZES = 2;
+
+    private static BufferedImage crtSourceImage = null;
+    private static BufferedImage crtGlareSourceImage = null;
+    private static BufferedImage activeLightsSourceImage = null;
+
+    private static final Map<Dimension, CrtLayerCache> CACHE = new LinkedHashMap<Dimension, CrtLayerCache>(CACHED_SIZES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Dimension, CrtLayerCache> eldest) {
+            return size() > CACHED_SIZES;
+        }
+    };
+
+    private final BufferedImage activeLightsImage;
+    private final BufferedImage overlayImage;
+    private final BufferedImage staticFrameImage;
+
+    private CrtLayerCache(int width, int height) {
+        final BufferedImage crtImage = scaleImage(crtSourceImage, width, height);
+        final BufferedImage crtGlareImage = scaleImage(crtGlareSourceImage, width, height);
+
+        activeLightsImage = createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        final Graphics activeLightsGraphics = activeLightsImage.getGraphics();
+        activeLightsGraphics.drawImage(scaleImage(activeLightsSourceImage, width, height), 0, 0, null);
+        activeLightsGraphics.dispose();
+
+        // Glare and monitor bezel, drawn on top of the phosphor
+        overlayImage = createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        final Graphics overlayGraphics = overlayImage.getGraphics();
+        overlayGraphics.drawImage(crtGlareImage, 0, 0, null);
+        overlayGraphics.drawImage(crtImage, 0, 0, null);
+        overlayGraphics.dispose();
+
+        // The whole monitor with a black screen and all lights off
+        staticFrameImage = createCompatibleImage(width, height, Transparency.OPAQUE);
+        final Graphics staticFrameGraphics = staticFrameImage.getGraphics();
+        staticFrameGraphics.setColor(Color.BLACK);
+        staticFrameGraphics.fillRect(0, 0, width, height);
+        staticFrameGraphics.drawImage(overlayImage, 0, 0, null);
+        staticFrameGraphics.dispose();
+    }
+
+    /**
+     * The monitor layers in the original size of the monitor pictures.
+     */
+    public static CrtLayerCache forBaseSize() {
+        final Dimension baseSize = getBaseSize();
+        return forSize(baseSize.width, baseSize.height);
+    }
+
+    public static synchronized CrtLayerCache forSize(int width, int height) {
+        return CACHE.computeIfAbsent(new Dimension(width, height), size -> new CrtLayerCache(size.width, size.height));
+    }
+
+    /**
+     * The size of the original monitor pictures.
+     */
+    public static synchronized Dimension getBaseSize() {
+        if (crtSourceImage == null) {
+            try {
+                crtSourceImage = ImageIO.read(Objects.requireNonNull(ClassLoader.getSystemResourceAsStream("CHIP-8 monitor.png")));
+                crtGlareSourceImage = ImageIO.read(Objects.requireNonNull(ClassLoader.getSystemResourceAsStream("CHIP-8 monitor - glare.png")));
+                activeLightsSourceImage = ImageIO.read(Objects.requireNonNull(ClassLoader.getSystemResourceAsStream("CHIP-8 monitor - active.png")));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        return new Dimension(crtSourceImage.getWidth(), crtSourceImage.getHeight());
+    }
+
+    /**
+     * Scale an image with bilinear interpolation. Large reductions are done in halving steps, to not skip source pixels.
+     */
+    private static BufferedImage scaleImage(BufferedImage image, int width, int height) {
+        BufferedImage scaledImage = image;
+        while ((scaledImage.getWidth() != width) || (scaledImage.getHeight() != height)) {
+            final int stepWidth = Math.max(width, scaledImage.getWidth() / 2);
+            final int stepHeight = Math.max(height, scaledImage.getHeight() / 2);
+
+            final BufferedImage stepImage = new BufferedImage(stepWidth, stepHeight, BufferedImage.TYPE_INT_ARGB);
+            final Graphics2D g2 = stepImage.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.drawImage(scaledImage, 0, 0, stepWidth, stepHeight, null);
+            g2.dispose();
+
+            scaledImage = stepImage;
+        }
+
+        return scaledImage;
+    }
+
+    public static BufferedImage createCompatibleImage(int width, int height, int transparency) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            final GraphicsConfiguration graphicsConfiguration = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+            return graphicsConfiguration.createCompatibleImage(width, height, transparency);
+        }
+
+        return new BufferedImage(width, height, (transparency == Transparency.OPAQUE) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+    }
+
+    public int getWidth() {
+        return staticFrameImage.getWidth();
+    }
+
+    public int getHeight() {
+        return staticFrameImage.getHeight();
+    }
+
+    /**
+     * The monitor with all lights lit. Only the light areas are of interest.
+     */
+    public BufferedImage getActiveLightsImage() {
+        return activeLightsImage;
+    }
+
+    /**
+     * Glare and monitor bezel, to be drawn on top of the phosphor screen.
+     */
+    public BufferedImage getOverlayImage() {
+        return overlayImage;
+    }
+
+    /**
+     * The whole monitor, with a black screen and all lights off.
+     */
+    public BufferedImage getStaticFrameImage() {
+        return staticFrameImage;
+    }
+}
@@ -0,0 +1,176 @@
+package se.cha.chip8.screen;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Draws the phosphor intensities on a curved CRT tube; barrel distortion, vignette, scanlines and a shadow mask.
+ * <p>
+ * Where on the tube each image pixel is, how bright it is shown (vignette and scanline) and which shadow mask
+ * color it has, is computed once per image into lookup tables. Which screen pixel each image pixel shows is computed
+ * from the tube positions, with integer arithmetic only, when the screen resolution changes.
+ * Each frame is then only a gather of the screen pixel intensities and colors through the tables,
+ * processed in stripes by the post-processing pipeline.
+ */
+public class CrtRemap implements PhosphorPicture {
+
+    // Barrel distortion, how much the picture bulges
+    private static final double CURVATURE = 0.06;
+    // Vignette, how much the picture darkens towards the edges (exponent of the edge falloff)
+    private static final double VIGNETTE = 0.25;
+    private static final int SCANLINE_INTERVAL = 3;
+    private static final int SCANLINE_WEIGHT = 0x80;
+    // Shadow mask, the color components not matching the phosphor triad color of an image column are dimmed to this (of 256)
+    private static final int SHADOW_MASK_DIM = 0xD0;
+
+    private final BufferedImage image;
+    private final int[] imageData;
+    private final Rectangle pictureArea;
+    private final PostProcessingPipeline pipeline;
+
+    private static final int LEVELS = PhosphorPersistence.MAX_INTENSITY + 1;
+
+    // Color per palette index, shadow mask triad color (red, green and blue) and intensity level
+    private final int[] maskColors = new int[ScreenUnpacker.PALETTE_SIZE * 3 * LEVELS];
+
+    // Per image pixel; position on the tube (16 bit fractions of the screen width and height), index of the screen pixel shown,
+    // brightness (0-255, 0 outside of the screen) and shadow mask triad color
+    private final int[] tubePositionX;
+    private final int[] tubePositionY;
+    private final int[] sourceIndex;
+    private final byte[] weight;
+    private final byte[] mask;
+    private int sourceWidth = 0;
+    private int sourceHeight = 0;
+
+    /**
+     * @param width       image width
+     * @param height      image height
+     * @param pictureArea the area of the image covered by the (uncurved) screen pixels, the rest is background
+     * @param palette     lit color per palette index, index 0 is the dark (unlit) color
+     */
+    public CrtRemap(int width, int height, Rectangle pictureArea, Color[] palette, PostProcessingPipeline pipeline) {
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        imageData = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.pictureArea = new Rectangle(pictureArea);
+        this.pipeline = pipeline;
+
+        final Color darkColor = palette[0];
+        for (int paletteIndex = 0; paletteIndex < ScreenUnpacker.PALETTE_SIZE; paletteIndex++) {
+            final Color litColor = PhosphorUpscaler.paletteColor(palette, paletteIndex);
+            for (int level = 0; level <= PhosphorPersistence.MAX_INTENSITY; level++) {
+                // Same brightness as the flat upscaled picture, a lit pixel is dimmed by a quarter
+                final int color = PhosphorUpscaler.blend(darkColor, litColor, level * 3 / 4);
+                for (int triad = 0; triad < 3; triad++) {
+                    maskColors[(paletteIndex * 3 + triad) * LEVELS + level] = shadowMask(color, triad);
+                }
+            }
+        }
+
+        tubePositionX = new int[width * height];
+        tubePositionY = new int[width * height];
+        sourceIndex = new int[width * height];
+        weight = new byte[width * height];
+        mask = new byte[width * height];
+        pipeline.run(height, (fromRow, toRow) -> {
+            for (int y = fromRow; y < toRow; y++) {
+                for (int x = 0; x < width; x++) {
+                    mapPixel(x, y, y * width + x);
+                }
+            }
+        });
+        Arrays.fill(imageData, darkColor.getRGB());
+    }
+
+    /**
+     * Redraw the whole picture.
+     */
+    @Override
+    public void render(PhosphorPersistence phosphor) {
+        if ((phosphor.getWidth() != sourceWidth) || (phosphor.getHeight() != sourceHeight)) {
+            resize(phosphor.getWidth(), phosphor.getHeight());
+        }
+
+        final int[] intensity = phosphor.getIntensity();
+        final int[] color = phosphor.getColor();
+        final int width = image.getWidth();
+        pipeline.run(image.getHeight(), (fromRow, toRow) -> {
+            for (int i = fromRow * width; i < toRow * width; i++) {
+                final int source = sourceIndex[i];
+                final int level = (intensity[source] * (weight[i] & 0xFF) + 0x80) >>> 8;
+                imageData[i] = maskColors[(color[source] * 3 + mask[i]) * LEVELS + level];
+            }
+        });
+    }
+
+    /**
+     * Map the tube positions to the screen pixels of a new screen size.
+     */
+    private void resize(int width, int height) {
+        sourceWidth = width;
+        sourceHeight = height;
+
+        final int imageWidth = image.getWidth();
+        pipeline.run(image.getHeight(), (fromRow, toRow) -> {
+            for (int i = fromRow * imageWidth; i < toRow * imageWidth; i++) {
+                sourceIndex[i] = ((tubePositionY[i] * height) >>> 16) * width + ((tubePositionX[i] * width) >>> 16);
+            }
+        });
+    }
+
+    private void mapPixel(int x, int y, int index) {
+        // Image pixel center, relative the picture area center, -1.0 to 1.0 over the picture area
+        final double u = ((x + 0.5 - pictureArea.x) / pictureArea.width) * 2.0 - 1.0;
+        final double v = ((y + 0.5 - pictureArea.y) / pictureArea.height) * 2.0 - 1.0;
+
+        // Barrel distortion, the picture bulges towards the viewer and bends away at the edges
+        final double distortion = 1.0 + CURVATURE * (u * u + v * v);
+        final double tubeX = (u * distortion + 1.0) / 2.0;
+        final double tubeY = (v * distortion + 1.0) / 2.0;
+
+        // Scanlines and shadow mask triads follow the curved tube, in picture area pixels
+        final int tubeRow = (int) Math.floor(tubeY * pictureArea.height);
+        final int tubeColumn = (int) Math.floor(tubeX * pictureArea.width);
+        mask[index] = (byte) Math.floorMod(tubeColumn, 3);
+
+        if ((tubeX < 0.0) || (tubeX >= 1.0) || (tubeY < 0.0) || (tubeY >= 1.0)) {
+            // Outside of the screen, unlit phosphor
+            tubePositionX[index] = 0;
+            tubePositionY[index] = 0;
+            weight[index] = 0;
+            return;
+        }
+
+        tubePositionX[index] = (int) (tubeX * 0x10000);
+        tubePositionY[index] = (int) (tubeY * 0x10000);
+        final double vignette = Math.pow(16.0 * tubeX * (1.0 - tubeX) * tubeY * (1.0 - tubeY), VIGNETTE);
+        final int scanline = ((tubeRow % SCANLINE_INTERVAL) == 0) ? SCANLINE_WEIGHT : 0x100;
+
+        weight[index] = (byte) Math.min(0xFF, (int) (vignette * scanline));
+    }
+
+    /**
+     * Dim the color components not of the shadow mask triad color (0 red, 1 green, 2 blue).
+     */
+    private static int shadowMask(int color, int triad) {
+        int maskedColor = 0xFF000000;
+        for (int component = 0; component < 3; component++) {
+            final int shift = 16 - component * 8;
+            final int value = (color >>> shift) & 0xFF;
+            maskedColor |= ((component == triad) ? value : (value * SHADOW_MASK_DIM) >>> 8) << shift;
+        }
+        return maskedColor;
+    }
+
+    @Override
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    @Override
+    public int[] getImageData() {
+        return imageData;
+    }
+}
@@ -0,0 +1,39 @@
+package se.cha.chip8.screen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes messages with the fast {@link StreamingPeripheralStateDecoder}, and lets the tolerant
+ * {@link JacksonPeripheralStateDecoder} have a go at messages not in the layout the streaming decoder expects.
+ * Messages the streaming decoder found invalid, see {@link InvalidMessageException}, are not passed on to Jackson.
+ * Not thread safe, use one decoder per listener thread.
+ */
+public class FallbackPeripheralStateDecoder implements PeripheralStateDecoder {
+
+    private final PeripheralStateDecoder decoder = new StreamingPeripheralStateDecoder();
+    private final PeripheralStateDecoder fallbackDecoder = new JacksonPeripheralStateDecoder();
+
+    @Override
+    public PeripheralState decode(byte[] data, int offset, int length) throws IOException {
+        try {
+            return decoder.decode(data, offset, length);
+        } catch (InvalidMessageException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            // Not the message layout the streaming decoder expects, let Jackson have a go at it
+            return fallbackDecoder.decode(data, offset, length);
+        }
+    }
+
+    @Override
+    public PeripheralState decode(ByteBuffer data) throws IOException {
+        try {
+            return decoder.decode(data);
+        } catch (InvalidMessageException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            return fallbackDecoder.decode(data);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package se.cha.chip8.screen;
+
+import java.util.Locale;
+
+/**
+ * Latency of the screens shown, from packet receive to the frame presented, in four stages:
+ * <pre>
+ *   decode: received in the UDP listener until decoded (and the burst coalesced) in the {@link UdpDataProcessor}
+ *   unpack: decoded until unpacked and handed to the render thread in the {@link ScreenState}
+ *   render: unpacked until the frame showing the screen is composed and presented, including waiting for the frame tick
+ *   total:  received until presented
+ * </pre>
+ * The times are taken on the listener thread and handed over with the screen, see {@link ScreenState.ScreenBuffer},
+ * and recorded on the render thread when a screen is presented for the first time. Recording never allocates.
+ * <p>
+ * The latencies are collected over intervals of {@link #REPORT_INTERVAL_NANOS}. At the end of an interval they are
+ * printed, if a report format is configured, and the next interval starts over.
+ * <p>
+ * Only to be used by the render thread.
+ */
+public class FrameLatency {
+
+    private static final long REPORT_INTERVAL_NANOS = 10_000_000_000L;
+    private static final long OVERLAY_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final Configuration.LatencyReport reportFormat;
+
+    private final LatencyHistogram decodeLatencies = new LatencyHistogram();
+    private final LatencyHistogram unpackLatencies = new LatencyHistogram();
+    private final LatencyHistogram renderLatencies = new LatencyHistogram();
+    private final LatencyHistogram totalLatencies = new LatencyHistogram();
+
+    private long lastFrameNumber = 0;
+    private long intervalStart;
+    private long overlayUpdate;
+    private String overlayText = "";
+
+    /**
+     * @param reportFormat how to print the latencies at the end of every interval
+     */
+    public FrameLatency(Configuration.LatencyReport reportFormat) {
+        this.reportFormat = reportFormat;
+        intervalStart = System.nanoTime();
+        overlayUpdate = intervalStart;
+    }
+
+    /**
+     * A frame showing the screen was presented. Only a screen presented for the first time is recorded.
+     *
+     * @param presentNanos the time the frame was presented, {@link System#nanoTime()}
+     */
+    public void framePresented(ScreenState.ScreenBuffer screen, long presentNanos) {
+        final long frameNumber = screen.getFrameNumber();
+        if ((frameNumber != 0) && (frameNumber != lastFrameNumber)) {
+            lastFrameNumber = frameNumber;
+            decodeLatencies.record(screen.getDecodeNanos() - screen.getReceiveNanos());
+            unpackLatencies.record(screen.getUnpackNanos() - screen.getDecodeNanos());
+            renderLatencies.record(presentNanos - screen.getUnpackNanos());
+            totalLatencies.record(presentNanos - screen.getReceiveNanos());
+        }
+
+        if (presentNanos - overlayUpdate >= OVERLAY_INTERVAL_NANOS) {
+            overlayText = getOverlayLine();
+            overlayUpdate = presentNanos;
+        }
+
+        if (presentNanos - intervalStart >= REPORT_INTERVAL_NANOS) {
+            if (reportFormat == Configuration.LatencyReport.TEXT) {
+                System.out.println(getReport());
+            } else if (reportFormat == Configuration.LatencyReport.JSON) {
+                System.out.println(toJson());
+            }
+            reset();
+            intervalStart = presentNanos;
+        }
+    }
+
+    public void reset() {
+        decodeLatencies.reset();
+        unpackLatencies.reset();
+        renderLatencies.reset();
+        totalLatencies.reset();
+    }
+
+    /**
+     * Receive to present latency of the current interval, a short line for the monitor overlay. Updated every second.
+     */
+    public String getOverlayText() {
+        return overlayText;
+    }
+
+    private String getOverlayLine() {
+        return String.format("latency p50 %.1f  p99 %.1f  max %.1f ms",
+                totalLatencies.getValueAtPercentile(50) / 1_000_000.0,
+                totalLatencies.getValueAtPercentile(99) / 1_000_000.0,
+                totalLatencies.getMax() / 1_000_000.0);
+    }
+
+    /**
+     * Latency percentiles of every stage in the current interval.
+     */
+    public String getReport() {
+        return String.format("Frame latency: %d frames, total %s; decode %s; unpack %s; render %s",
+                totalLatencies.getCount(),
+                stageSummary(totalLatencies),
+                stageSummary(decodeLatencies),
+                stageSummary(unpackLatencies),
+                stageSummary(renderLatencies));
+    }
+
+    private static String stageSummary(LatencyHistogram histogram) {
+        return String.format("p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                histogram.getValueAtPercentile(50) / 1_000_000.0,
+                histogram.getValueAtPercentile(99) / 1_000_000.0,
+                histogram.getMax() / 1_000_000.0);
+    }
+
+    /**
+     * Latency percentiles of every stage in the current interval, as one line of JSON, in milliseconds.
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"timestamp\":%d,\"frames\":%d,\"total\":%s,\"decode\":%s,\"unpack\":%s,\"render\":%s}",
+                System.currentTimeMillis(),
+                totalLatencies.getCount(),
+                stageJson(totalLatencies),
+                stageJson(decodeLatencies),
+                stageJson(unpackLatencies),
+                stageJson(renderLatencies));
+    }
+
+    private static String stageJson(LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "{\"p50_ms\":%.3f,\"p99_ms\":%.3f,\"max_ms\":%.3f}",
+                histogram.getValueAtPercentile(50) / 1_000_000.0,
+                histogram.getValueAtPercentile(99) / 1_000_000.0,
+                histogram.getMax() / 1_000_000.0);
+    }
+
+    public LatencyHistogram getTotalLatencies() {
+        return totalLatencies;
+    }
+
+    public LatencyHistogram getDecodeLatencies() {
+        return decodeLatencies;
+    }
+
+    public LatencyHistogram getUnpackLatencies() {
+        return unpackLatencies;
+    }
+
+    public LatencyHistogram getRenderLatencies() {
+        return renderLatencies;
+    }
+}
@@ -0,0 +1,171 @@
+package se.cha.chip8.screen;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a render loop to a target frame rate using absolute frame deadlines on {@link System#nanoTime()}.
+ * <p>
+ * Since each deadline is a fixed frame interval after the previous deadline (not after the previous frame was done),
+ * render time does not add to the frame interval and the frame rate does not drift.
+ * A frame that is a little late starts immediately to catch up with the schedule,
+ * a loop that has fallen more than {@code maxCatchUpFrames} behind skips the missed frames and realigns to now.
+ * <p>
+ * Not thread safe, to be used by the render thread only.
+ */
+public class FrameScheduler {
+
+    public static final int UNCAPPED = 0;
+
+    /**
+     * Frame rate of the frames that only advance the phosphor afterglow when the frame rate is {@link #UNCAPPED},
+     * see {@link #awaitFadeFrame()}.
+     */
+    public static final int UNCAPPED_FADE_FRAME_RATE = 60;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final int frameRate;
+    private final long frameIntervalNanos;
+    private final int maxCatchUpFrames;
+    private final long reportIntervalNanos;
+    private final Metrics metrics = Metrics.get(); // Null unless metrics are on
+
+    private long nextFrameDeadline = 0; // Start time of the upcoming frame
+    private boolean scheduled = false;
+
+    // Pacing statistics, for the current report period
+    private long periodStart = 0;
+    private long lastFrameStart = 0;
+    private long frameCount = 0;
+    private long lateFrameCount = 0;
+    private long skippedFrameCount = 0;
+    private long frameIntervalSum = 0;
+    private long maxFrameInterval = 0;
+
+    /**
+     * @param frameRate          target frame rate in frames per second, or {@link #UNCAPPED}
+     * @param maxCatchUpFrames   how many frames late the loop may be and still catch up, instead of skipping frames
+     * @param reportIntervalSeconds how often to print a pacing report to stdout, or 0 for no reports
+     */
+    public FrameScheduler(int frameRate, int maxCatchUpFrames, int reportIntervalSeconds) {
+        this.frameRate = frameRate;
+        this.frameIntervalNanos = (frameRate > 0) ? NANOS_PER_SECOND / frameRate : 0;
+        this.maxCatchUpFrames = maxCatchUpFrames;
+        this.reportIntervalNanos = reportIntervalSeconds * NANOS_PER_SECOND;
+    }
+
+    /**
+     * Forget the current schedule, the next frame starts immediately. Call when the render loop has been idle.
+     */
+    public void resync() {
+        scheduled = false;
+        lastFrameStart = 0;
+    }
+
+    /**
+     * Wait until it is time to start the next frame.
+     *
+     * @throws InterruptedException if the render thread is interrupted while waiting
+     */
+    public void awaitNextFrame() throws InterruptedException {
+        long now = System.nanoTime();
+
+        if (frameIntervalNanos > 0) {
+            if (!scheduled) {
+                nextFrameDeadline = now + frameIntervalNanos;
+                scheduled = true;
+            } else {
+                final long lateNanos = now - nextFrameDeadline;
+                if (lateNanos > maxCatchUpFrames * frameIntervalNanos) {
+                    // Too far behind, skip the missed frames and realign the schedule
+                    skippedFrameCount += lateNanos / frameIntervalNanos;
+                    if (metrics != null) {
+                        metrics.framesSkipped(lateNanos / frameIntervalNanos);
+                    }
+                    nextFrameDeadline = now;
+                } else if (lateNanos > 0) {
+                    lateFrameCount++;
+                }
+            }
+
+            while ((now = System.nanoTime()) < nextFrameDeadline) {
+                LockSupport.parkNanos(this, nextFrameDeadline - now);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+
+            nextFrameDeadline += frameIntervalNanos;
+        } else if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        recordFrameStart(now);
+    }
+
+    /**
+     * Wait until it is time for a frame that only advances the phosphor afterglow, nothing new to render. With the
+     * frame rate {@link #UNCAPPED}, such frames are paced at {@link #UNCAPPED_FADE_FRAME_RATE}, the rate the decay is
+     * made for, instead of spinning through the fade in a few milliseconds. Returns early when the render thread is
+     * unparked, for something new to render. With a frame rate, {@link #awaitNextFrame()} already paces the frames.
+     *
+     * @throws InterruptedException if the render thread is interrupted while waiting
+     */
+    public void awaitFadeFrame() throws InterruptedException {
+        if ((frameIntervalNanos == 0) && (lastFrameStart != 0)) {
+            final long waitNanos = lastFrameStart + NANOS_PER_SECOND / UNCAPPED_FADE_FRAME_RATE - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(this, waitNanos);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+    }
+
+    private void recordFrameStart(long now) {
+        if (lastFrameStart != 0) {
+            final long frameInterval = now - lastFrameStart;
+            frameIntervalSum += frameInterval;
+            maxFrameInterval = Math.max(maxFrameInterval, frameInterval);
+            frameCount++;
+        }
+        lastFrameStart = now;
+
+        if (periodStart == 0) {
+            periodStart = now;
+        } else if ((reportIntervalNanos > 0) && (now - periodStart >= reportIntervalNanos)) {
+            System.out.println(getPacingReport());
+            resetStatistics(now);
+        }
+    }
+
+    /**
+     * Pacing statistics since the last report.
+     */
+    public String getPacingReport() {
+        final double averageIntervalMillis = (frameCount > 0) ? frameIntervalSum / 1_000_000.0 / frameCount : 0.0;
+        final double framesPerSecond = (averageIntervalMillis > 0.0) ? 1000.0 / averageIntervalMillis : 0.0;
+
+        return String.format("Frame pacing: %.1f fps (target %s), frame interval avg %.2f ms, max %.2f ms, late frames %d, skipped frames %d",
+                framesPerSecond,
+                (frameRate > 0) ? Integer.toString(frameRate) : "uncapped",
+                averageIntervalMillis,
+                maxFrameInterval / 1_000_000.0,
+                lateFrameCount,
+                skippedFrameCount);
+    }
+
+    private void resetStatistics(long now) {
+        periodStart = now;
+        frameCount = 0;
+        lateFrameCount = 0;
+        skippedFrameCount = 0;
+        frameIntervalSum = 0;
+        maxFrameInterval = 0;
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+}
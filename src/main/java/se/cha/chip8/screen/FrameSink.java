@@ -0,0 +1,68 @@
+package se.cha.chip8.screen;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes composed CRT frames somewhere, like to a video encoder or to image files.
+ * A sink is only used by one thread, see {@link FrameSinkWriter}.
+ */
+public interface FrameSink extends Closeable {
+
+    /**
+     * Target of a frame output written to standard output.
+     */
+    String STANDARD_OUTPUT = "-";
+
+    /**
+     * Write a frame.
+     *
+     * @param argbPixels the frame pixels, row by row, one ARGB value per pixel
+     */
+    void writeFrame(int[] argbPixels, int width, int height) throws IOException;
+
+    /**
+     * Open the sink of a frame output on the format "format:target".
+     * <ul>
+     * <li>"raw:file" raw RGBA, four bytes per pixel, to a file or named pipe</li>
+     * <li>"y4m:file" YUV4MPEG2 video stream, as read by ffmpeg and most video encoders</li>
+     * <li>"png:pattern" PNG image sequence, a file name pattern with the frame number like "frames/frame-%06d.png",
+     * or a directory</li>
+     * </ul>
+     * Raw and Y4M streams are written to standard output with the target {@link #STANDARD_OUTPUT}.
+     *
+     * @param frameRate frame rate of the stream, for the formats that need one
+     */
+    static FrameSink open(String frameOutput, int frameRate) throws IOException {
+        final int separator = frameOutput.indexOf(':');
+        if (separator <= 0 || separator == frameOutput.length() - 1) {
+            throw new IllegalArgumentException("Frame output \"" + frameOutput + "\" is not on the format \"format:target\".");
+        }
+
+        final String format = frameOutput.substring(0, separator).trim().toLowerCase();
+        final String target = frameOutput.substring(separator + 1).trim();
+        switch (format) {
+            case "raw":
+                return new RawRgbaFrameSink(openStream(target));
+            case "y4m":
+                return new Y4mFrameSink(openStream(target), frameRate);
+            case "png":
+                return new PngSequenceFrameSink(target);
+            default:
+                throw new IllegalArgumentException("Unknown frame output format \"" + format + "\", expected \"raw\", \"y4m\" or \"png\".");
+        }
+    }
+
+    static boolean isStandardOutput(String frameOutput) {
+        return (frameOutput != null) && frameOutput.trim().endsWith(":" + STANDARD_OUTPUT);
+    }
+
+    static OutputStream openStream(String target) throws IOException {
+        final OutputStream outputStream = STANDARD_OUTPUT.equals(target) ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(target);
+        return new BufferedOutputStream(outputStream, 1 << 16);
+    }
+}
@@ -0,0 +1,153 @@
+package se.cha.chip8.screen;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes frames to a {@link FrameSink} on a thread of its own, so a slow sink (disk, encoder) never stalls the render thread.
+ * <p>
+ * Frames are copied into a fixed number of reused frame buffers and queued for the writer thread. When all buffers are
+ * queued, the sink is not keeping up, and new frames are dropped instead of waiting for the sink. If the sink fails,
+ * like when the reader of a pipe goes away, the error is printed and further frames are dropped.
+ */
+public class FrameSinkWriter {
+
+    private static final Frame END_OF_FRAMES = new Frame();
+
+    private final FrameSink frameSink;
+    private final BlockingQueue<Frame> freeFrames;
+    private final BlockingQueue<Frame> queuedFrames;
+    private final Thread writerThread;
+    private final AtomicLong writtenFrameCount = new AtomicLong();
+    private final AtomicLong droppedFrameCount = new AtomicLong();
+    private volatile boolean failed = false;
+    private boolean closed = false;
+
+    /**
+     * @param queueSize the number of frames that can be queued for the sink, each the size of a frame
+     */
+    public FrameSinkWriter(FrameSink frameSink, int queueSize) {
+        this.frameSink = frameSink;
+        freeFrames = new ArrayBlockingQueue<>(queueSize);
+        queuedFrames = new ArrayBlockingQueue<>(queueSize + 1); // Room for the end of frames marker
+        for (int i = 0; i < queueSize; i++) {
+            freeFrames.add(new Frame());
+        }
+
+        writerThread = new Thread(this::writeLoop, "Frame sink writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queue a copy of the image for the sink, without waiting. Only to be called from one (render) thread.
+     *
+     * @return false if the frame was dropped, all frame buffers are queued or the sink failed
+     */
+    public boolean offer(BufferedImage image) {
+        final Frame frame = failed ? null : freeFrames.poll();
+        if (frame == null) {
+            droppedFrameCount.incrementAndGet();
+            return false;
+        }
+
+        frame.copyFrom(image);
+        queuedFrames.add(frame);
+        return true;
+    }
+
+    private void writeLoop() {
+        try {
+            Frame frame;
+            while ((frame = queuedFrames.take()) != END_OF_FRAMES) {
+                if (!failed) {
+                    write(frame);
+                } else {
+                    droppedFrameCount.incrementAndGet();
+                }
+                freeFrames.add(frame);
+            }
+        } catch (InterruptedException e) {
+            // Writer thread stopped
+        }
+    }
+
+    private void write(Frame frame) {
+        try {
+            frameSink.writeFrame(frame.pixels, frame.width, frame.height);
+            writtenFrameCount.incrementAndGet();
+        } catch (IOException e) {
+            failed = true;
+            droppedFrameCount.incrementAndGet();
+            System.err.println("Frame output failed, no more frames are written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the queued frames, close the sink and wait for the writer thread to end.
+     * Only to be called from the thread offering frames, or after it ended.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        queuedFrames.add(END_OF_FRAMES);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            frameSink.close();
+        } catch (IOException e) {
+            System.err.println("Could not close frame output: " + e.getMessage());
+        }
+    }
+
+    public long getWrittenFrameCount() {
+        return writtenFrameCount.get();
+    }
+
+    public long getDroppedFrameCount() {
+        return droppedFrameCount.get();
+    }
+
+    public String getReport() {
+        return String.format("Frame output: written %d, dropped %d, queued %d", getWrittenFrameCount(), getDroppedFrameCount(), queuedFrames.size());
+    }
+
+    /**
+     * A frame buffer, reallocated only when the frame size changes.
+     */
+    private static class Frame {
+        private int[] pixels = new int[0];
+        private int width;
+        private int height;
+
+        void copyFrom(BufferedImage image) {
+            width = image.getWidth();
+            height = image.getHeight();
+            if (pixels.length != width * height) {
+                pixels = new int[width * height];
+            }
+
+            if ((image.getType() == BufferedImage.TYPE_INT_ARGB) && (image.getRaster().getDataBuffer() instanceof DataBufferInt)) {
+                // Image pixels row by row, unless the image is a sub image
+                final int[] imageData = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                if (imageData.length == pixels.length) {
+                    System.arraycopy(imageData, 0, pixels, 0, pixels.length);
+                    return;
+                }
+            }
+
+            image.getRGB(0, 0, width, height, pixels, 0, width);
+        }
+    }
+}
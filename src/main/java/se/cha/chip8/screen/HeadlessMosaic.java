@@ -0,0 +1,113 @@
+package se.cha.chip8.screen;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * The monitors of all sessions of a {@link SessionServer}, tiled in a {@link SessionMosaic} rendered off-screen, without
+ * any window, for machines without a display.
+ * <p>
+ * The mosaic is rendered like in the {@link MosaicFrame}, and the frames are streamed to a {@link FrameSink} through a
+ * {@link FrameSinkWriter}, like in the {@link HeadlessScreen}. The frames keep the output size, so streams of a fixed
+ * frame size can be written; sessions that do not fit, with the monitors at their smallest, are left out.
+ */
+public class HeadlessMosaic implements ScreenState.Listener {
+
+    // Frames queued for the frame sink, before frames are dropped
+    private static final int FRAME_QUEUE_SIZE = 8;
+    private static final long REPORT_INTERVAL_NANOS = 10_000_000_000L;
+    private static final Dimension DEFAULT_OUTPUT_SIZE = new Dimension(1280, 800);
+
+    private final Configuration configuration;
+    private final RenderLoop.RenderRequestFlag renderRequests = new RenderLoop.RenderRequestFlag();
+
+    private SessionServer sessionServer;
+    private SessionMosaic sessionMosaic = null;
+    private FrameSinkWriter frameSinkWriter = null;
+    private Dimension outputSize = null;
+    private long lastReport = 0; // Owned by the render thread
+
+    private volatile RenderLoop renderLoop = null;
+
+    public HeadlessMosaic(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Start rendering the sessions of the server.
+     *
+     * @param frameSink where to write the frames, null to only render them
+     */
+    public void initialize(SessionServer sessionServer, FrameSink frameSink) {
+        this.sessionServer = sessionServer;
+        outputSize = (configuration.getOutputSize() != null) ? configuration.getOutputSize() : DEFAULT_OUTPUT_SIZE;
+        sessionMosaic = new SessionMosaic(configuration);
+        frameSinkWriter = (frameSink != null) ? new FrameSinkWriter(frameSink, FRAME_QUEUE_SIZE) : null;
+
+        lastReport = System.nanoTime();
+        renderLoop = new RenderLoop("Mosaic render", configuration, frameSinkWriter != null, renderRequests, this::renderMosaic);
+        renderLoop.start();
+    }
+
+    /**
+     * Wake up the render thread, a session changed.
+     */
+    @Override
+    public void renderRequested() {
+        renderRequests.requestRender();
+        final RenderLoop loop = renderLoop;
+        if (loop != null) {
+            loop.wakeUp();
+        }
+    }
+
+    /**
+     * Render the mosaic and write it to the frame sink, on the render thread.
+     *
+     * @return true if the phosphor of any session is still fading
+     */
+    private boolean renderMosaic() throws InterruptedException {
+        final boolean phosphorFading = sessionMosaic.render(sessionServer.getSessions(), outputSize);
+        if (frameSinkWriter != null) {
+            frameSinkWriter.offer(getOutputImage());
+
+            final long now = System.nanoTime();
+            if (configuration.isFrameStatistics() && (now - lastReport >= REPORT_INTERVAL_NANOS)) {
+                System.out.println(frameSinkWriter.getReport());
+                lastReport = now;
+            }
+        }
+
+        return phosphorFading;
+    }
+
+    /**
+     * The mosaic in the output size, the mosaic is larger than the output size when the sessions do not fit.
+     */
+    private BufferedImage getOutputImage() {
+        final BufferedImage mosaicImage = sessionMosaic.getImage();
+        if ((mosaicImage.getWidth() == outputSize.width) && (mosaicImage.getHeight() == outputSize.height)) {
+            return mosaicImage;
+        }
+
+        return mosaicImage.getSubimage(0, 0, outputSize.width, outputSize.height);
+    }
+
+    /**
+     * Stop the render threads, write the frames still queued, and close the frame sink.
+     */
+    public void stopRendering() {
+        if (renderLoop != null) {
+            renderLoop.stop();
+        }
+
+        if (frameSinkWriter != null) {
+            frameSinkWriter.close();
+            System.out.println(frameSinkWriter.getReport());
+        }
+
+        if (sessionMosaic != null) {
+            sessionMosaic.shutdown();
+        }
+    }
+}
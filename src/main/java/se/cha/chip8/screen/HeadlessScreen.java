@@ -0,0 +1,119 @@
+package se.cha.chip8.screen;
+
+import java.awt.*;
+
+/**
+ * The CRT monitor rendered off-screen, without any window, for machines without a display.
+ * <p>
+ * The monitor is composed like in the {@link ScreenFrame}, by a {@link RenderLoop} woken up when the {@link ScreenState}
+ * changes, and the frames are streamed to a {@link FrameSink} through a {@link FrameSinkWriter}. With a frame sink and a
+ * capped frame rate a frame is written on every frame tick, also when nothing changed, so recordings play back in real time.
+ * <p>
+ * A frame counts as presented, for the {@link FrameLatency}, when it is composed and handed to the frame sink writer.
+ */
+public class HeadlessScreen implements ScreenState.Listener {
+
+    // Frames queued for the frame sink, before frames are dropped
+    private static final int FRAME_QUEUE_SIZE = 8;
+    private static final long REPORT_INTERVAL_NANOS = 10_000_000_000L;
+
+    private final Configuration configuration;
+    private final ScreenState screenState = new ScreenState(new ScreenUnpacker(), this);
+
+    private CrtComposer crtComposer = null;
+    private FrameSinkWriter frameSinkWriter = null;
+    private FrameLatency frameLatency = null; // Null unless frame latencies are measured
+    private long lastReport = 0; // Owned by the render thread
+
+    private volatile RenderLoop renderLoop = null;
+
+    public HeadlessScreen(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * The state rendered, to be set by the network listener thread.
+     */
+    public ScreenState getScreenState() {
+        return screenState;
+    }
+
+    /**
+     * Start rendering.
+     *
+     * @param frameSink where to write the frames, null to only render them
+     */
+    public void initialize(FrameSink frameSink) {
+        final Dimension monitorSize = configuration.getOutputSize();
+        crtComposer = (monitorSize != null)
+                ? new CrtComposer(configuration, new PostProcessingPipeline(configuration.getRenderThreads()), monitorSize)
+                : new CrtComposer(configuration);
+        frameSinkWriter = (frameSink != null) ? new FrameSinkWriter(frameSink, FRAME_QUEUE_SIZE) : null;
+        frameLatency = configuration.isLatencyMeasured() ? new FrameLatency(configuration.getLatencyReport()) : null;
+
+        lastReport = System.nanoTime();
+        renderLoop = new RenderLoop("CRT render", configuration, frameSinkWriter != null, screenState, this::renderFrame);
+        renderLoop.start();
+    }
+
+    /**
+     * Wake up the render thread to compose a new frame.
+     */
+    @Override
+    public void renderRequested() {
+        final RenderLoop loop = renderLoop;
+        if (loop != null) {
+            loop.wakeUp();
+        }
+    }
+
+    /**
+     * Render a frame and write it to the frame sink, on the render thread.
+     *
+     * @return true if the phosphor is still fading
+     */
+    private boolean renderFrame() {
+        if ((frameLatency != null) && configuration.isLatencyOverlay()) {
+            crtComposer.setOverlayText(frameLatency.getOverlayText());
+        }
+        final boolean phosphorFading = crtComposer.render(screenState);
+
+        if (frameSinkWriter != null) {
+            frameSinkWriter.offer(crtComposer.getImage());
+
+            final long now = System.nanoTime();
+            if (configuration.isFrameStatistics() && (now - lastReport >= REPORT_INTERVAL_NANOS)) {
+                System.out.println(frameSinkWriter.getReport());
+                lastReport = now;
+            }
+        }
+        if (frameLatency != null) {
+            frameLatency.framePresented(screenState.getCurrentScreen(), System.nanoTime());
+        }
+
+        return phosphorFading;
+    }
+
+    /**
+     * Stop the render thread, write the frames still queued, and close the frame sink.
+     */
+    public void stopRendering() {
+        if (renderLoop != null) {
+            renderLoop.stop();
+        }
+
+        if (frameSinkWriter != null) {
+            frameSinkWriter.close();
+            System.out.println(frameSinkWriter.getReport());
+        }
+
+        if ((frameLatency != null) && (configuration.getLatencyReport() != Configuration.LatencyReport.OFF)) {
+            // The frames since the last report
+            System.out.println((configuration.getLatencyReport() == Configuration.LatencyReport.JSON) ? frameLatency.toJson() : frameLatency.getReport());
+        }
+
+        if (crtComposer != null) {
+            crtComposer.shutdown();
+        }
+    }
+}
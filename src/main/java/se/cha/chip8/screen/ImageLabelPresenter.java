@@ -0,0 +1,92 @@
+package se.cha.chip8.screen;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Swing presenter, showing the frame as an image icon in a scrollable label.
+ * Dirty areas are copied to the label image and repainted by the Swing repaint manager.
+ * A frame of a new size replaces the label image.
+ */
+public class ImageLabelPresenter implements ScreenPresenter {
+
+    private final JScrollPane scrollPane = new JScrollPane(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+    private volatile BufferedImage image;
+    private final JLabel imageLabel;
+
+    public ImageLabelPresenter(int width, int height) {
+        image = createImage(width, height);
+
+        imageLabel = new JLabel(new ImageIcon(image));
+        scrollPane.setViewportView(imageLabel);
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        final Graphics graphics = image.getGraphics();
+        graphics.setColor(java.awt.Color.BLACK);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.dispose();
+
+        return image;
+    }
+
+    @Override
+    public Component getComponent() {
+        return scrollPane;
+    }
+
+    @Override
+    public Dimension getAvailableSize() {
+        // The scroll pane size without its border, the space of the viewport without any scroll bars
+        final Insets insets = scrollPane.getInsets();
+        return new Dimension(scrollPane.getWidth() - insets.left - insets.right, scrollPane.getHeight() - insets.top - insets.bottom);
+    }
+
+    @Override
+    public void present(BufferedImage frameImage, List<Rectangle> dirtyAreas) {
+        if ((frameImage.getWidth() != image.getWidth()) || (frameImage.getHeight() != image.getHeight())) {
+            presentResized(frameImage);
+            return;
+        }
+
+        final Graphics2D g = image.createGraphics();
+        for (Rectangle dirtyArea : dirtyAreas) {
+            final int x2 = dirtyArea.x + dirtyArea.width;
+            final int y2 = dirtyArea.y + dirtyArea.height;
+            g.drawImage(frameImage, dirtyArea.x, dirtyArea.y, x2, y2, dirtyArea.x, dirtyArea.y, x2, y2, null);
+        }
+        g.dispose();
+
+        for (Rectangle dirtyArea : dirtyAreas) {
+            repaintImageArea(dirtyArea);
+        }
+    }
+
+    /**
+     * Replace the label image with a copy of a frame of a new size.
+     */
+    private void presentResized(BufferedImage frameImage) {
+        final BufferedImage resizedImage = createImage(frameImage.getWidth(), frameImage.getHeight());
+        final Graphics2D g = resizedImage.createGraphics();
+        g.drawImage(frameImage, 0, 0, null);
+        g.dispose();
+
+        image = resizedImage;
+        SwingUtilities.invokeLater(() -> {
+            imageLabel.setIcon(new ImageIcon(resizedImage));
+            imageLabel.revalidate();
+            imageLabel.repaint();
+        });
+    }
+
+    private void repaintImageArea(Rectangle area) {
+        // The image icon is centered in the label when the label is larger than the image
+        final int offsetX = Math.max(0, (imageLabel.getWidth() - image.getWidth()) / 2);
+        final int offsetY = Math.max(0, (imageLabel.getHeight() - image.getHeight()) / 2);
+        imageLabel.repaint(area.x + offsetX, area.y + offsetY, area.width, area.height);
+    }
+}
@@ -0,0 +1,20 @@
+package se.cha.chip8.screen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+
+/**
+ * Decoder binding the message through Jackson data binding.
+ * Slower, and allocates a new state for each message, but tolerant to any encoding Jackson can handle.
+ */
+public class JacksonPeripheralStateDecoder implements PeripheralStateDecoder {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+
+    @Override
+    public PeripheralState decode(byte[] data, int offset, int length) throws IOException {
+        return objectMapper.readValue(data, offset, length, PeripheralState.class);
+    }
+}
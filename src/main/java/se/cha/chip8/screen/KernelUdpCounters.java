@@ -0,0 +1,95 @@
+package se.cha.chip8.screen;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Kernel counters of the UDP sockets bound to a local port, read from {@code /proc/net/udp} and {@code /proc/net/udp6}
+ * (Linux only). Packets dropped by the kernel, because the socket receive buffer was full, are never seen by the
+ * application, these counters are the only way to tell they were sent at all.
+ */
+public class KernelUdpCounters {
+
+    private static final Path[] PROC_NET_UDP = {Paths.get("/proc/net/udp"), Paths.get("/proc/net/udp6")};
+
+    private final long drops;
+    private final long receiveQueueBytes;
+
+    KernelUdpCounters(long drops, long receiveQueueBytes) {
+        this.drops = drops;
+        this.receiveQueueBytes = receiveQueueBytes;
+    }
+
+    /**
+     * @return the counters of the sockets bound to the port, or null if not available on this system
+     */
+    public static KernelUdpCounters read(int port) {
+        long drops = 0;
+        long receiveQueueBytes = 0;
+        boolean available = false;
+        for (Path path : PROC_NET_UDP) {
+            if (!Files.isReadable(path)) {
+                continue;
+            }
+
+            try {
+                final KernelUdpCounters counters = parse(Files.readAllLines(path, StandardCharsets.US_ASCII), port);
+                drops += counters.drops;
+                receiveQueueBytes += counters.receiveQueueBytes;
+                available = true;
+            } catch (IOException | RuntimeException e) {
+                // Unexpected file layout, treat as not available
+            }
+        }
+
+        return available ? new KernelUdpCounters(drops, receiveQueueBytes) : null;
+    }
+
+    /**
+     * Sum the counters of the sockets bound to the port in the lines of a {@code /proc/net/udp} file.
+     * <pre>
+     *   sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode ref pointer drops
+     *   12: 00000000:270F 00000000:0000 07 00000000:00000000 00:00000000 00000000  1000        0 98765 2 0000000000000000 3
+     * </pre>
+     */
+    static KernelUdpCounters parse(List<String> lines, int port) {
+        long drops = 0;
+        long receiveQueueBytes = 0;
+        for (int i = 1; i < lines.size(); i++) {
+            final String[] fields = lines.get(i).trim().split("\\s+");
+            if (fields.length < 13) {
+                continue;
+            }
+
+            final String localAddress = fields[1];
+            final int localPort = Integer.parseInt(localAddress.substring(localAddress.indexOf(':') + 1), 16);
+            if (localPort != port) {
+                continue;
+            }
+
+            final String queues = fields[4];
+            receiveQueueBytes += Long.parseLong(queues.substring(queues.indexOf(':') + 1), 16);
+            drops += Long.parseLong(fields[fields.length - 1]);
+        }
+
+        return new KernelUdpCounters(drops, receiveQueueBytes);
+    }
+
+    /**
+     * Packets dropped since the sockets were opened.
+     */
+    public long getDrops() {
+        return drops;
+    }
+
+    /**
+     * Bytes currently waiting in the socket receive buffers.
+     */
+    public long getReceiveQueueBytes() {
+        return receiveQueueBytes;
+    }
+}
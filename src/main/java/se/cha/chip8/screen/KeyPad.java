@@ -11,6 +11,7 @@ public class KeyPad implements KeyListener {
 
     private final Map<Integer, Integer> keyCodeToKeyPadCode = new HashMap<>();
     private final SocketAddress socketAddress;
+    private final Metrics metrics = Metrics.get(); // Null unless metrics are on
 
     private int keyState = 0;
 
@@ -66,6 +67,9 @@ public class KeyPad implements KeyListener {
             final DatagramPacket packet = new DatagramPacket(buffer, 0, buffer.length, socketAddress);
             socket.send(packet);
             socket.close();
+            if (metrics != null) {
+                metrics.keyPacketSent();
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
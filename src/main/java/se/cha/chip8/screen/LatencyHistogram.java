@@ -0,0 +1,156 @@
+package se.cha.chip8.screen;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies in nanoseconds, with buckets of about 3% relative precision from 1 ns to about 18 minutes
+ * (like HdrHistogram). Recording is a few arithmetic operations and an array increment, it never allocates.
+ * <p>
+ * A histogram is recorded by one thread. Reading it from another thread gives approximate (but never broken) results.
+ */
+public class LatencyHistogram {
+
+    // Values below 2^SUB_BUCKET_BITS have a bucket each, above that each power of two has 2^(SUB_BUCKET_BITS - 1) buckets
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_VALUE_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    /**
+     * Record a latency. Negative values are recorded as 0, values larger than the largest value as the largest value.
+     */
+    public void record(long nanos) {
+        final long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts[bucketIndex(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (int) (value >> shift) - HALF_SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * The smallest value of a bucket.
+     */
+    static long bucketLowestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        final int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+        final long subBucket = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return subBucket << shift;
+    }
+
+    /**
+     * The largest value of a bucket.
+     */
+    static long bucketHighestValue(int index) {
+        return (index + 1 < BUCKET_COUNT) ? bucketLowestValue(index + 1) - 1 : MAX_VALUE;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return (count > 0) ? min : 0;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return (count > 0) ? (double) sum / count : 0.0;
+    }
+
+    /**
+     * The value that the given percentage of the recorded values are lower than or equal to, within the bucket precision.
+     *
+     * @param percentile 0 to 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        final long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long countBelow = 0;
+        for (int index = 0; index < counts.length; index++) {
+            countBelow += counts[index];
+            if (countBelow >= countAtPercentile) {
+                return Math.min(bucketHighestValue(index), max);
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * Percentiles of the recorded latencies, in milliseconds.
+     */
+    public String getSummary() {
+        return String.format("n %d, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+                count,
+                getValueAtPercentile(50) / 1_000_000.0,
+                getValueAtPercentile(90) / 1_000_000.0,
+                getValueAtPercentile(99) / 1_000_000.0,
+                getValueAtPercentile(99.9) / 1_000_000.0,
+                max / 1_000_000.0);
+    }
+
+    /**
+     * The recorded latencies per power of two nanoseconds, one line per range, with the count and a bar.
+     */
+    public String toHistogramText() {
+        final StringBuilder sb = new StringBuilder();
+        final int lowestRange = 63 - Long.numberOfLeadingZeros(Math.max(1, getMin()));
+        final int highestRange = 63 - Long.numberOfLeadingZeros(Math.max(1, max));
+
+        long largestRangeCount = 1;
+        final long[] rangeCounts = new long[MAX_VALUE_BITS + 1];
+        for (int index = 0; index < counts.length; index++) {
+            if (counts[index] > 0) {
+                final int range = 63 - Long.numberOfLeadingZeros(Math.max(1, bucketLowestValue(index)));
+                rangeCounts[range] += counts[index];
+                largestRangeCount = Math.max(largestRangeCount, rangeCounts[range]);
+            }
+        }
+
+        for (int range = lowestRange; range <= highestRange; range++) {
+            final int barLength = (int) Math.round(40.0 * rangeCounts[range] / largestRangeCount);
+            sb.append(String.format("%12.3f - %12.3f ms %10d %s%n",
+                    (1L << range) / 1_000_000.0,
+                    (1L << (range + 1)) / 1_000_000.0,
+                    rangeCounts[range],
+                    new String(new char[barLength]).replace('\0', '#')));
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package se.cha.chip8.screen;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Render, network and audio counters, for the metrics endpoint of the {@link MetricsServer}, in the Prometheus text format.
+ * <p>
+ * Metrics are off unless enabled at start up, before any thread counting is started. Counting classes take
+ * {@link #get()} once, when created, and skip counting when it is null, so metrics cost a null check when off.
+ * Counting is lock free and never allocates, the counters are {@link LongAdder}s. The heap and garbage collection
+ * statistics are read from the JVM when the metrics are written.
+ */
+public class Metrics {
+
+    private static volatile Metrics instance = null;
+
+    private final LongAdder framesRendered = new LongAdder();
+    private final LongAdder composeNanos = new LongAdder();
+    private final LongAdder framesSkipped = new LongAdder();
+    private final LongAdder screensCoalesced = new LongAdder();
+    private final LongAdder packetsReceived = new LongAdder();
+    private final LongAdder packetsDecoded = new LongAdder();
+    private final LongAdder packetsFailed = new LongAdder();
+    private final LongAdder keyPacketsSent = new LongAdder();
+    private final LongAdder audioUnderruns = new LongAdder();
+
+    Metrics() {
+    }
+
+    /**
+     * Turn metrics on, for all counting classes created after this.
+     */
+    public static synchronized Metrics enable() {
+        if (instance == null) {
+            instance = new Metrics();
+        }
+
+        return instance;
+    }
+
+    /**
+     * The metrics to count in, null if metrics are off.
+     */
+    public static Metrics get() {
+        return instance;
+    }
+
+    /**
+     * A frame was composed, in the given time.
+     */
+    public void frameRendered(long composeTimeNanos) {
+        framesRendered.increment();
+        composeNanos.add(composeTimeNanos);
+    }
+
+    /**
+     * Frame ticks skipped by a render loop too far behind its frame rate.
+     */
+    public void framesSkipped(long frameCount) {
+        framesSkipped.add(frameCount);
+    }
+
+    /**
+     * Screens received, but replaced by a later screen of the same burst of packets before being rendered.
+     */
+    public void screensCoalesced(long screenCount) {
+        screensCoalesced.add(screenCount);
+    }
+
+    public void packetReceived() {
+        packetsReceived.increment();
+    }
+
+    public void packetDecoded() {
+        packetsDecoded.increment();
+    }
+
+    public void packetFailed() {
+        packetsFailed.increment();
+    }
+
+    public void keyPacketSent() {
+        keyPacketsSent.increment();
+    }
+
+    /**
+     * The audio line ran out of samples while playing a beep.
+     */
+    public void audioUnderrun() {
+        audioUnderruns.increment();
+    }
+
+    /**
+     * All metrics, in the Prometheus text exposition format.
+     */
+    public String toPrometheusText() {
+        final StringBuilder sb = new StringBuilder();
+
+        counter(sb, "chip8_frames_rendered_total", "Frames composed by the render threads.", framesRendered.sum());
+        sb.append("# HELP chip8_compose_seconds Time composing frames.\n");
+        sb.append("# TYPE chip8_compose_seconds summary\n");
+        sb.append("chip8_compose_seconds_sum ").append(seconds(composeNanos.sum())).append('\n');
+        sb.append("chip8_compose_seconds_count ").append(framesRendered.sum()).append('\n');
+        counter(sb, "chip8_frames_skipped_total", "Frame ticks skipped by render loops too far behind the frame rate.", framesSkipped.sum());
+        counter(sb, "chip8_screens_coalesced_total", "Screens replaced by a later screen of the same packet burst before being rendered.", screensCoalesced.sum());
+        counter(sb, "chip8_packets_received_total", "Screen update packets received.", packetsReceived.sum());
+        counter(sb, "chip8_packets_decoded_total", "Screen update packets decoded.", packetsDecoded.sum());
+        counter(sb, "chip8_packets_failed_total", "Screen update packets that could not be decoded.", packetsFailed.sum());
+        counter(sb, "chip8_key_packets_sent_total", "Key state packets sent to the CHIP-8 application.", keyPacketsSent.sum());
+        counter(sb, "chip8_audio_underruns_total", "Times the audio line ran out of samples while beeping.", audioUnderruns.sum());
+
+        final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        gauge(sb, "jvm_memory_heap_used_bytes", "Used heap memory.", heap.getUsed());
+        gauge(sb, "jvm_memory_heap_committed_bytes", "Committed heap memory.", heap.getCommitted());
+        gauge(sb, "jvm_memory_heap_max_bytes", "Maximum heap memory, -1 if undefined.", heap.getMax());
+
+        sb.append("# HELP jvm_gc_collections_total Garbage collections.\n");
+        sb.append("# TYPE jvm_gc_collections_total counter\n");
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sb.append("jvm_gc_collections_total{gc=\"").append(labelValue(collector.getName())).append("\"} ")
+                    .append(Math.max(0, collector.getCollectionCount())).append('\n');
+        }
+        sb.append("# HELP jvm_gc_collection_seconds_total Time spent in garbage collections.\n");
+        sb.append("# TYPE jvm_gc_collection_seconds_total counter\n");
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sb.append("jvm_gc_collection_seconds_total{gc=\"").append(labelValue(collector.getName())).append("\"} ")
+                    .append(seconds(Math.max(0, collector.getCollectionTime()) * 1_000_000L)).append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" gauge\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1_000_000_000.0);
+    }
+
+    private static String labelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
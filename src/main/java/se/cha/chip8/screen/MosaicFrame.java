@@ -0,0 +1,102 @@
+package se.cha.chip8.screen;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+
+/**
+ * Window showing the monitors of all sessions of a {@link SessionServer}, tiled in a grid.
+ * The mosaic is view only, key presses are not sent to any emulator.
+ * <p>
+ * On each frame the sessions that changed are rendered into a {@link SessionMosaic}, by a fixed pool of render threads,
+ * and the changed parts of the mosaic are presented.
+ */
+public class MosaicFrame extends JFrame implements ScreenState.Listener {
+
+    private static final Dimension INITIAL_SIZE = new Dimension(1280, 800);
+
+    private final Configuration configuration;
+    private final RenderLoop.RenderRequestFlag renderRequests = new RenderLoop.RenderRequestFlag();
+
+    private SessionServer sessionServer;
+    private ScreenPresenter presenter;
+    private SessionMosaic sessionMosaic;
+    private volatile RenderLoop renderLoop = null;
+
+    public MosaicFrame(Configuration configuration) {
+        super("CHIP-8 sessions");
+        this.configuration = configuration;
+    }
+
+    /**
+     * Show the window and start rendering the sessions of the server.
+     */
+    public void initialize(SessionServer sessionServer) {
+        this.sessionServer = sessionServer;
+        sessionMosaic = new SessionMosaic(configuration);
+
+        presenter = (configuration.getRenderBackend() == Configuration.RenderBackend.CANVAS)
+                ? new BufferStrategyPresenter(INITIAL_SIZE.width, INITIAL_SIZE.height)
+                : new ImageLabelPresenter(INITIAL_SIZE.width, INITIAL_SIZE.height);
+        presenter.getComponent().addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                renderRequested();
+            }
+        });
+
+        renderLoop = new RenderLoop("Mosaic render", configuration, false, renderRequests, this::renderMosaic);
+        renderLoop.start();
+
+        add(presenter.getComponent());
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setSize(INITIAL_SIZE);
+        setLocationRelativeTo(null);
+        setVisible(true);
+    }
+
+    /**
+     * Wake up the mosaic render thread, a session changed.
+     */
+    @Override
+    public void renderRequested() {
+        renderRequests.requestRender();
+        final RenderLoop loop = renderLoop;
+        if (loop != null) {
+            loop.wakeUp();
+        }
+    }
+
+    /**
+     * Stop the render threads, and wait for the mosaic render thread to end.
+     */
+    public void stopRendering() {
+        if (renderLoop != null) {
+            renderLoop.stop();
+        }
+
+        if (sessionMosaic != null) {
+            sessionMosaic.shutdown();
+        }
+    }
+
+    /**
+     * Render the mosaic, on the render thread.
+     *
+     * @return true if the phosphor of any session is still fading
+     */
+    private boolean renderMosaic() throws InterruptedException {
+        Dimension availableSize = presenter.getAvailableSize();
+        if ((availableSize.width <= 0) || (availableSize.height <= 0)) {
+            availableSize = INITIAL_SIZE;
+        }
+
+        final boolean phosphorFading = sessionMosaic.render(sessionServer.getSessions(), availableSize);
+        if (!sessionMosaic.getDirtyAreas().isEmpty()) {
+            presenter.present(sessionMosaic.getImage(), sessionMosaic.getDirtyAreas());
+        }
+
+        return phosphorFading;
+    }
+}
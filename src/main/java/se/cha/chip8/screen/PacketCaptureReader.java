@@ -0,0 +1,155 @@
+package se.cha.chip8.screen;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the packets of a capture file written by {@link PacketCaptureWriter}, one packet at a time, memory mapped.
+ */
+public class PacketCaptureReader implements Closeable {
+
+    private static final int CHUNK_SIZE = 64 << 20;
+
+    private final FileChannel fileChannel;
+    private final long fileSize;
+    private final long captureStartMillis;
+    private ByteBuffer chunk;
+    private long chunkPosition;
+
+    // The current packet
+    private long timestampNanos;
+    private int flags;
+    private SocketAddress source;
+    private ByteBuffer data;
+
+    public PacketCaptureReader(File file) throws IOException {
+        fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileSize = fileChannel.size();
+
+        chunkPosition = 0;
+        chunk = map(chunkPosition);
+        final byte[] magic = new byte[PacketCaptureWriter.MAGIC.length];
+        if (chunk.remaining() >= PacketCaptureWriter.HEADER_SIZE) {
+            chunk.get(magic);
+        }
+        if (!Arrays.equals(magic, PacketCaptureWriter.MAGIC)) {
+            fileChannel.close();
+            throw new IOException("Not a packet capture file " + file + ".");
+        }
+        final int version = chunk.getInt();
+        if (version != PacketCaptureWriter.VERSION) {
+            fileChannel.close();
+            throw new IOException("Unsupported packet capture file version " + version + ".");
+        }
+        captureStartMillis = chunk.getLong();
+    }
+
+    private ByteBuffer map(long position) throws IOException {
+        return fileChannel.map(FileChannel.MapMode.READ_ONLY, position, Math.max(0, Math.min(CHUNK_SIZE, fileSize - position)));
+    }
+
+    private void remap(long position) throws IOException {
+        chunkPosition = Math.min(position, fileSize);
+        chunk = map(chunkPosition);
+    }
+
+    /**
+     * Read the next packet.
+     *
+     * @return false at the end of the capture
+     */
+    public boolean next() throws IOException {
+        int recordSize;
+        while (true) {
+            final long position = chunkPosition + chunk.position();
+            if (position + 4 > fileSize) {
+                return false;
+            }
+            if (chunk.remaining() < 4) {
+                remap(position);
+                continue;
+            }
+
+            recordSize = chunk.getInt(chunk.position());
+            if (recordSize == 0) {
+                // The rest of a writer chunk is unused when a record did not fit, or the capture ended
+                remap(nextWriterChunkPosition(position));
+                continue;
+            }
+            if ((recordSize < 0) || (position + 4 + recordSize > fileSize)) {
+                // Broken record
+                return false;
+            }
+            if (chunk.remaining() < 4 + recordSize) {
+                remap(position);
+                continue;
+            }
+            break;
+        }
+
+        chunk.getInt();
+        timestampNanos = chunk.getLong();
+        flags = chunk.get();
+        final byte[] address = new byte[chunk.get()];
+        chunk.get(address);
+        final int port = chunk.getShort() & 0xFFFF;
+        source = (address.length > 0) ? new InetSocketAddress(InetAddress.getByAddress(address), port) : null;
+
+        final int dataLength = recordSize - 8 - 1 - 1 - address.length - 2;
+        data = chunk.slice();
+        data.limit(dataLength);
+        data = data.asReadOnlyBuffer();
+        chunk.position(chunk.position() + dataLength);
+
+        return true;
+    }
+
+    private static long nextWriterChunkPosition(long position) {
+        return (position / PacketCaptureWriter.CHUNK_SIZE + 1) * PacketCaptureWriter.CHUNK_SIZE;
+    }
+
+    public long getCaptureStartMillis() {
+        return captureStartMillis;
+    }
+
+    /**
+     * Receive time of the packet, in nanoseconds since the capture started.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * @return true if the packet was the last packet of a burst of packets received together
+     */
+    public boolean isEndOfBurst() {
+        return (flags & PacketCaptureWriter.FLAG_END_OF_BURST) != 0;
+    }
+
+    /**
+     * The address the packet was sent from, null if unknown.
+     */
+    public SocketAddress getSource() {
+        return source;
+    }
+
+    /**
+     * Read only view of the packet data, from position to limit. Valid until the next packet is read.
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+}
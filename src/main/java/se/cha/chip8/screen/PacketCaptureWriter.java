@@ -0,0 +1,132 @@
+package se.cha.chip8.screen;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes received packets to an append-only capture file, memory mapped in chunks, for replay with {@link PacketReplay}.
+ * <p>
+ * File format, big endian:
+ * <pre>
+ *   header: magic "CHIP8CAP" (8 bytes), version (4 bytes), capture start wall clock time in epoch milliseconds (8 bytes)
+ *   record: record size (4 bytes, the size of the rest of the record, 0 at the end of the capture),
+ *           receive time in nanoseconds since the capture started (8 bytes), flags (1 byte),
+ *           source address length (1 byte, 0, 4 or 16), source address, source port (2 bytes), packet data
+ * </pre>
+ * The record size is written last, so a record is complete in the file once its size is set, also if the process dies
+ * while writing. The file is truncated to the written records when the capture is closed. The file is mapped in chunks of
+ * {@link #CHUNK_SIZE}, records never span chunks.
+ * <p>
+ * Only to be used by one (listener) thread.
+ */
+public class PacketCaptureWriter implements Closeable {
+
+    static final byte[] MAGIC = {'C', 'H', 'I', 'P', '8', 'C', 'A', 'P'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 20;
+    /**
+     * Record flag, the packet is the last packet of a burst of packets received together.
+     */
+    static final int FLAG_END_OF_BURST = 1;
+
+    /**
+     * The file is mapped in chunks of this size, a record that does not fit in the rest of a chunk is written at the start of the next chunk.
+     */
+    static final int CHUNK_SIZE = 16 << 20;
+    // Record size, time, flags and address length, IPv6 address, port
+    private static final int MAX_RECORD_OVERHEAD = 4 + 8 + 1 + 1 + 16 + 2;
+
+    private final FileChannel fileChannel;
+    private final long startNanos;
+    private MappedByteBuffer chunk;
+    private long chunkPosition;
+    private int lastRecordFlagsPosition = -1;
+    private long packetCount = 0;
+    private boolean closed = false;
+
+    public PacketCaptureWriter(File file) throws IOException {
+        fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        startNanos = System.nanoTime();
+
+        chunkPosition = 0;
+        chunk = fileChannel.map(FileChannel.MapMode.READ_WRITE, chunkPosition, CHUNK_SIZE);
+        chunk.put(MAGIC);
+        chunk.putInt(VERSION);
+        chunk.putLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Append a packet.
+     *
+     * @param receiveNanos receive time, {@link System#nanoTime()}
+     * @param data         the packet data, from position 0 to length, the buffer position is left untouched
+     */
+    public void write(long receiveNanos, ByteBuffer data, int length, SocketAddress source) throws IOException {
+        final byte[] address = (source instanceof InetSocketAddress) && (((InetSocketAddress) source).getAddress() != null)
+                ? ((InetSocketAddress) source).getAddress().getAddress() : new byte[0];
+        final int port = (source instanceof InetSocketAddress) ? ((InetSocketAddress) source).getPort() : 0;
+
+        if (chunk.remaining() < MAX_RECORD_OVERHEAD + length) {
+            // Records never span chunks, the rest of the chunk is left zero, like the end of the capture
+            chunkPosition += CHUNK_SIZE;
+            chunk = fileChannel.map(FileChannel.MapMode.READ_WRITE, chunkPosition, CHUNK_SIZE);
+            lastRecordFlagsPosition = -1;
+        }
+
+        final int recordPosition = chunk.position();
+        chunk.position(recordPosition + 4);
+        chunk.putLong(receiveNanos - startNanos);
+        lastRecordFlagsPosition = chunk.position();
+        chunk.put((byte) 0);
+        chunk.put((byte) address.length);
+        chunk.put(address);
+        chunk.putShort((short) port);
+        final ByteBuffer packetData = data.duplicate();
+        packetData.clear().limit(length);
+        chunk.put(packetData);
+
+        chunk.putInt(recordPosition, chunk.position() - recordPosition - 4);
+        packetCount++;
+    }
+
+    /**
+     * Mark the last packet written as the end of a burst of packets received together.
+     */
+    public void endBurst() {
+        if (lastRecordFlagsPosition >= 0) {
+            chunk.put(lastRecordFlagsPosition, (byte) (chunk.get(lastRecordFlagsPosition) | FLAG_END_OF_BURST));
+        }
+    }
+
+    public long getPacketCount() {
+        return packetCount;
+    }
+
+    /**
+     * Truncate the file to the written records, and close it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        chunk.force();
+        try {
+            fileChannel.truncate(chunkPosition + chunk.position());
+        } catch (IOException e) {
+            // Some systems can not truncate a mapped file, the end of capture marker ends the capture
+            System.err.println("Could not truncate packet capture file: " + e.getMessage());
+        }
+        fileChannel.close();
+    }
+}
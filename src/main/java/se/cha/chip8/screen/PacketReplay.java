@@ -0,0 +1,139 @@
+package se.cha.chip8.screen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a packet capture file, written by {@link PacketCaptureWriter}, to a packet processor instead of a UDP listener.
+ * <p>
+ * Packets are passed on in the bursts they were received in, so the processor coalesces them like it did when they were
+ * captured. The packets are replayed with the captured timing, sped up by a factor, or as fast as possible.
+ * <p>
+ * The latency of every burst, from when its first packet is due to when the processor has handled the whole burst, is
+ * recorded in a histogram. As fast as possible, the latency is the time the processor takes to decode and unpack the
+ * burst, and the replay is a throughput benchmark of the processor.
+ */
+public class PacketReplay implements Runnable {
+
+    /**
+     * Replay speed, as fast as possible.
+     */
+    public static final double AS_FAST_AS_POSSIBLE = 0.0;
+
+    private final File captureFile;
+    private final double speed;
+    private final UdpChannelMessageListener.UDPPacketBufferProcessor processor;
+    private final LatencyHistogram burstLatencies = new LatencyHistogram();
+
+    private long packetCount = 0;
+    private long byteCount = 0;
+    private long burstCount = 0;
+    private long replayNanos = 0;
+
+    /**
+     * @param speed replay speed factor, 1 for the captured timing, or {@link #AS_FAST_AS_POSSIBLE}
+     */
+    public PacketReplay(File captureFile, double speed, UdpChannelMessageListener.UDPPacketBufferProcessor processor) {
+        this.captureFile = captureFile;
+        this.speed = speed;
+        this.processor = processor;
+    }
+
+    @Override
+    public void run() {
+        try {
+            replay();
+        } catch (IOException e) {
+            System.err.println("Could not replay packet capture " + captureFile + ": " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            System.out.println("Packet replay stopped.");
+        }
+
+        System.out.println(getReport());
+        System.out.println(burstLatencies.toHistogramText());
+    }
+
+    private void replay() throws IOException, InterruptedException {
+        try (PacketCaptureReader reader = new PacketCaptureReader(captureFile)) {
+            final long start = System.nanoTime();
+            long firstTimestamp = 0;
+            long burstStart = 0;
+            boolean inBurst = false;
+
+            while (reader.next()) {
+                if (packetCount == 0) {
+                    firstTimestamp = reader.getTimestampNanos();
+                }
+
+                if (!inBurst) {
+                    inBurst = true;
+                    if (speed > AS_FAST_AS_POSSIBLE) {
+                        burstStart = start + (long) ((reader.getTimestampNanos() - firstTimestamp) / speed);
+                        awaitTime(burstStart);
+                    } else {
+                        burstStart = System.nanoTime();
+                    }
+                }
+
+                final ByteBuffer data = reader.getData();
+                packetCount++;
+                byteCount += data.remaining();
+                processor.onPacketReceived(data, reader.getSource(), burstStart);
+
+                if (reader.isEndOfBurst()) {
+                    endBurst(burstStart);
+                    inBurst = false;
+                }
+            }
+
+            if (inBurst) {
+                // The capture ended without ending the burst, like when the capturing process was killed
+                endBurst(burstStart);
+            }
+
+            replayNanos = System.nanoTime() - start;
+        }
+    }
+
+    private void endBurst(long burstStart) {
+        processor.onPacketsDrained();
+        burstLatencies.record(System.nanoTime() - burstStart);
+        burstCount++;
+    }
+
+    private static void awaitTime(long deadline) throws InterruptedException {
+        long now;
+        while ((now = System.nanoTime()) < deadline) {
+            LockSupport.parkNanos(deadline - now);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Throughput and burst latency percentiles of the replay.
+     */
+    public String getReport() {
+        final double seconds = Math.max(1, replayNanos) / 1_000_000_000.0;
+        return String.format("Packet replay (%s): %d packets in %d bursts, %.3f s, %.1f packets/s, %.1f kB/s. Burst latency %s",
+                (speed > AS_FAST_AS_POSSIBLE) ? speed + "x speed" : "as fast as possible",
+                packetCount,
+                burstCount,
+                seconds,
+                packetCount / seconds,
+                byteCount / 1000.0 / seconds,
+                burstLatencies.getSummary());
+    }
+
+    public long getPacketCount() {
+        return packetCount;
+    }
+
+    public LatencyHistogram getBurstLatencies() {
+        return burstLatencies;
+    }
+}
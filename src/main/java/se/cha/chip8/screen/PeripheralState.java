@@ -1,10 +1,18 @@
 package se.cha.chip8.screen;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.Arrays;
 
 @Data
 public class PeripheralState {
+    public static final long NO_SEQUENCE = -1;
+    public static final long NO_SESSION = -1;
+
     @JsonProperty("sound")
     boolean sound;
     @JsonProperty("keys")
@@ -15,4 +23,57 @@ public class PeripheralState {
     int screenWidth;
     @JsonProperty("screenHeight")
     int screenHeight;
+    /**
+     * Optional number of bit planes of the screen, 2 for XO-CHIP screens. 0 (not set) is one plane.
+     */
+    @JsonProperty("screenPlanes")
+    int screenPlanes;
+    /**
+     * Optional frame sequence number (unsigned 32 bit) of the screen or screen delta in this message.
+     */
+    @JsonProperty("sequence")
+    long sequence = NO_SEQUENCE;
+    /**
+     * Optional dirty row spans to apply to the last known screen, see {@link ScreenFrameAssembler}.
+     * The delta is the first {@link #screenDeltaLength} bytes, a decoder may reuse a larger buffer for deltas of any size.
+     */
+    @JsonProperty("screenDelta")
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    byte[] screenDelta;
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    int screenDeltaLength;
+    /**
+     * Optional session id (unsigned 32 bit) of the emulator sending the message, when several emulators share a screen server.
+     * Messages without a session id belong to the session of their source address.
+     */
+    @JsonProperty("session")
+    long session = NO_SESSION;
+
+    /**
+     * Set a screen delta of the whole array.
+     */
+    @JsonProperty("screenDelta")
+    public void setScreenDelta(byte[] screenDelta) {
+        setScreenDelta(screenDelta, (screenDelta != null) ? screenDelta.length : 0);
+    }
+
+    /**
+     * Set a screen delta of the first bytes of the array.
+     */
+    public void setScreenDelta(byte[] screenDelta, int screenDeltaLength) {
+        this.screenDelta = screenDelta;
+        this.screenDeltaLength = screenDeltaLength;
+    }
+
+    /**
+     * The bytes of the screen delta, null if there is none. A copy, for comparing and printing states.
+     */
+    @EqualsAndHashCode.Include
+    @ToString.Include(name = "screenDelta")
+    byte[] screenDeltaBytes() {
+        return (screenDelta != null) ? Arrays.copyOf(screenDelta, screenDeltaLength) : null;
+    }
 }
@@ -0,0 +1,39 @@
+package se.cha.chip8.screen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes a MsgPack encoded CHIP-8 state message into a {@link PeripheralState}.
+ */
+public interface PeripheralStateDecoder {
+
+    /**
+     * Decode a state message.
+     * <p>
+     * Implementations are allowed to return the same, reused, state instance on every call.
+     * The returned state (including its screen data) is only valid until the next call to decode.
+     */
+    PeripheralState decode(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Decode a state message from the remaining bytes of a buffer. The buffer position is left untouched.
+     * <p>
+     * The default implementation copies the data to an array, implementations able to read buffers directly should override it.
+     */
+    default PeripheralState decode(ByteBuffer data) throws IOException {
+        final byte[] dataArray = new byte[data.remaining()];
+        data.duplicate().get(dataArray);
+        return decode(dataArray, 0, dataArray.length);
+    }
+
+    /**
+     * A message malformed in a way no decoder can decode, like screen data larger than any screen or than the message
+     * itself. Thrown before anything is allocated for the malformed part, and not to be retried with another decoder.
+     */
+    class InvalidMessageException extends IOException {
+        public InvalidMessageException(String message) {
+            super(message);
+        }
+    }
+}
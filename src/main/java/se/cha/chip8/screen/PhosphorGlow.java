@@ -0,0 +1,154 @@
+package se.cha.chip8.screen;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Glow of the lit phosphor, light bleeding into the glass around the lit pixels.
+ * <p>
+ * The phosphor picture is scaled down, blurred, and the blur is scaled up again (bilinear) while it is
+ * blended on top of the phosphor picture, with the glow strength as opacity.
+ * The glow is smooth, so blurring at a fraction of the resolution looks the same, at a fraction of the cost.
+ * All steps are processed in stripes by the post-processing pipeline.
+ */
+public class PhosphorGlow {
+
+    private static final int DOWNSCALE = 4;
+
+    private final int width;
+    private final int height;
+    private final int strength;
+
+    private final int smallWidth;
+    private final int smallHeight;
+    private final int[] smallData;
+    private final int[] smallBlurredData;
+    private final Blur blur;
+    // Blurred small picture scaled up to full width
+    private final int[] wideData;
+
+    // Bilinear sample positions per image column and row, as small image index and 8 bit weight of the next pixel
+    private final int[] sampleX;
+    private final int[] weightX;
+    private final int[] sampleY;
+    private final int[] weightY;
+
+    private final BufferedImage image;
+    private final int[] imageData;
+    private final PostProcessingPipeline pipeline;
+
+    /**
+     * @param radius   glow radius in pixels
+     * @param strength glow strength in percent
+     */
+    public PhosphorGlow(int width, int height, int radius, int strength, PostProcessingPipeline pipeline) {
+        this.width = width;
+        this.height = height;
+        this.strength = Math.max(0, Math.min(100, strength)) * 256 / 100;
+
+        smallWidth = (width + DOWNSCALE - 1) / DOWNSCALE;
+        smallHeight = (height + DOWNSCALE - 1) / DOWNSCALE;
+        smallData = new int[smallWidth * smallHeight];
+        smallBlurredData = new int[smallWidth * smallHeight];
+        blur = new Blur(smallWidth, smallHeight, radius / 3.0 / DOWNSCALE, pipeline);
+        wideData = new int[width * smallHeight];
+
+        sampleX = new int[width];
+        weightX = new int[width];
+        initializeSamples(sampleX, weightX, smallWidth);
+        sampleY = new int[height];
+        weightY = new int[height];
+        initializeSamples(sampleY, weightY, smallHeight);
+
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        imageData = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.pipeline = pipeline;
+    }
+
+    private static void initializeSamples(int[] samples, int[] weights, int smallSize) {
+        for (int i = 0; i < samples.length; i++) {
+            // Center of the image pixel, in small image pixels, relative to the small pixel centers
+            final int position = Math.max(0, ((i * 2 + 1) * 256 / DOWNSCALE - 256) / 2);
+            samples[i] = Math.min(position >> 8, smallSize - 1);
+            weights[i] = (samples[i] < smallSize - 1) ? position & 0xFF : 0;
+        }
+    }
+
+    /**
+     * Render the glowing picture of the phosphor picture.
+     */
+    public void render(int[] phosphorData) {
+        pipeline.run(smallHeight, (from, to) -> downscale(phosphorData, from, to));
+        blur.blur(smallData, smallBlurredData);
+
+        // Bilinear scale up, separated in a horizontal scale of the small rows and a vertical scale while blending
+        pipeline.run(smallHeight, this::scaleUpRows);
+        pipeline.run(height, (from, to) -> scaleUpColumnsAndBlend(phosphorData, from, to));
+    }
+
+    /**
+     * Average each block of DOWNSCALE x DOWNSCALE pixels into one pixel of the small picture, for the small rows {@code fromRow} to {@code toRow}.
+     */
+    private void downscale(int[] phosphorData, int fromRow, int toRow) {
+        for (int smallY = fromRow; smallY < toRow; smallY++) {
+            final int y0 = smallY * DOWNSCALE;
+            final int y1 = Math.min(y0 + DOWNSCALE, height);
+
+            for (int smallX = 0; smallX < smallWidth; smallX++) {
+                final int x0 = smallX * DOWNSCALE;
+                final int x1 = Math.min(x0 + DOWNSCALE, width);
+
+                // Red and blue summed together, a block of 16 pixels does not overflow the 16 bits apart
+                int sumRedBlue = 0;
+                int sumGreen = 0;
+                for (int y = y0; y < y1; y++) {
+                    final int rowIndex = y * width;
+                    for (int x = x0; x < x1; x++) {
+                        final int pixel = phosphorData[rowIndex + x];
+                        sumRedBlue += pixel & 0xFF00FF;
+                        sumGreen += pixel & 0x00FF00;
+                    }
+                }
+
+                final int count = (y1 - y0) * (x1 - x0);
+                smallData[smallY * smallWidth + smallX] = 0xFF000000 | (((sumRedBlue >>> 16) / count) << 16) | (((sumGreen >>> 8) / count) << 8) | ((sumRedBlue & 0xFFFF) / count);
+            }
+        }
+    }
+
+    private void scaleUpRows(int fromRow, int toRow) {
+        for (int smallY = fromRow; smallY < toRow; smallY++) {
+            final int smallRowIndex = smallY * smallWidth;
+            final int wideRowIndex = smallY * width;
+            for (int x = 0; x < width; x++) {
+                final int sample = smallRowIndex + sampleX[x];
+                wideData[wideRowIndex + x] = Pixels.lerp(smallBlurredData[sample], smallBlurredData[sample + ((weightX[x] > 0) ? 1 : 0)], weightX[x]);
+            }
+        }
+    }
+
+    private void scaleUpColumnsAndBlend(int[] phosphorData, int fromRow, int toRow) {
+        for (int y = fromRow; y < toRow; y++) {
+            final int rowIndex = y * width;
+            final int wideRowIndex = sampleY[y] * width;
+            final int nextWideRowIndex = wideRowIndex + ((weightY[y] > 0) ? width : 0);
+            final int wy = weightY[y];
+
+            for (int x = 0; x < width; x++) {
+                final int glow = Pixels.lerp(wideData[wideRowIndex + x], wideData[nextWideRowIndex + x], wy);
+                imageData[rowIndex + x] = Pixels.lerp(phosphorData[rowIndex + x], glow, strength);
+            }
+        }
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * The RGB pixels of the image.
+     */
+    public int[] getImageData() {
+        return imageData;
+    }
+}
@@ -0,0 +1,143 @@
+package se.cha.chip8.screen;
+
+/**
+ * Phosphor afterglow simulation at the native CHIP-8 screen resolution.
+ * <p>
+ * Each screen pixel has an intensity level, 0 (dark) to {@link #MAX_INTENSITY} (lit). A lit pixel is set to full
+ * intensity, an unlit pixel decays one step per frame through a decay table. The table is built once from the decay
+ * curve and decay time, so the per frame work is one table lookup per pixel in plain integer arithmetic.
+ * <p>
+ * Each screen pixel also has a color, the palette index it was last lit with. An unlit pixel fades in that color.
+ */
+public class PhosphorPersistence {
+
+    public static final int MAX_INTENSITY = 255;
+
+    /**
+     * Longest decay time, in milliseconds.
+     */
+    public static final int MAX_DECAY_MILLIS = 10_000;
+
+    private final int[] decayTable = new int[MAX_INTENSITY + 1];
+
+    private int width = 0;
+    private int height = 0;
+    private int[] intensity = new int[0];
+    private int[] color = new int[0];
+
+    // Indices of the pixels whose intensity changed in the last update
+    private int[] changedPixels = new int[0];
+    private int changedPixelCount = 0;
+
+    public enum DecayCurve {
+        /**
+         * Intensity is multiplied by a constant factor each frame, like a real phosphor.
+         */
+        EXPONENTIAL,
+        /**
+         * Intensity is reduced by a constant step each frame.
+         */
+        LINEAR
+    }
+
+    /**
+     * @param decayCurve  shape of the decay
+     * @param decayMillis time for an unlit pixel to fade from full intensity to 10% intensity, 1 to {@link #MAX_DECAY_MILLIS}
+     * @param frameRate   frames (updates) per second, {@link FrameScheduler#UNCAPPED} is the rate fading frames are
+     *                    paced at when uncapped, {@link FrameScheduler#UNCAPPED_FADE_FRAME_RATE}
+     */
+    public PhosphorPersistence(DecayCurve decayCurve, int decayMillis, int frameRate) {
+        final int framesPerSecond = (frameRate > 0) ? frameRate : FrameScheduler.UNCAPPED_FADE_FRAME_RATE;
+        final double decayFrames = Math.max(1.0, decayMillis * framesPerSecond / 1000.0);
+
+        for (int level = 0; level <= MAX_INTENSITY; level++) {
+            switch (decayCurve) {
+                case LINEAR: {
+                    final int step = (int) Math.ceil(0.9 * MAX_INTENSITY / decayFrames);
+                    decayTable[level] = Math.max(0, level - step);
+                    break;
+                }
+                case EXPONENTIAL:
+                default: {
+                    final double factor = Math.pow(0.1, 1.0 / decayFrames);
+                    decayTable[level] = (int) Math.floor(level * factor); // Floor, for intensity to reach zero
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Advance the afterglow one frame.
+     *
+     * @param pixels screen pixel palette indexes, see {@link ScreenUnpacker}, a pixel is lit if it is not 0
+     * @return true if the intensity or color of any pixel changed
+     */
+    public boolean update(int[] pixels, int width, int height) {
+        final int pixelCount = width * height;
+
+        if ((width != this.width) || (height != this.height)) {
+            this.width = width;
+            this.height = height;
+            intensity = new int[pixelCount];
+            color = new int[pixelCount];
+            changedPixels = new int[pixelCount];
+        }
+
+        int changedCount = 0;
+        for (int i = 0; i < pixelCount; i++) {
+            final int pixel = pixels[i];
+            final int level = intensity[i];
+
+            if (pixel != 0) {
+                if ((level != MAX_INTENSITY) || (color[i] != pixel)) {
+                    intensity[i] = MAX_INTENSITY;
+                    color[i] = pixel;
+                    changedPixels[changedCount++] = i;
+                }
+            } else {
+                final int nextLevel = decayTable[level];
+                if (nextLevel != level) {
+                    intensity[i] = nextLevel;
+                    changedPixels[changedCount++] = i;
+                }
+            }
+        }
+        changedPixelCount = changedCount;
+
+        return changedCount > 0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Intensity level per pixel, row by row.
+     */
+    public int[] getIntensity() {
+        return intensity;
+    }
+
+    /**
+     * Palette index per pixel, the color the pixel was last lit with (0 if never lit), row by row.
+     */
+    public int[] getColor() {
+        return color;
+    }
+
+    /**
+     * Indices of the pixels changed in the last update, the first {@link #getChangedPixelCount()} entries are valid.
+     */
+    public int[] getChangedPixels() {
+        return changedPixels;
+    }
+
+    public int getChangedPixelCount() {
+        return changedPixelCount;
+    }
+}
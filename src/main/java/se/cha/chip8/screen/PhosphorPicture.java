@@ -0,0 +1,21 @@
+package se.cha.chip8.screen;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws the phosphor intensities as the (opaque RGB) picture of the phosphor screen.
+ */
+public interface PhosphorPicture {
+
+    /**
+     * Redraw the picture after a phosphor update.
+     */
+    void render(PhosphorPersistence phosphor);
+
+    BufferedImage getImage();
+
+    /**
+     * The RGB pixels of the image.
+     */
+    int[] getImageData();
+}
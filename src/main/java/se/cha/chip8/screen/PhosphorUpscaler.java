@@ -0,0 +1,167 @@
+package se.cha.chip8.screen;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Draws the phosphor intensities as an upscaled (nearest neighbour) picture with CRT scanlines.
+ * <p>
+ * Pixel block positions and intensity colors are computed once, per screen resolution and palette.
+ * Each frame only the blocks of the screen pixels whose intensity changed are redrawn, with plain array writes.
+ * <p>
+ * Screen pixels are scaled by the largest whole factor (per axis) fitting the picture area, so all pixels are
+ * blocks of the same size, and the picture is centered in the picture area. Only a picture area smaller than
+ * the screen resolution falls back to blocks of uneven size.
+ */
+public class PhosphorUpscaler implements PhosphorPicture {
+
+    private static final int SCANLINE_INTERVAL = 3;
+
+    private final BufferedImage image;
+    private final int[] imageData;
+    private final Rectangle pictureArea;
+    private final int backgroundColor;
+
+    // Color per palette index and intensity level, for ordinary rows and for the darker scanline rows
+    private final int[][] colors = new int[ScreenUnpacker.PALETTE_SIZE][PhosphorPersistence.MAX_INTENSITY + 1];
+    private final int[][] scanlineColors = new int[ScreenUnpacker.PALETTE_SIZE][PhosphorPersistence.MAX_INTENSITY + 1];
+
+    // Image area of each screen column and row, for the current screen resolution
+    private int sourceWidth = 0;
+    private int sourceHeight = 0;
+    private int[] columnStart = new int[0];
+    private int[] columnEnd = new int[0];
+    private int[] rowStart = new int[0];
+    private int[] rowEnd = new int[0];
+
+    /**
+     * @param width       image width
+     * @param height      image height
+     * @param pictureArea the area of the image covered by the screen pixels, the rest is background
+     * @param palette     lit color per palette index, index 0 is the dark (unlit) color, see {@link #paletteColor(Color[], int)}
+     */
+    public PhosphorUpscaler(int width, int height, Rectangle pictureArea, Color[] palette) {
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        imageData = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.pictureArea = new Rectangle(pictureArea);
+        final Color darkColor = palette[0];
+        backgroundColor = darkColor.getRGB();
+
+        for (int paletteIndex = 0; paletteIndex < ScreenUnpacker.PALETTE_SIZE; paletteIndex++) {
+            final Color litColor = paletteColor(palette, paletteIndex);
+            for (int level = 0; level <= PhosphorPersistence.MAX_INTENSITY; level++) {
+                // A lit pixel is dimmed by a quarter (and the scanlines by five eights) of the dark color
+                colors[paletteIndex][level] = blend(darkColor, litColor, level * 3 / 4);
+                scanlineColors[paletteIndex][level] = blend(darkColor, litColor, level * 3 / 8);
+            }
+        }
+
+        Arrays.fill(imageData, backgroundColor);
+    }
+
+    /**
+     * Redraw the pixels changed in the last phosphor update.
+     */
+    @Override
+    public void render(PhosphorPersistence phosphor) {
+        final int[] intensity = phosphor.getIntensity();
+        final int[] color = phosphor.getColor();
+
+        if ((phosphor.getWidth() != sourceWidth) || (phosphor.getHeight() != sourceHeight)) {
+            resize(phosphor.getWidth(), phosphor.getHeight());
+            for (int i = 0; i < intensity.length; i++) {
+                drawPixel(i, color[i], intensity[i]);
+            }
+            return;
+        }
+
+        final int[] changedPixels = phosphor.getChangedPixels();
+        final int changedPixelCount = phosphor.getChangedPixelCount();
+        for (int i = 0; i < changedPixelCount; i++) {
+            final int pixelIndex = changedPixels[i];
+            drawPixel(pixelIndex, color[pixelIndex], intensity[pixelIndex]);
+        }
+    }
+
+    private void drawPixel(int pixelIndex, int paletteIndex, int level) {
+        final int sourceX = pixelIndex % sourceWidth;
+        final int sourceY = pixelIndex / sourceWidth;
+        final int color = colors[paletteIndex][level];
+        final int scanlineColor = scanlineColors[paletteIndex][level];
+        final int x0 = columnStart[sourceX];
+        final int x1 = columnEnd[sourceX];
+        final int imageWidth = image.getWidth();
+
+        for (int y = rowStart[sourceY]; y < rowEnd[sourceY]; y++) {
+            final int rowOffset = y * imageWidth;
+            Arrays.fill(imageData, rowOffset + x0, rowOffset + x1, ((y % SCANLINE_INTERVAL) == 0) ? scanlineColor : color);
+        }
+    }
+
+    private void resize(int width, int height) {
+        sourceWidth = width;
+        sourceHeight = height;
+        columnStart = new int[width];
+        columnEnd = new int[width];
+        rowStart = new int[height];
+        rowEnd = new int[height];
+
+        layoutBlocks(columnStart, columnEnd, pictureArea.x, pictureArea.width);
+        layoutBlocks(rowStart, rowEnd, pictureArea.y, pictureArea.height);
+
+        Arrays.fill(imageData, backgroundColor);
+    }
+
+    /**
+     * Image positions of the pixel blocks of a screen axis, within the picture area span {@code areaStart} to {@code areaStart + areaSize}.
+     */
+    private static void layoutBlocks(int[] blockStarts, int[] blockEnds, int areaStart, int areaSize) {
+        final int sourceSize = blockStarts.length;
+        final int factor = areaSize / sourceSize;
+
+        for (int i = 0; i < sourceSize; i++) {
+            if (factor > 0) {
+                final int offset = areaStart + (areaSize - factor * sourceSize) / 2;
+                blockStarts[i] = offset + i * factor;
+                blockEnds[i] = offset + (i + 1) * factor;
+            } else {
+                blockStarts[i] = areaStart + blockStart(i, areaSize, sourceSize);
+                blockEnds[i] = areaStart + blockStart(i + 1, areaSize, sourceSize);
+            }
+        }
+    }
+
+    /**
+     * First target position of a source pixel when scaling with nearest neighbour.
+     */
+    private static int blockStart(int sourcePosition, int targetSize, int sourceSize) {
+        return (sourcePosition * targetSize + sourceSize - 1) / sourceSize;
+    }
+
+    /**
+     * The lit color of a palette index. A palette shorter than {@link ScreenUnpacker#PALETTE_SIZE} repeats its last color.
+     */
+    static Color paletteColor(Color[] palette, int paletteIndex) {
+        return palette[Math.min(paletteIndex, palette.length - 1)];
+    }
+
+    static int blend(Color from, Color to, int amount) {
+        final int max = PhosphorPersistence.MAX_INTENSITY;
+        final int r = from.getRed() + (to.getRed() - from.getRed()) * amount / max;
+        final int g = from.getGreen() + (to.getGreen() - from.getGreen()) * amount / max;
+        final int b = from.getBlue() + (to.getBlue() - from.getBlue()) * amount / max;
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    @Override
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    @Override
+    public int[] getImageData() {
+        return imageData;
+    }
+}
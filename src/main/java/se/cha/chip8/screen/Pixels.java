@@ -0,0 +1,29 @@
+package se.cha.chip8.screen;
+
+/**
+ * Integer arithmetic on packed RGB pixels.
+ */
+public final class Pixels {
+
+    private Pixels() {
+    }
+
+    /**
+     * Linear interpolation of RGB pixels, with an 8 bit weight (0-256) of the to pixel. The alpha of the result is zero.
+     * Red and blue are interpolated together, they are far enough apart not to overflow into each other.
+     */
+    public static int lerp(int from, int to, int weight) {
+        final int inverseWeight = 256 - weight;
+        final int redBlue = ((((from & 0xFF00FF) * inverseWeight) + ((to & 0xFF00FF) * weight)) >>> 8) & 0xFF00FF;
+        final int green = ((((from & 0x00FF00) * inverseWeight) + ((to & 0x00FF00) * weight)) >>> 8) & 0x00FF00;
+        return redBlue | green;
+    }
+
+    /**
+     * An ARGB pixel (not premultiplied) drawn over an opaque pixel. The result is opaque.
+     */
+    public static int over(int pixel, int background) {
+        final int alpha = pixel >>> 24;
+        return 0xFF000000 | lerp(background, pixel, alpha + (alpha >>> 7));
+    }
+}
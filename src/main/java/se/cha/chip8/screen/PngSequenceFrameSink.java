@@ -0,0 +1,49 @@
+package se.cha.chip8.screen;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * PNG image sequence frame sink, one numbered image file per frame, counted from 0.
+ */
+public class PngSequenceFrameSink implements FrameSink {
+
+    private static final String DEFAULT_FILE_NAME_PATTERN = "frame-%06d.png";
+
+    private final String fileNamePattern;
+    private BufferedImage image = null;
+    private long frameNumber = 0;
+
+    /**
+     * @param fileNamePattern file name pattern with the frame number, like "frames/frame-%06d.png",
+     *                        or a directory to write frames named like "frame-000000.png" to
+     */
+    public PngSequenceFrameSink(String fileNamePattern) throws IOException {
+        this.fileNamePattern = fileNamePattern.contains("%") ? fileNamePattern : new File(fileNamePattern, DEFAULT_FILE_NAME_PATTERN).getPath();
+
+        final File directory = new File(String.format(this.fileNamePattern, 0L)).getAbsoluteFile().getParentFile();
+        if ((directory != null) && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create frame directory " + directory + ".");
+        }
+    }
+
+    @Override
+    public void writeFrame(int[] argbPixels, int width, int height) throws IOException {
+        if ((image == null) || (image.getWidth() != width) || (image.getHeight() != height)) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        image.getRaster().setDataElements(0, 0, width, height, argbPixels);
+
+        final File file = new File(String.format(fileNamePattern, frameNumber++));
+        if (!ImageIO.write(image, "png", file)) {
+            throw new IOException("No PNG image writer available.");
+        }
+    }
+
+    @Override
+    public void close() {
+        // Every frame is a file of its own, written and closed
+    }
+}
@@ -0,0 +1,94 @@
+package se.cha.chip8.screen;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the per pixel CRT post-processing stages, split in horizontal stripes over a fork join pool.
+ * <p>
+ * A stage processes a range of rows (or any other index range) of its pixel arrays, and must not depend on
+ * how the range is split. Each stage is completed before the next one is started, so a stage may read
+ * anything the previous stages wrote.
+ * <p>
+ * With one thread all stages run on the calling thread, in one stripe each. Parallel results are the same
+ * as single thread results, but the single thread mode is also deterministic in order, which helps testing.
+ */
+public class PostProcessingPipeline {
+
+    // Stripes per thread, a few more than one to even out the load
+    private static final int STRIPES_PER_THREAD = 4;
+    private static final int MIN_STRIPE_SIZE = 8;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param parallelism number of threads to process stripes with, 1 processes all stages on the calling thread
+     */
+    public PostProcessingPipeline(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        pool = (this.parallelism > 1) ? new ForkJoinPool(this.parallelism) : null;
+    }
+
+    public static PostProcessingPipeline singleThreaded() {
+        return new PostProcessingPipeline(1);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Process the range 0 (inclusive) to {@code size} (exclusive) with a stage, and wait for it to complete.
+     */
+    public void run(int size, Stage stage) {
+        if ((pool == null) || (size <= MIN_STRIPE_SIZE)) {
+            stage.process(0, size);
+            return;
+        }
+
+        final int stripeSize = Math.max(MIN_STRIPE_SIZE, (size + parallelism * STRIPES_PER_THREAD - 1) / (parallelism * STRIPES_PER_THREAD));
+        pool.invoke(new StripeAction(stage, 0, size, stripeSize));
+    }
+
+    /**
+     * Stop the pool threads. Stages can not be run after a shutdown.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    public interface Stage {
+        /**
+         * Process the range {@code from} (inclusive) to {@code to} (exclusive).
+         */
+        void process(int from, int to);
+    }
+
+    private static class StripeAction extends RecursiveAction {
+
+        private final Stage stage;
+        private final int from;
+        private final int to;
+        private final int stripeSize;
+
+        StripeAction(Stage stage, int from, int to, int stripeSize) {
+            this.stage = stage;
+            this.from = from;
+            this.to = to;
+            this.stripeSize = stripeSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= stripeSize) {
+                stage.process(from, to);
+            } else {
+                final int middle = from + (to - from) / 2;
+                invokeAll(new StripeAction(stage, from, middle, stripeSize), new StripeAction(stage, middle, to, stripeSize));
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package se.cha.chip8.screen;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Raw video frame sink, frames written back to back as RGBA bytes without any header.
+ * The reader must know the frame size, for ffmpeg like "-f rawvideo -pixel_format rgba -video_size 1432x1071".
+ */
+public class RawRgbaFrameSink implements FrameSink {
+
+    private final OutputStream outputStream;
+    private byte[] frameBytes = new byte[0];
+
+    public RawRgbaFrameSink(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    @Override
+    public void writeFrame(int[] argbPixels, int width, int height) throws IOException {
+        final int pixelCount = width * height;
+        if (frameBytes.length != pixelCount * 4) {
+            frameBytes = new byte[pixelCount * 4];
+        }
+
+        for (int i = 0, b = 0; i < pixelCount; i++, b += 4) {
+            final int argb = argbPixels[i];
+            frameBytes[b] = (byte) (argb >> 16);
+            frameBytes[b + 1] = (byte) (argb >> 8);
+            frameBytes[b + 2] = (byte) argb;
+            frameBytes[b + 3] = (byte) (argb >>> 24);
+        }
+
+        outputStream.write(frameBytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+}
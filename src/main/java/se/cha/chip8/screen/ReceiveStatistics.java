@@ -0,0 +1,92 @@
+package se.cha.chip8.screen;
+
+/**
+ * Packet receive counters of a UDP listener, and a periodic report of the rates since the last report.
+ * Only to be used by the listener thread.
+ */
+public class ReceiveStatistics {
+
+    private final int port;
+
+    private long packetCount = 0;
+    private long byteCount = 0;
+    private long truncatedCount = 0;
+    private long failedCount = 0;
+
+    private long reportStart;
+    private long reportPacketCount = 0;
+    private long reportByteCount = 0;
+    private long reportTruncatedCount = 0;
+    private long reportFailedCount = 0;
+    private long reportKernelDrops;
+
+    public ReceiveStatistics(int port, long now) {
+        this.port = port;
+        reportStart = now;
+        final KernelUdpCounters kernelCounters = KernelUdpCounters.read(port);
+        reportKernelDrops = (kernelCounters != null) ? kernelCounters.getDrops() : 0;
+    }
+
+    public void packetReceived(int length) {
+        packetCount++;
+        byteCount += length;
+    }
+
+    /**
+     * A packet larger than the maximum datagram size was received, and dropped.
+     */
+    public void packetTruncated() {
+        truncatedCount++;
+    }
+
+    /**
+     * A packet could not be processed, and was dropped.
+     */
+    public void packetFailed() {
+        failedCount++;
+    }
+
+    public long getPacketCount() {
+        return packetCount;
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    public long getTruncatedCount() {
+        return truncatedCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * Receive statistics since the last report, starts a new report interval.
+     */
+    public String report(long now) {
+        final double seconds = Math.max(1, now - reportStart) / 1_000_000_000.0;
+        final KernelUdpCounters kernelCounters = KernelUdpCounters.read(port);
+
+        final String report = String.format("Packet receive: %.1f packets/s, %.1f kB/s, truncated %d, failed %d, kernel drops %s",
+                (packetCount - reportPacketCount) / seconds,
+                (byteCount - reportByteCount) / seconds / 1000.0,
+                truncatedCount - reportTruncatedCount,
+                failedCount - reportFailedCount,
+                (kernelCounters != null)
+                        ? (kernelCounters.getDrops() - reportKernelDrops) + " (receive queue " + kernelCounters.getReceiveQueueBytes() + " bytes)"
+                        : "n/a");
+
+        reportStart = now;
+        reportPacketCount = packetCount;
+        reportByteCount = byteCount;
+        reportTruncatedCount = truncatedCount;
+        reportFailedCount = failedCount;
+        if (kernelCounters != null) {
+            reportKernelDrops = kernelCounters.getDrops();
+        }
+
+        return report;
+    }
+}
@@ -0,0 +1,156 @@
+package se.cha.chip8.screen;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The render thread of a monitor or a mosaic, for the {@link ScreenFrame}, {@link HeadlessScreen}, {@link MosaicFrame}
+ * and {@link HeadlessMosaic}.
+ * <p>
+ * The thread renders a frame when a render is requested, and keeps rendering while the phosphor is still fading;
+ * otherwise it is parked until {@link #wakeUp()}. The frames are paced by a {@link FrameScheduler}, fade frames also
+ * when the frame rate is uncapped, see {@link FrameScheduler#awaitFadeFrame()}. With a constant frame rate a frame is
+ * rendered on every frame tick, also when nothing changed.
+ */
+public class RenderLoop {
+
+    private final Configuration configuration;
+    private final boolean constantFrameRate;
+    private final RenderRequests renderRequests;
+    private final Renderer renderer;
+    private final Thread renderThread;
+
+    private boolean phosphorFading = false; // Set by the render thread while the afterglow still changes any pixel
+    private volatile boolean rendering = true;
+
+    /**
+     * Uses the frame rate, and whether to print frame statistics, of the configuration.
+     *
+     * @param threadName        name of the render thread
+     * @param constantFrameRate true to render on every frame tick, only with a frame rate that is not uncapped
+     * @param renderRequests    the render requests to wait for
+     * @param renderer          renders the frames, on the render thread
+     */
+    public RenderLoop(String threadName, Configuration configuration, boolean constantFrameRate, RenderRequests renderRequests, Renderer renderer) {
+        this.configuration = configuration;
+        this.constantFrameRate = constantFrameRate && (configuration.getFrameRate() != FrameScheduler.UNCAPPED);
+        this.renderRequests = renderRequests;
+        this.renderer = renderer;
+        renderThread = new Thread(this::renderLoop, threadName);
+    }
+
+    public void start() {
+        renderThread.start();
+    }
+
+    /**
+     * Wake up the render thread, after a render was requested. Does not block.
+     */
+    public void wakeUp() {
+        LockSupport.unpark(renderThread);
+    }
+
+    /**
+     * Stop the render thread, and wait for it to end.
+     */
+    public void stop() {
+        rendering = false;
+
+        renderThread.interrupt();
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait until there is anything new to render, either a requested render or a phosphor fade still in progress.
+     *
+     * @return true if the render thread was idle, waiting for something to render
+     */
+    private boolean awaitRender(FrameScheduler frameScheduler) throws InterruptedException {
+        if (!renderRequests.isRenderRequested() && phosphorFading) {
+            frameScheduler.awaitFadeFrame();
+        }
+
+        final boolean idle = !renderRequests.isRenderRequested() && !phosphorFading;
+        while (!renderRequests.isRenderRequested() && !phosphorFading) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        renderRequests.takeRenderRequest();
+        return idle;
+    }
+
+    private void renderLoop() {
+        final FrameScheduler frameScheduler = new FrameScheduler(configuration.getFrameRate(), 2, configuration.isFrameStatistics() ? 10 : 0);
+
+        try {
+            while (rendering) {
+                if (constantFrameRate) {
+                    renderRequests.takeRenderRequest();
+                } else if (awaitRender(frameScheduler)) {
+                    frameScheduler.resync();
+                }
+
+                phosphorFading = renderer.render();
+                frameScheduler.awaitNextFrame();
+            }
+        } catch (InterruptedException e) {
+            // Render thread stopped
+        }
+
+        System.out.println("Ending " + renderThread.getName() + " thread.");
+    }
+
+    /**
+     * Renders the frames, on the render thread.
+     */
+    public interface Renderer {
+        /**
+         * Render a frame.
+         *
+         * @return true if the phosphor is still fading, and the next frame changes the picture
+         */
+        boolean render() throws InterruptedException;
+    }
+
+    /**
+     * Render requests, set by any thread and taken by the render thread.
+     */
+    public interface RenderRequests {
+        boolean isRenderRequested();
+
+        /**
+         * Clear the render request, before rendering.
+         *
+         * @return true if a render was requested
+         */
+        boolean takeRenderRequest();
+    }
+
+    /**
+     * Render requests of a render loop that is not rendering a {@link ScreenState}, initially requested.
+     */
+    public static class RenderRequestFlag implements RenderRequests {
+        private final AtomicBoolean renderRequested = new AtomicBoolean(true);
+
+        public void requestRender() {
+            renderRequested.set(true);
+        }
+
+        @Override
+        public boolean isRenderRequested() {
+            return renderRequested.get();
+        }
+
+        @Override
+        public boolean takeRenderRequest() {
+            return renderRequested.getAndSet(false);
+        }
+    }
+}
@@ -1,37 +1,33 @@
 package se.cha.chip8.screen;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.util.Objects;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 
-public class ScreenFrame extends JFrame {
+/**
+ * The CRT monitor window.
+ * <p>
+ * Screen and peripheral state is set in the {@link ScreenState} by the network listener thread, and rendered by the
+ * render thread, a {@link RenderLoop}. The render thread is woken up when the state changes.
+ */
+public class ScreenFrame extends JFrame implements ScreenState.Listener {
 
-    private static ScreenFrame singleton = null;
-
-    private final JScrollPane scrollPane = new JScrollPane(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-
-    private BufferedImage image = null;
-    private BufferedImage doubleBufferImage;
-    private BufferedImage bufferImageRenderSize;
+    // Smallest monitor scale, below it the monitor is not readable anyway
+    private static final double MIN_MONITOR_SCALE = 0.2;
 
+    private static ScreenFrame singleton = null;
 
-    private BufferedImage crtImage = null;
-    private BufferedImage crtGlareImage = null;
+    private ScreenPresenter presenter = null;
+    private CrtComposer crtComposer = null;
+    private FrameLatency frameLatency = null; // Null unless frame latencies are measured
 
-    private int[] bufferImageData;
-    private BufferedImage bufferImage;
-    private BufferedImage phosphorImage;
-    private BufferedImage fadeImage = null;
-    private BufferedImage activeLightsImage = null;
+    private final ScreenState screenState = new ScreenState(new ScreenUnpacker(), this);
 
-    private int keyState = 0x0000;
-    private boolean soundState = false;
+    private volatile RenderLoop renderLoop = null;
+    // Monitor size to fit the window, set on a window resize and applied by the render thread
+    private volatile Dimension pendingMonitorSize = null;
 
-    private final int width = 64;
-    private final int height = 32;
     private Configuration configuration;
 
     private ScreenFrame() {
@@ -46,224 +42,139 @@ public class ScreenFrame extends JFrame {
         return singleton;
     }
 
-
-    public BufferedImage getImage() {
-        return image;
+    /**
+     * The state shown in the window, to be set by the network listener thread.
+     */
+    public ScreenState getScreenState() {
+        return screenState;
     }
 
-    public void setImage(BufferedImage image) {
-        this.image = image;
-
-        final ImageIcon imageIcon = new ImageIcon(image);
-        final JLabel label = new JLabel(imageIcon);
-        scrollPane.setViewportView(label);
-
-        resizeFrame();
+    public void setChip8ScreenData(byte[] imageBitData) {
+        screenState.setChip8ScreenData(imageBitData);
     }
 
+    public void setChip8KeyState(int keyState) {
+        screenState.setChip8KeyState(keyState);
+    }
 
-    public synchronized void setChip8ScreenData(byte[] imageBitData) {
-        final Color brightColor = configuration.getBrightColor();
-        final int pixelOn = new Color(brightColor.getRed(), brightColor.getGreen(), brightColor.getBlue(), 0xFF).getRGB();
-        final int pixelOff = new Color(brightColor.getRed(), brightColor.getGreen(), brightColor.getBlue(), 0x00).getRGB();
-
-        // Convert bit array (of bytes) with one bit per pixel to array of int with one int per pixel
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                final int streamPixelIndex = x + (y * width);
-                final int streamByteIndex = streamPixelIndex / 8;
-                final int streamBitInByteIndex = streamPixelIndex % 8;
+    public void setChip8SoundState(boolean soundState) {
+        screenState.setChip8SoundState(soundState);
+    }
 
-                final int streamBitValue = (imageBitData[streamByteIndex] >> (7 - streamBitInByteIndex)) & 0x00000001;
-                bufferImageData[streamPixelIndex] = streamBitValue == 1 ? pixelOn : pixelOff;
-            }
+    /**
+     * Wake up the render thread to compose a new frame.
+     */
+    @Override
+    public void renderRequested() {
+        final RenderLoop loop = renderLoop;
+        if (loop != null) {
+            loop.wakeUp();
         }
-
-        // printScreen(bufferImageData);
-        bufferImage.setRGB(0, 0, width, height, bufferImageData, 0, width);
     }
 
-    private void printScreen(int[] screenBuffer) {
-        final StringBuilder sb = new StringBuilder();
-        sb.append("\n");
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                final int pixelValue = screenBuffer[x + y * width];
-                sb.append((pixelValue != 0) ? "██" : "░░");
-            }
-            sb.append("\n");
+    @Override
+    public void soundStateChanged(boolean soundState) {
+        // System.out.println("New chip 8 sound state: " + (soundState ? "on" : "off"));
+        if (soundState) {
+            BeepGenerator.playBeep();
+        } else {
+            BeepGenerator.pauseBeep();
         }
-
-        System.out.println(sb);
     }
 
-    public void setChip8KeyState(int keyState) {
-        if (keyState != this.keyState) {
-            //System.out.println("New chip 8 key pad state:     " + KeyPad.leftPad(Integer.toBinaryString(keyState), "0", 16));
-            this.keyState = keyState;
+    /**
+     * Stop the render thread, and wait for it to end.
+     */
+    public void stopRendering() {
+        if (renderLoop != null) {
+            renderLoop.stop();
         }
-    }
 
-    public void setChip8SoundState(boolean soundState) {
-        if (soundState != this.soundState) {
-            // System.out.println("New chip 8 sound state: " + (soundState ? "on" : "off"));
-            this.soundState = soundState;
-
-            if (this.soundState) {
-                BeepGenerator.playBeep();
-            } else {
-                BeepGenerator.pauseBeep();
-            }
+        if (crtComposer != null) {
+            crtComposer.shutdown();
         }
     }
 
-    private void updateCrt() {
-        final Graphics2D bufferImageRenderSizeGraphics = (Graphics2D) bufferImageRenderSize.getGraphics();
-        final int bufferImagewidth = bufferImageRenderSize.getWidth();
-        final int bufferImageheight = bufferImageRenderSize.getHeight();
-        bufferImageRenderSize.setRGB(0, 0, bufferImagewidth, bufferImageheight, new int[bufferImagewidth * bufferImageheight], 0, bufferImagewidth);
-        bufferImageRenderSizeGraphics.drawImage(bufferImage, 40, 40, 860, 640, null);
-        bufferImageRenderSizeGraphics.dispose();
-
-        final Graphics phosphorImageGraphics = phosphorImage.getGraphics();
-        phosphorImageGraphics.drawImage(bufferImageRenderSize, 0, 0, null);
-        phosphorImageGraphics.drawImage(fadeImage, 0, 0, null);
-        phosphorImageGraphics.dispose();
-
-        //final BufferedImage phosphorGlowImage = Blur2.blur(bufferImageRenderSize, 30, true);
-        //final int[] phosphorGlowImageRGB = phosphorGlowImage.getRGB(0, 0, phosphorGlowImage.getWidth(), phosphorGlowImage.getHeight(), null, 0, phosphorGlowImage.getWidth());
-        //for (int i = 0; i < phosphorGlowImageRGB.length; i++) {
-        //    phosphorGlowImageRGB[i] = (phosphorGlowImageRGB[i] & 0x00FFFFFF) | (0x44 << 24); // Glare amount
-        //}
-        //phosphorGlowImage.setRGB(0, 0, phosphorGlowImage.getWidth(), phosphorGlowImage.getHeight(), phosphorGlowImageRGB, 0, phosphorGlowImage.getWidth());
-
-        final Graphics doubleBufferImageGraphics = doubleBufferImage.getGraphics();
-        doubleBufferImageGraphics.setColor(Color.BLACK);
-        doubleBufferImageGraphics.fillRect(0, 0, doubleBufferImage.getWidth(), doubleBufferImage.getHeight());
-
-        doubleBufferImageGraphics.drawImage(phosphorImage, 220 - 40, 200 - 40, null);
-        //doubleBufferImageGraphics.drawImage(phosphorGlowImage, 220 - 40, 200 - 40, null);
-        doubleBufferImageGraphics.drawImage(crtGlareImage, 0, 0, null);
-        doubleBufferImageGraphics.drawImage(crtImage, 0, 0, null);
-
-        drawLights(doubleBufferImageGraphics, doubleBufferImage.getWidth(), doubleBufferImage.getHeight());
-
-        doubleBufferImageGraphics.dispose();
+    /**
+     * Fit the monitor to the space available in the window, on the next frame.
+     */
+    private void fitMonitorSize() {
+        final Dimension availableSize = presenter.getAvailableSize();
+        final Dimension baseSize = crtComposer.getBaseSize();
+        if ((availableSize.width <= 0) || (availableSize.height <= 0)) {
+            return;
+        }
 
-        final Graphics2D g = (Graphics2D) getImage().getGraphics();
-        g.drawImage(doubleBufferImage, 0, 0, null);
-        g.dispose();
+        final double scale = Math.max(MIN_MONITOR_SCALE, Math.min((double) availableSize.width / baseSize.width, (double) availableSize.height / baseSize.height));
+        pendingMonitorSize = new Dimension((int) Math.round(baseSize.width * scale), (int) Math.round(baseSize.height * scale));
+        screenState.requestRender();
+    }
 
-        repaint();
+    private void applyPendingMonitorSize() {
+        final Dimension monitorSize = pendingMonitorSize;
+        if (monitorSize != null) {
+            pendingMonitorSize = null;
+            crtComposer.resize(monitorSize.width, monitorSize.height);
+        }
     }
 
-    private void drawLights(Graphics doubleBufferImageGraphics, int width, int height) {
-        if (soundState) {
-            final int ledX = width - 195;
-            final int ledY = 220;
-            final int ledSize = 35;
-            doubleBufferImageGraphics.drawImage(activeLightsImage, ledX, ledY, ledX + ledSize, ledY + ledSize, ledX, ledY, ledX + ledSize, ledY + ledSize, null);
+    /**
+     * Render a frame, on the render thread.
+     *
+     * @return true if the phosphor is still fading
+     */
+    private boolean updateCrt() {
+        applyPendingMonitorSize();
+        if ((frameLatency != null) && configuration.isLatencyOverlay()) {
+            crtComposer.setOverlayText(frameLatency.getOverlayText());
         }
+        final boolean phosphorFading = crtComposer.render(screenState);
 
-        if (keyState > 0) {
-            final int xs = width - 240;
-            final int ys = height - 315;
-            final int kw = 31;
-
-            for (int keyBitIndex = 0; keyBitIndex <= 0xF; keyBitIndex++) {
-                final boolean keyPressed = ((keyState >>> keyBitIndex) & 1) > 0;
-                if (keyPressed) {
-                    int kx = 0;
-                    int ky = 0;
-                    if ((keyBitIndex >= 0x1) && (keyBitIndex <= 0x9)) {
-                        kx = (keyBitIndex - 1) % 3;
-                        ky = (keyBitIndex - 1) / 3;
-                    } else if ((keyBitIndex >= 0xC) && (keyBitIndex <= 0xF)) {
-                        kx = 3;
-                        ky = keyBitIndex - 0xC;
-                    } else if (keyBitIndex == 0xA) {
-                        kx = 0;
-                        ky = 3;
-                    } else if (keyBitIndex == 0x0) {
-                        kx = 1;
-                        ky = 3;
-                    } else if (keyBitIndex == 0xB) {
-                        kx = 2;
-                        ky = 3;
-                    }
-
-                    // doubleBufferImageGraphics.setColor(Color.RED);
-                    // doubleBufferImageGraphics.drawRect(xs + kx * kw, ys + ky * kw, kw, kw);
-                    doubleBufferImageGraphics.drawImage(activeLightsImage, xs + kx * kw, ys + ky * kw, xs + kx * kw + kw, ys + ky * kw + kw, xs + kx * kw, ys + ky * kw, xs + kx * kw + kw, ys + ky * kw + kw, null);
-                }
-            }
+        presenter.present(crtComposer.getImage(), crtComposer.getDirtyAreas());
+        if (frameLatency != null) {
+            frameLatency.framePresented(screenState.getCurrentScreen(), System.nanoTime());
         }
+
+        return phosphorFading;
     }
 
     public void initialize(Configuration configuration) {
         this.configuration = configuration;
         addKeyListener(new KeyPad(configuration.getChip8Address()));
 
-        setImage(new BufferedImage(1432, 1071, BufferedImage.TYPE_INT_ARGB));
-
-        bufferImageRenderSize = new BufferedImage(940, 720, BufferedImage.TYPE_INT_ARGB);
-        doubleBufferImage = new BufferedImage(1432, 1071, BufferedImage.TYPE_INT_ARGB);
-
-        try {
-            crtImage = ImageIO.read(Objects.requireNonNull(ClassLoader.getSystemResourceAsStream("CHIP-8 monitor.png")));
-            crtGlareImage = ImageIO.read(Objects.requireNonNull(ClassLoader.getSystemResourceAsStream("CHIP-8 monitor - glare.png")));
-            activeLightsImage = ImageIO.read(Objects.requireNonNull(ClassLoader.getSystemResourceAsStream("CHIP-8 monitor - active.png")));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-        final Color darkColor = configuration.getDarkColor();
-
-        fadeImage = new BufferedImage(940, 720, BufferedImage.TYPE_INT_ARGB);
-        final Graphics fadeGraphics = fadeImage.getGraphics();
-        fadeGraphics.setColor(new Color(darkColor.getRed(), darkColor.getGreen(), darkColor.getBlue(), 0x40));
-        fadeGraphics.fillRect(0, 0, fadeImage.getWidth() - 1, fadeImage.getHeight() - 1);
-        fadeGraphics.setColor(new Color(darkColor.getRed(), darkColor.getGreen(), darkColor.getBlue(), 0x80));
-        for (int crtY = 0; crtY < fadeImage.getHeight(); crtY += 3) {
-            fadeGraphics.drawLine(0, crtY, fadeImage.getWidth(), crtY);
-        }
-        fadeGraphics.dispose();
-
-        bufferImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        bufferImageData = new int[width * height];
-
-        phosphorImage = new BufferedImage(940, 720, BufferedImage.TYPE_INT_ARGB);
-        final Graphics phosphorImageGraphics = phosphorImage.getGraphics();
-        phosphorImageGraphics.setColor(Color.BLACK);
-        phosphorImageGraphics.fillRect(0, 0, phosphorImage.getWidth(), phosphorImage.getHeight());
-        phosphorImageGraphics.dispose();
-
-        final Graphics graphics = image.getGraphics();
-        graphics.setColor(java.awt.Color.BLACK);
-        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
-        graphics.dispose();
-
-        final Thread thread = new Thread(() -> {
-            while (true) {
-                updateCrt();
-
-                try {
-                    Thread.sleep(1000 / 60);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
+        crtComposer = new CrtComposer(configuration);
+        frameLatency = configuration.isLatencyMeasured() ? new FrameLatency(configuration.getLatencyReport()) : null;
+        final Dimension monitorSize = crtComposer.getBaseSize();
+        presenter = createPresenter(configuration.getRenderBackend(), monitorSize.width, monitorSize.height);
+        presenter.getComponent().addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                fitMonitorSize();
             }
         });
-        thread.start();
 
-        add(scrollPane);
+        renderLoop = new RenderLoop("CRT render", configuration, false, screenState, this::updateCrt);
+        renderLoop.start();
+
+        add(presenter.getComponent());
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         pack();
+        resizeFrame();
         centerFrame();
         setVisible(true);
     }
 
+    private static ScreenPresenter createPresenter(Configuration.RenderBackend renderBackend, int width, int height) {
+        switch (renderBackend) {
+            case CANVAS:
+                return new BufferStrategyPresenter(width, height);
+            case SWING:
+            default:
+                return new ImageLabelPresenter(width, height);
+        }
+    }
+
     protected void resizeFrame() {
         // Make sure window fit within desktop area
         final Rectangle maxWindowBounds = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
@@ -275,4 +186,4 @@ public class ScreenFrame extends JFrame {
     public void centerFrame() {
         setLocationRelativeTo(null);
     }
-}
\ No newline at end of file
+}
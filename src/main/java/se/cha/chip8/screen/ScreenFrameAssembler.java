@@ -0,0 +1,302 @@
+package se.cha.chip8.screen;
+
+/**
+ * Keeps the last known bit packed CHIP-8 screen frame and applies keyframes and screen deltas to it.
+ * <p>
+ * A screen delta is a list of dirty row spans, each span encoded as
+ * <pre>
+ *   row (1 byte), first byte in row (1 byte), byte count (1 byte), XOR data (byte count bytes)
+ * </pre>
+ * The XOR data is applied to the bytes of the last known frame. The rows of a screen with several bit planes
+ * (XO-CHIP) are numbered through all planes, the first row of the second plane is row {@code height}, so a screen has
+ * at most {@link #MAX_ROWS} rows through all planes.
+ * A delta with sequence number {@code n} applies to
+ * the frame with sequence number {@code n - 1}. If a delta is missing (sequence gap) all deltas are ignored until
+ * the next keyframe (full screen) arrives.
+ * <p>
+ * Keyframes are checked before they are applied, the screen size comes from the network. A keyframe with a screen size
+ * out of bounds, more rows through all planes than a delta can address, a width that is not whole bytes, or a screen of
+ * another length than the screen size, is dropped.
+ */
+public class ScreenFrameAssembler {
+
+    public static final int DEFAULT_WIDTH = 64;
+    public static final int DEFAULT_HEIGHT = 32;
+    public static final int MAX_WIDTH = 256;
+    public static final int MAX_HEIGHT = 256;
+    /**
+     * Most rows of a screen, through all planes; a screen delta span addresses its row in one byte.
+     */
+    public static final int MAX_ROWS = 256;
+    /**
+     * Bytes of the largest bit packed screen, of the maximum width and number of rows.
+     */
+    public static final int MAX_SCREEN_BYTES = MAX_WIDTH / 8 * MAX_ROWS;
+
+    private static final long SEQUENCE_MASK = 0xFFFFFFFFL;
+    private static final int SPAN_HEADER_SIZE = 3;
+
+    /**
+     * Bytes of the largest screen delta, every row of the largest screen changed.
+     */
+    public static final int MAX_DELTA_BYTES = MAX_ROWS * (SPAN_HEADER_SIZE + MAX_WIDTH / 8);
+
+    private byte[] frame = new byte[0];
+    private int width = DEFAULT_WIDTH;
+    private int height = DEFAULT_HEIGHT;
+    private int planes = 1;
+
+    private long sequence = PeripheralState.NO_SEQUENCE;
+    private boolean awaitingKeyframe = true;
+
+    private int firstDirtyRow;
+    private int lastDirtyRow;
+
+    private long keyframeCount = 0;
+    private long deltaCount = 0;
+    private long droppedDeltaCount = 0;
+    private long invalidKeyframeCount = 0;
+
+    /**
+     * Apply the screen content of a state message, if any.
+     *
+     * @return true if the frame was updated, the changed rows are given by {@link #getFirstDirtyRow()} and {@link #getLastDirtyRow()}
+     */
+    public boolean apply(PeripheralState state) {
+        if (state.getScreen() != null) {
+            return applyKeyframe(state.getScreen(), state.getScreenWidth(), state.getScreenHeight(), state.getScreenPlanes(), state.getSequence());
+        }
+
+        if (state.getScreenDelta() != null) {
+            return applyDelta(state.getScreenDelta(), state.getScreenDeltaLength(), state.getSequence());
+        }
+
+        return false;
+    }
+
+    public boolean applyKeyframe(byte[] screen, int screenWidth, int screenHeight, long frameSequence) {
+        return applyKeyframe(screen, screenWidth, screenHeight, 1, frameSequence);
+    }
+
+    /**
+     * @param screenWidth  width in pixels, 0 is the default width
+     * @param screenHeight height in pixels, 0 is the default height
+     * @param screenPlanes number of bit planes, 0 is one plane
+     * @return false if the keyframe is invalid, and dropped
+     */
+    public boolean applyKeyframe(byte[] screen, int screenWidth, int screenHeight, int screenPlanes, long frameSequence) {
+        final int keyframeWidth = (screenWidth != 0) ? screenWidth : DEFAULT_WIDTH;
+        final int keyframeHeight = (screenHeight != 0) ? screenHeight : DEFAULT_HEIGHT;
+        final int keyframePlanes = (screenPlanes != 0) ? screenPlanes : 1;
+        if (!isValidScreenSize(keyframeWidth, keyframeHeight, keyframePlanes) || (screen.length != keyframeWidth / 8 * keyframeHeight * keyframePlanes)) {
+            if (invalidKeyframeCount == 0) {
+                System.err.println("Dropped a keyframe of an invalid screen, " + keyframeWidth + "x" + keyframeHeight + " pixels with "
+                        + keyframePlanes + " planes in " + screen.length + " bytes. Further invalid keyframes are dropped silently.");
+            }
+            invalidKeyframeCount++;
+            return false;
+        }
+
+        width = keyframeWidth;
+        height = keyframeHeight;
+        planes = keyframePlanes;
+
+        if (frame.length != screen.length) {
+            frame = new byte[screen.length];
+        }
+        System.arraycopy(screen, 0, frame, 0, screen.length);
+
+        sequence = frameSequence;
+        awaitingKeyframe = false;
+        firstDirtyRow = 0;
+        lastDirtyRow = height - 1;
+        keyframeCount++;
+        return true;
+    }
+
+    /**
+     * True if a screen of the size can be assembled and unpacked; within {@link #MAX_WIDTH} and {@link #MAX_HEIGHT},
+     * whole bytes wide, with 1 to {@link ScreenUnpacker#MAX_PLANES} planes, and at most {@link #MAX_ROWS} rows through
+     * all planes, for every row to be addressable by a screen delta.
+     */
+    public static boolean isValidScreenSize(int width, int height, int planes) {
+        return (width > 0) && (width <= MAX_WIDTH) && ((width % 8) == 0) && (height > 0) && (height <= MAX_HEIGHT)
+                && (planes >= 1) && (planes <= ScreenUnpacker.MAX_PLANES) && (height * planes <= MAX_ROWS);
+    }
+
+    public boolean applyDelta(byte[] delta, long frameSequence) {
+        return applyDelta(delta, delta.length, frameSequence);
+    }
+
+    /**
+     * @param deltaLength the number of bytes of the delta, from the start of the array
+     */
+    public boolean applyDelta(byte[] delta, int deltaLength, long frameSequence) {
+        if (awaitingKeyframe) {
+            droppedDeltaCount++;
+            return false;
+        }
+
+        final long sequenceStep = (frameSequence - sequence) & SEQUENCE_MASK;
+        if ((frameSequence == PeripheralState.NO_SEQUENCE) || (sequence == PeripheralState.NO_SEQUENCE) || (sequenceStep > 1 && sequenceStep < 0x80000000L)) {
+            System.out.println("Screen delta sequence gap (last frame " + sequence + ", delta " + frameSequence + "), waiting for keyframe.");
+            awaitingKeyframe = true;
+            droppedDeltaCount++;
+            return false;
+        }
+
+        if (sequenceStep != 1) {
+            // Duplicate or reordered, already applied, delta
+            droppedDeltaCount++;
+            return false;
+        }
+
+        if (!isValidDelta(delta, deltaLength)) {
+            System.out.println("Malformed screen delta " + frameSequence + ", waiting for keyframe.");
+            awaitingKeyframe = true;
+            droppedDeltaCount++;
+            return false;
+        }
+
+        final int rowSize = width / 8;
+        int firstRow = height;
+        int lastRow = -1;
+
+        int index = 0;
+        while (index < deltaLength) {
+            final int row = delta[index] & 0xFF;
+            final int rowOffset = delta[index + 1] & 0xFF;
+            final int byteCount = delta[index + 2] & 0xFF;
+            index += SPAN_HEADER_SIZE;
+
+            final int frameIndex = row * rowSize + rowOffset;
+            for (int i = 0; i < byteCount; i++) {
+                frame[frameIndex + i] ^= delta[index + i];
+            }
+            index += byteCount;
+
+            // Same screen row in any plane
+            firstRow = Math.min(firstRow, row % height);
+            lastRow = Math.max(lastRow, row % height);
+        }
+
+        sequence = frameSequence;
+        firstDirtyRow = firstRow;
+        lastDirtyRow = lastRow;
+        deltaCount++;
+
+        return lastRow >= firstRow;
+    }
+
+    private boolean isValidDelta(byte[] delta, int deltaLength) {
+        if ((deltaLength < 0) || (deltaLength > delta.length)) {
+            return false;
+        }
+
+        final int rowSize = width / 8;
+
+        int index = 0;
+        while (index < deltaLength) {
+            if (index + SPAN_HEADER_SIZE > deltaLength) {
+                return false;
+            }
+
+            final int row = delta[index] & 0xFF;
+            final int rowOffset = delta[index + 1] & 0xFF;
+            final int byteCount = delta[index + 2] & 0xFF;
+            index += SPAN_HEADER_SIZE + byteCount;
+
+            if ((row >= height * planes) || (rowOffset + byteCount > rowSize) || (index > deltaLength)) {
+                return false;
+            }
+        }
+
+        return frame.length >= rowSize * height * planes;
+    }
+
+    /**
+     * Encode the difference between two bit packed frames as a screen delta. One span per changed row.
+     * A screen with several bit planes is encoded with the rows of all planes, {@code height} times the number of planes.
+     */
+    public static byte[] encodeDelta(byte[] previousFrame, byte[] frame, int width, int height) {
+        final int rowSize = width / 8;
+        final byte[] buffer = new byte[height * (SPAN_HEADER_SIZE + rowSize)];
+        int length = 0;
+
+        for (int row = 0; row < height; row++) {
+            final int rowStart = row * rowSize;
+
+            int first = 0;
+            while ((first < rowSize) && (previousFrame[rowStart + first] == frame[rowStart + first])) {
+                first++;
+            }
+            if (first == rowSize) {
+                continue;
+            }
+
+            int last = rowSize - 1;
+            while (previousFrame[rowStart + last] == frame[rowStart + last]) {
+                last--;
+            }
+
+            buffer[length++] = (byte) row;
+            buffer[length++] = (byte) first;
+            buffer[length++] = (byte) (last - first + 1);
+            for (int i = first; i <= last; i++) {
+                buffer[length++] = (byte) (previousFrame[rowStart + i] ^ frame[rowStart + i]);
+            }
+        }
+
+        final byte[] delta = new byte[length];
+        System.arraycopy(buffer, 0, delta, 0, length);
+        return delta;
+    }
+
+    public byte[] getFrame() {
+        return frame;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getPlanes() {
+        return planes;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean isAwaitingKeyframe() {
+        return awaitingKeyframe;
+    }
+
+    public int getFirstDirtyRow() {
+        return firstDirtyRow;
+    }
+
+    public int getLastDirtyRow() {
+        return lastDirtyRow;
+    }
+
+    public long getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    public long getDeltaCount() {
+        return deltaCount;
+    }
+
+    public long getDroppedDeltaCount() {
+        return droppedDeltaCount;
+    }
+
+    public long getInvalidKeyframeCount() {
+        return invalidKeyframeCount;
+    }
+}
@@ -0,0 +1,32 @@
+package se.cha.chip8.screen;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Presents composed CRT frames on screen.
+ */
+public interface ScreenPresenter {
+
+    /**
+     * The component to add to the screen frame.
+     */
+    Component getComponent();
+
+    /**
+     * The space available for frames, used to fit the monitor size to the window.
+     */
+    default Dimension getAvailableSize() {
+        return getComponent().getSize();
+    }
+
+    /**
+     * Present a new frame. Called from the render thread.
+     * The frame size may change between frames, when the monitor is resized.
+     *
+     * @param frameImage  the composed frame
+     * @param dirtyAreas  the areas of the frame that changed since the previous frame
+     */
+    void present(BufferedImage frameImage, List<Rectangle> dirtyAreas);
+}
@@ -0,0 +1,274 @@
+package se.cha.chip8.screen;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The state of one CHIP-8 screen; the unpacked screen, and the key and sound state.
+ * <p>
+ * The state is set by a network listener thread and read by a render thread. The threads share no locks;
+ * unpacked screens are handed over through a {@link TripleBuffer}, the key and sound state is one atomic value,
+ * and the render side is told about changes through the {@link Listener}. The listener thread never waits for the
+ * render thread, and the render thread always gets the latest complete screen.
+ * <p>
+ * Every screen is handed over with the times it was received, decoded and unpacked, for {@link FrameLatency}.
+ */
+public class ScreenState implements StateCoalescer.Target, RenderLoop.RenderRequests {
+
+    // Key state in the lower 16 bits, and the sound state bit
+    private static final int SOUND_STATE = 1 << 16;
+    private static final int KEY_STATE_MASK = 0xFFFF;
+
+    private final ScreenUnpacker screenUnpacker;
+    private final Listener listener;
+
+    private final AtomicInteger peripheralState = new AtomicInteger(0);
+    private final TripleBuffer<ScreenBuffer> screenBuffers = new TripleBuffer<>(ScreenBuffer::new);
+    private final AtomicBoolean renderRequested = new AtomicBoolean(true); // Render the (idle) screen once at start
+
+    // Screen as last set by the listener thread, owned by the listener thread
+    private int width = ScreenFrameAssembler.DEFAULT_WIDTH;
+    private int height = ScreenFrameAssembler.DEFAULT_HEIGHT;
+    private int planes = 1;
+    private int[] screenPixels = new int[width * height];
+    private long frameNumber = 0;
+    private boolean screenTimesSet = false;
+    private long screenReceiveNanos;
+    private long screenDecodeNanos;
+    private long invalidScreenCount = 0;
+
+    /**
+     * @param screenUnpacker unpacker, may be shared by any number of screens
+     * @param listener       told about state changes, on the listener thread
+     */
+    public ScreenState(ScreenUnpacker screenUnpacker, Listener listener) {
+        this.screenUnpacker = screenUnpacker;
+        this.listener = listener;
+    }
+
+    public void setChip8ScreenData(byte[] imageBitData) {
+        setChip8ScreenData(imageBitData, width, height, planes, 0, height - 1);
+    }
+
+    @Override
+    public void setChip8ScreenTimes(long receiveNanos, long decodeNanos) {
+        screenReceiveNanos = receiveNanos;
+        screenDecodeNanos = decodeNanos;
+        screenTimesSet = true;
+    }
+
+    /**
+     * Update the screen rows {@code firstRow} to {@code lastRow} (inclusive) from a full bit packed screen, all planes.
+     * A change of screen size or number of planes updates all rows. A screen of an invalid size, see
+     * {@link ScreenFrameAssembler#isValidScreenSize(int, int, int)}, is dropped.
+     * Only to be called from one (listener) thread.
+     */
+    @Override
+    public void setChip8ScreenData(byte[] imageBitData, int screenWidth, int screenHeight, int screenPlanes, int firstRow, int lastRow) {
+        if (!ScreenFrameAssembler.isValidScreenSize(screenWidth, screenHeight, screenPlanes)) {
+            if (invalidScreenCount == 0) {
+                System.err.println("Dropped a screen of an invalid size, " + screenWidth + "x" + screenHeight + " pixels with "
+                        + screenPlanes + " planes. Further invalid screens are dropped silently.");
+            }
+            invalidScreenCount++;
+            screenTimesSet = false;
+            return;
+        }
+
+        if (!screenTimesSet) {
+            // Set directly, not through a processor, the screen counts as received and decoded now
+            screenReceiveNanos = System.nanoTime();
+            screenDecodeNanos = screenReceiveNanos;
+        }
+        screenTimesSet = false;
+
+        if ((screenWidth != width) || (screenHeight != height) || (screenPlanes != planes)) {
+            if ((screenWidth != width) || (screenHeight != height)) {
+                screenPixels = new int[screenWidth * screenHeight];
+            }
+            width = screenWidth;
+            height = screenHeight;
+            planes = screenPlanes;
+            firstRow = 0;
+            lastRow = height - 1;
+        }
+
+        // Convert bit planes (of bytes) with one bit per pixel and plane to array of int with one palette index per pixel
+        screenUnpacker.unpack(imageBitData, width, height, planes, firstRow, lastRow, screenPixels);
+
+        if (lastRow >= firstRow) {
+            final ScreenBuffer screenBuffer = screenBuffers.getBackBuffer();
+            screenBuffer.copyFrom(screenPixels, width, height);
+            screenBuffer.setTimes(++frameNumber, screenReceiveNanos, screenDecodeNanos, System.nanoTime());
+            screenBuffers.publish();
+            requestRender();
+        }
+    }
+
+    public void setChip8KeyState(int keyState) {
+        setChip8PeripheralState(keyState, isSoundOn());
+    }
+
+    public void setChip8SoundState(boolean soundState) {
+        setChip8PeripheralState(getKeyState(), soundState);
+    }
+
+    /**
+     * Set the key and sound state together, so the render thread never sees the key state of one message with the sound state of another.
+     */
+    @Override
+    public void setChip8PeripheralState(int keyState, boolean soundState) {
+        final int state = (keyState & KEY_STATE_MASK) | (soundState ? SOUND_STATE : 0);
+        final int previousState = peripheralState.getAndSet(state);
+        if (state == previousState) {
+            return;
+        }
+
+        requestRender();
+
+        if (((state ^ previousState) & SOUND_STATE) != 0) {
+            listener.soundStateChanged(soundState);
+        }
+    }
+
+    /**
+     * Ask the render side to render the screen again.
+     */
+    public void requestRender() {
+        renderRequested.set(true);
+        listener.renderRequested();
+    }
+
+    @Override
+    public boolean isRenderRequested() {
+        return renderRequested.get();
+    }
+
+    /**
+     * Clear the render request, before rendering the current state.
+     *
+     * @return true if a render was requested
+     */
+    @Override
+    public boolean takeRenderRequest() {
+        return renderRequested.getAndSet(false);
+    }
+
+    /**
+     * The latest screen set. Only to be called from one (render) thread, the screen is valid until the next call.
+     */
+    public ScreenBuffer getScreen() {
+        screenBuffers.update();
+        return screenBuffers.getFrontBuffer();
+    }
+
+    /**
+     * The screen taken by the last {@link #getScreen()}, the screen last rendered. Only to be called from the render thread.
+     */
+    public ScreenBuffer getCurrentScreen() {
+        return screenBuffers.getFrontBuffer();
+    }
+
+    /**
+     * Number of screens dropped for an invalid size. Only to be called from the listener thread.
+     */
+    public long getInvalidScreenCount() {
+        return invalidScreenCount;
+    }
+
+    public int getKeyState() {
+        return peripheralState.get() & KEY_STATE_MASK;
+    }
+
+    public boolean isSoundOn() {
+        return (peripheralState.get() & SOUND_STATE) != 0;
+    }
+
+    /**
+     * Told about state changes, on the thread changing the state. Must not block.
+     */
+    public interface Listener {
+        /**
+         * The screen, or the key or sound state, changed.
+         */
+        void renderRequested();
+
+        default void soundStateChanged(boolean soundState) {
+        }
+    }
+
+    /**
+     * An unpacked screen, handed over from the listener thread to the render thread.
+     */
+    public static class ScreenBuffer {
+        private int[] pixels = new int[ScreenFrameAssembler.DEFAULT_WIDTH * ScreenFrameAssembler.DEFAULT_HEIGHT];
+        private int width = ScreenFrameAssembler.DEFAULT_WIDTH;
+        private int height = ScreenFrameAssembler.DEFAULT_HEIGHT;
+        private long frameNumber = 0;
+        private long receiveNanos;
+        private long decodeNanos;
+        private long unpackNanos;
+
+        /**
+         * Copy a screen, the pixel array is only reallocated when the screen size changes.
+         */
+        void copyFrom(int[] screenPixels, int screenWidth, int screenHeight) {
+            if (pixels.length != screenWidth * screenHeight) {
+                pixels = new int[screenWidth * screenHeight];
+            }
+            System.arraycopy(screenPixels, 0, pixels, 0, screenWidth * screenHeight);
+            width = screenWidth;
+            height = screenHeight;
+        }
+
+        void setTimes(long frameNumber, long receiveNanos, long decodeNanos, long unpackNanos) {
+            this.frameNumber = frameNumber;
+            this.receiveNanos = receiveNanos;
+            this.decodeNanos = decodeNanos;
+            this.unpackNanos = unpackNanos;
+        }
+
+        /**
+         * Palette indexes, see {@link ScreenUnpacker}.
+         */
+        public int[] getPixels() {
+            return pixels;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Number of the screen, counting from 1, 0 for the initial blank screen.
+         */
+        public long getFrameNumber() {
+            return frameNumber;
+        }
+
+        /**
+         * Time the screen was received, {@link System#nanoTime()}. The receive time of the first screen of the burst it was coalesced from.
+         */
+        public long getReceiveNanos() {
+            return receiveNanos;
+        }
+
+        /**
+         * Time the screen was decoded, {@link System#nanoTime()}.
+         */
+        public long getDecodeNanos() {
+            return decodeNanos;
+        }
+
+        /**
+         * Time the screen was unpacked and handed to the render thread, {@link System#nanoTime()}.
+         */
+        public long getUnpackNanos() {
+            return unpackNanos;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package se.cha.chip8.screen;
+
+/**
+ * Unpacks bit packed (1 bit per pixel, most significant bit first) CHIP-8 screens to one palette index per pixel.
+ * <p>
+ * A screen has one or more bit planes, one after the other in the packed data (SUPER-CHIP screens have one plane,
+ * XO-CHIP screens two). Each plane is one bit of the palette index, the first plane the least significant bit.
+ * Palette index 0 is an unlit pixel.
+ * <p>
+ * Planes are unpacked one at a time. Whole bytes are unpacked through a lookup table with the 8 pixel bits of each
+ * possible byte value, only a partial first and last byte is unpacked bit by bit.
+ */
+public class ScreenUnpacker {
+
+    public static final int MAX_PLANES = 2;
+    public static final int PALETTE_SIZE = 1 << MAX_PLANES;
+
+    private final int[][] planeTables = new int[MAX_PLANES][256 * 8];
+
+    public ScreenUnpacker() {
+        for (int plane = 0; plane < MAX_PLANES; plane++) {
+            for (int byteValue = 0; byteValue < 256; byteValue++) {
+                for (int bit = 0; bit < 8; bit++) {
+                    planeTables[plane][byteValue * 8 + bit] = ((byteValue >>> (7 - bit)) & 1) << plane;
+                }
+            }
+        }
+    }
+
+    /**
+     * Unpack the rows {@code firstRow} to {@code lastRow} (inclusive) of a single plane screen.
+     *
+     * @see #unpack(byte[], int, int, int, int, int, int[])
+     */
+    public void unpack(byte[] packed, int width, int height, int firstRow, int lastRow, int[] pixels) {
+        unpack(packed, width, height, 1, firstRow, lastRow, pixels);
+    }
+
+    /**
+     * Unpack the rows {@code firstRow} to {@code lastRow} (inclusive) of a screen, all planes.
+     * Pixels missing in the packed data, if it is too short for the screen size, are unpacked as unlit.
+     *
+     * @param packed bit packed screen, the planes one after the other, pixels row by row without padding at the end of rows
+     * @param planes number of bit planes, 1 to {@link #MAX_PLANES}
+     * @param pixels target palette indexes, {@code width * height} pixels row by row
+     */
+    public void unpack(byte[] packed, int width, int height, int planes, int firstRow, int lastRow, int[] pixels) {
+        firstRow = Math.max(firstRow, 0);
+        lastRow = Math.min(lastRow, height - 1);
+        if (lastRow < firstRow) {
+            return;
+        }
+
+        final int start = firstRow * width;
+        final int end = (lastRow + 1) * width;
+        final int planeSize = width * height;
+        final int planeCount = Math.max(1, Math.min(planes, MAX_PLANES));
+
+        for (int plane = 0; plane < planeCount; plane++) {
+            unpackPlane(packed, plane * planeSize, plane, start, end, pixels);
+        }
+    }
+
+    /**
+     * Unpack the pixels {@code start} to {@code end} (exclusive) of one plane. The first plane is written,
+     * the following planes are added to the palette indexes of the previous planes.
+     *
+     * @param planeOffset bit position of the first pixel of the plane in the packed data
+     */
+    private void unpackPlane(byte[] packed, int planeOffset, int plane, int start, int end, int[] pixels) {
+        final int[] table = planeTables[plane];
+        final int packedEnd = Math.max(start, Math.min(end, packed.length * 8 - planeOffset));
+        final int planeBit = 1 << plane;
+        final boolean first = (plane == 0);
+
+        int pixel = start;
+
+        // Leading pixels, up to the first byte boundary
+        while ((pixel < packedEnd) && (((planeOffset + pixel) & 7) != 0)) {
+            setPixel(pixels, pixel, bit(packed, planeOffset + pixel) ? planeBit : 0, first);
+            pixel++;
+        }
+
+        // Whole bytes
+        if (first) {
+            while (pixel + 8 <= packedEnd) {
+                final int tableIndex = (packed[(planeOffset + pixel) >>> 3] & 0xFF) << 3;
+                pixels[pixel] = table[tableIndex];
+                pixels[pixel + 1] = table[tableIndex + 1];
+                pixels[pixel + 2] = table[tableIndex + 2];
+                pixels[pixel + 3] = table[tableIndex + 3];
+                pixels[pixel + 4] = table[tableIndex + 4];
+                pixels[pixel + 5] = table[tableIndex + 5];
+                pixels[pixel + 6] = table[tableIndex + 6];
+                pixels[pixel + 7] = table[tableIndex + 7];
+                pixel += 8;
+            }
+        } else {
+            while (pixel + 8 <= packedEnd) {
+                final int tableIndex = (packed[(planeOffset + pixel) >>> 3] & 0xFF) << 3;
+                pixels[pixel] |= table[tableIndex];
+                pixels[pixel + 1] |= table[tableIndex + 1];
+                pixels[pixel + 2] |= table[tableIndex + 2];
+                pixels[pixel + 3] |= table[tableIndex + 3];
+                pixels[pixel + 4] |= table[tableIndex + 4];
+                pixels[pixel + 5] |= table[tableIndex + 5];
+                pixels[pixel + 6] |= table[tableIndex + 6];
+                pixels[pixel + 7] |= table[tableIndex + 7];
+                pixel += 8;
+            }
+        }
+
+        // Trailing pixels, and pixels missing in the packed data
+        while (pixel < end) {
+            setPixel(pixels, pixel, ((pixel < packedEnd) && bit(packed, planeOffset + pixel)) ? planeBit : 0, first);
+            pixel++;
+        }
+    }
+
+    private static void setPixel(int[] pixels, int pixel, int value, boolean first) {
+        if (first) {
+            pixels[pixel] = value;
+        } else {
+            pixels[pixel] |= value;
+        }
+    }
+
+    private static boolean bit(byte[] packed, int position) {
+        return ((packed[position >>> 3] >>> (7 - (position & 7))) & 1) != 0;
+    }
+}
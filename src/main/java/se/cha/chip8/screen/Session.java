@@ -0,0 +1,103 @@
+package se.cha.chip8.screen;
+
+import java.awt.*;
+
+/**
+ * One emulator sending to a {@link SessionServer}; its screen state, set by the listener thread,
+ * and its monitor, rendered on demand by any one render thread at a time.
+ */
+public class Session {
+
+    private final String name;
+    private final ScreenState screenState;
+    private final StateCoalescer stateCoalescer;
+
+    // Owned by the listener thread
+    private boolean inBurst = false;
+    private volatile long lastPacketNanos;
+
+    // Owned by the thread currently rendering the session
+    private CrtComposer crtComposer = null;
+    private boolean phosphorFading = false;
+
+    public Session(String name, ScreenState screenState) {
+        this.name = name;
+        this.screenState = screenState;
+        stateCoalescer = new StateCoalescer(screenState);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ScreenState getScreenState() {
+        return screenState;
+    }
+
+    public StateCoalescer getStateCoalescer() {
+        return stateCoalescer;
+    }
+
+    /**
+     * Add a message of the current burst. Only to be called by the listener thread.
+     *
+     * @return true if this is the first message of the session in the current burst
+     */
+    boolean add(PeripheralState state, long now) {
+        lastPacketNanos = now;
+        stateCoalescer.add(state);
+        if (inBurst) {
+            return false;
+        }
+
+        inBurst = true;
+        return true;
+    }
+
+    /**
+     * End the current burst. Only to be called by the listener thread.
+     */
+    void flush() {
+        stateCoalescer.flush();
+        inBurst = false;
+    }
+
+    /**
+     * {@link System#nanoTime()} of the last message received.
+     */
+    public long getLastPacketNanos() {
+        return lastPacketNanos;
+    }
+
+    /**
+     * True if the state changed, or the phosphor is still fading, since the last render,
+     * or if the monitor was never rendered in the given size.
+     */
+    public boolean isRenderNeeded(Dimension monitorSize) {
+        return screenState.isRenderRequested() || phosphorFading || (crtComposer == null)
+                || (crtComposer.getImage().getWidth() != monitorSize.width) || (crtComposer.getImage().getHeight() != monitorSize.height);
+    }
+
+    /**
+     * Render the monitor of the session in the given size. The first render creates the composer.
+     *
+     * @param pipeline pipeline for the composer, shared by all sessions
+     */
+    public void render(Configuration configuration, PostProcessingPipeline pipeline, Dimension monitorSize) {
+        if (crtComposer == null) {
+            crtComposer = new CrtComposer(configuration, pipeline, monitorSize);
+        } else {
+            crtComposer.resize(monitorSize.width, monitorSize.height);
+        }
+
+        screenState.takeRenderRequest();
+        phosphorFading = crtComposer.render(screenState);
+    }
+
+    /**
+     * The composer of the last render, null before the first render.
+     */
+    public CrtComposer getCrtComposer() {
+        return crtComposer;
+    }
+}
@@ -0,0 +1,228 @@
+package se.cha.chip8.screen;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The monitors of all sessions of a {@link SessionServer}, tiled in a grid in one image, for the {@link MosaicFrame}
+ * and the {@link HeadlessMosaic}.
+ * <p>
+ * On each render the sessions that changed are rendered by a fixed pool of render threads, each session on one thread
+ * at a time, so the number of threads does not grow with the number of sessions. The changed parts of the session
+ * monitors are then copied into the mosaic. All sessions are rendered in the same size and share the static monitor
+ * layers of that size.
+ * <p>
+ * Only to be used by one (mosaic render) thread.
+ */
+public class SessionMosaic {
+
+    // Height of the session name above each monitor
+    private static final int LABEL_HEIGHT = 16;
+    private static final double MIN_MONITOR_SCALE = 0.1;
+
+    private final Configuration configuration;
+    private final PostProcessingPipeline pipeline = PostProcessingPipeline.singleThreaded();
+    private final ExecutorService renderPool;
+
+    private BufferedImage mosaicImage = null;
+    private int columns = 0;
+    private int sessionCount = -1;
+    private Dimension cellSize = null;
+    private Dimension monitorSize = null;
+    private final List<Rectangle> dirtyAreas = new ArrayList<>();
+
+    // Reused between renders, only grown for more sessions
+    private boolean[] rendered = new boolean[0];
+    private final List<RenderTask> renderTaskPool = new ArrayList<>();
+    private final List<RenderTask> renderTasks = new ArrayList<>();
+
+    public SessionMosaic(Configuration configuration) {
+        this.configuration = configuration;
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        renderPool = Executors.newFixedThreadPool(configuration.getRenderThreads(), runnable -> {
+            final Thread thread = new Thread(runnable, "Session render " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The mosaic of the last render, null before the first render.
+     */
+    public BufferedImage getImage() {
+        return mosaicImage;
+    }
+
+    /**
+     * The parts of the mosaic changed by the last render, empty if nothing changed.
+     */
+    public List<Rectangle> getDirtyAreas() {
+        return dirtyAreas;
+    }
+
+    /**
+     * Render the changed sessions, and copy them into the mosaic.
+     *
+     * @param availableSize size to fit the mosaic in, the mosaic is larger if the monitors do not fit
+     * @return true if the phosphor of any session is still fading, and a new render changes the mosaic
+     */
+    public boolean render(List<Session> sessions, Dimension availableSize) throws InterruptedException {
+        final boolean fullFrame = updateLayout(sessions.size(), availableSize);
+
+        // Render the changed sessions on the pool
+        if (rendered.length < sessions.size()) {
+            rendered = new boolean[sessions.size()];
+        }
+        renderTasks.clear();
+        for (int i = 0; i < sessions.size(); i++) {
+            final Session session = sessions.get(i);
+            rendered[i] = session.isRenderNeeded(monitorSize);
+            if (rendered[i]) {
+                if (renderTaskPool.size() == renderTasks.size()) {
+                    renderTaskPool.add(new RenderTask());
+                }
+                final RenderTask renderTask = renderTaskPool.get(renderTasks.size());
+                renderTask.session = session;
+                renderTasks.add(renderTask);
+            }
+        }
+        try {
+            for (Future<Void> renderResult : renderPool.invokeAll(renderTasks)) {
+                try {
+                    renderResult.get();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            // Do not keep sessions ended since
+            for (RenderTask renderTask : renderTasks) {
+                renderTask.session = null;
+            }
+        }
+
+        // Copy the rendered sessions into the mosaic, all of every monitor for a new layout, otherwise only the changed parts
+        dirtyAreas.clear();
+        final Graphics2D g = mosaicImage.createGraphics();
+        if (fullFrame) {
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, mosaicImage.getWidth(), mosaicImage.getHeight());
+            g.setColor(Color.LIGHT_GRAY);
+            if (sessions.isEmpty()) {
+                g.drawString("Waiting for CHIP-8 emulators on port " + configuration.getListenerPort() + ".", 8, LABEL_HEIGHT);
+            }
+            for (int i = 0; i < sessions.size(); i++) {
+                final Point cell = cellOrigin(i);
+                g.drawString(sessions.get(i).getName(), cell.x + 4, cell.y + LABEL_HEIGHT - 4);
+                final Point monitorOrigin = monitorOrigin(i);
+                g.drawImage(sessions.get(i).getCrtComposer().getImage(), monitorOrigin.x, monitorOrigin.y, null);
+            }
+            dirtyAreas.add(new Rectangle(0, 0, mosaicImage.getWidth(), mosaicImage.getHeight()));
+        } else {
+            for (int i = 0; i < sessions.size(); i++) {
+                if (rendered[i]) {
+                    copyDirtyAreas(g, sessions.get(i).getCrtComposer(), monitorOrigin(i));
+                }
+            }
+        }
+        g.dispose();
+
+        boolean phosphorFading = false;
+        for (Session session : sessions) {
+            phosphorFading |= session.isRenderNeeded(monitorSize);
+        }
+
+        return phosphorFading;
+    }
+
+    /**
+     * Stop the render threads.
+     */
+    public void shutdown() {
+        renderPool.shutdownNow();
+    }
+
+    private void copyDirtyAreas(Graphics2D g, CrtComposer crtComposer, Point monitorOrigin) {
+        final BufferedImage monitorImage = crtComposer.getImage();
+        for (Rectangle area : crtComposer.getDirtyAreas()) {
+            final int x2 = area.x + area.width;
+            final int y2 = area.y + area.height;
+            g.drawImage(monitorImage, monitorOrigin.x + area.x, monitorOrigin.y + area.y, monitorOrigin.x + x2, monitorOrigin.y + y2,
+                    area.x, area.y, x2, y2, null);
+            dirtyAreas.add(new Rectangle(monitorOrigin.x + area.x, monitorOrigin.y + area.y, area.width, area.height));
+        }
+    }
+
+    /**
+     * Fit a grid of cells with the largest possible monitors in the available size, for the number of sessions.
+     *
+     * @return true if the layout changed, and the whole mosaic must be drawn
+     */
+    private boolean updateLayout(int newSessionCount, Dimension availableSize) {
+        final Dimension baseSize = CrtLayerCache.getBaseSize();
+        final int cellCount = Math.max(1, newSessionCount);
+        int bestColumns = 1;
+        double bestScale = 0;
+        for (int columnCount = 1; columnCount <= cellCount; columnCount++) {
+            final int rowCount = (cellCount + columnCount - 1) / columnCount;
+            final double scale = Math.min((double) availableSize.width / columnCount / baseSize.width,
+                    (double) (availableSize.height / rowCount - LABEL_HEIGHT) / baseSize.height);
+            if (scale > bestScale) {
+                bestScale = scale;
+                bestColumns = columnCount;
+            }
+        }
+        bestScale = Math.max(MIN_MONITOR_SCALE, bestScale);
+
+        final Dimension newMonitorSize = new Dimension((int) (baseSize.width * bestScale), (int) (baseSize.height * bestScale));
+        final Dimension newCellSize = new Dimension(Math.max(newMonitorSize.width, availableSize.width / bestColumns), newMonitorSize.height + LABEL_HEIGHT);
+        if ((newSessionCount == sessionCount) && newMonitorSize.equals(monitorSize) && newCellSize.equals(cellSize) && (bestColumns == columns)) {
+            return false;
+        }
+
+        sessionCount = newSessionCount;
+        columns = bestColumns;
+        monitorSize = newMonitorSize;
+        cellSize = newCellSize;
+
+        final int rowCount = (cellCount + columns - 1) / columns;
+        final int width = Math.max(availableSize.width, columns * cellSize.width);
+        final int height = Math.max(availableSize.height, rowCount * cellSize.height);
+        if ((mosaicImage == null) || (mosaicImage.getWidth() != width) || (mosaicImage.getHeight() != height)) {
+            mosaicImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        return true;
+    }
+
+    private Point cellOrigin(int index) {
+        return new Point((index % columns) * cellSize.width, (index / columns) * cellSize.height);
+    }
+
+    private Point monitorOrigin(int index) {
+        final Point cell = cellOrigin(index);
+        return new Point(cell.x + (cellSize.width - monitorSize.width) / 2, cell.y + LABEL_HEIGHT);
+    }
+
+    /**
+     * Renders one session in the monitor size, reused for another session on the next render.
+     */
+    private class RenderTask implements Callable<Void> {
+        private Session session;
+
+        @Override
+        public Void call() {
+            session.render(configuration, pipeline, monitorSize);
+            return null;
+        }
+    }
+}
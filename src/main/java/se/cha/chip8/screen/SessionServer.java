@@ -0,0 +1,221 @@
+package se.cha.chip8.screen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Receives the messages of any number of emulators, each with a {@link Session} of its own.
+ * <p>
+ * Messages are put in the session of their session id, or of their source address when they have no session id.
+ * A new session is created for the first message of a session, up to a maximum number of sessions. When the maximum
+ * is reached, sessions silent for {@link #SESSION_IDLE_TIMEOUT_NANOS} are dropped to make room, so emulators restarted
+ * on new source addresses are not locked out by their old sessions; messages of further sessions are dropped. Messages are decoded and coalesced on the listener thread, as in
+ * {@link UdpDataProcessor}; decoding is cheap, and the deltas of a session must be applied in order anyway.
+ */
+public class SessionServer implements UdpPacketMessageListener.UDPPacketDataProcessor, UdpChannelMessageListener.UDPPacketBufferProcessor {
+
+    private static final long REPORT_INTERVAL_NANOS = 10_000_000_000L;
+    static final long SESSION_IDLE_TIMEOUT_NANOS = 60_000_000_000L;
+
+    private final PeripheralStateDecoder decoder = new FallbackPeripheralStateDecoder();
+    private final ScreenUnpacker screenUnpacker = new ScreenUnpacker();
+    private final Metrics metrics = Metrics.get(); // Null unless metrics are on
+    private final ScreenState.Listener screenListener;
+    private final int maxSessions;
+    private final long idleTimeoutNanos;
+    private final boolean printStatistics;
+
+    // Owned by the listener thread
+    private final Map<Object, Session> sessionsByKey = new HashMap<>();
+    private final List<Session> burstSessions = new ArrayList<>();
+    private long rejectedPacketCount = 0;
+    private long reportStart = 0;
+
+    // Read by the display
+    private final List<Session> sessions = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param screenListener told about state changes of any session, on the listener thread
+     * @param maxSessions    maximum number of sessions
+     * @param printStatistics print session statistics every 10 seconds
+     */
+    public SessionServer(ScreenState.Listener screenListener, int maxSessions, boolean printStatistics) {
+        this(screenListener, maxSessions, SESSION_IDLE_TIMEOUT_NANOS, printStatistics);
+    }
+
+    /**
+     * @param idleTimeoutNanos time without messages before a session may be dropped for a new session
+     */
+    SessionServer(ScreenState.Listener screenListener, int maxSessions, long idleTimeoutNanos, boolean printStatistics) {
+        this.screenListener = screenListener;
+        this.maxSessions = maxSessions;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.printStatistics = printStatistics;
+    }
+
+    /**
+     * A snapshot of all sessions, in order of creation. Safe to call from any thread.
+     */
+    public List<Session> getSessions() {
+        return Collections.unmodifiableList(new ArrayList<>(sessions));
+    }
+
+    @Override
+    public void onPacketReceived(byte[] data) {
+        onPacketReceived(data, null);
+    }
+
+    @Override
+    public void onPacketReceived(byte[] data, SocketAddress source) {
+        if (metrics != null) {
+            metrics.packetReceived();
+        }
+
+        try {
+            apply(decoder.decode(data, 0, data.length), source);
+        } catch (IOException e) {
+            decodeFailed(e);
+        }
+    }
+
+    @Override
+    public void onPacketReceived(ByteBuffer data) {
+        onPacketReceived(data, null);
+    }
+
+    @Override
+    public void onPacketReceived(ByteBuffer data, SocketAddress source) {
+        if (metrics != null) {
+            metrics.packetReceived();
+        }
+
+        try {
+            apply(decoder.decode(data), source);
+        } catch (IOException e) {
+            decodeFailed(e);
+        }
+    }
+
+    @Override
+    public void onPacketsDrained() {
+        for (Session session : burstSessions) {
+            session.flush();
+        }
+        burstSessions.clear();
+
+        if (printStatistics) {
+            final long now = System.nanoTime();
+            if (reportStart == 0) {
+                reportStart = now;
+            } else if (now - reportStart >= REPORT_INTERVAL_NANOS) {
+                System.out.println(getSessionReport(now));
+                reportStart = now;
+            }
+        }
+    }
+
+    /**
+     * Number of sessions, and how many of them that sent anything during the last report interval.
+     */
+    public String getSessionReport(long now) {
+        int activeSessionCount = 0;
+        long droppedFrameCount = 0;
+        for (Session session : sessions) {
+            if (now - session.getLastPacketNanos() < REPORT_INTERVAL_NANOS) {
+                activeSessionCount++;
+            }
+            droppedFrameCount += session.getStateCoalescer().getDroppedFrameCount();
+        }
+
+        return String.format("Sessions: %d (%d active), dropped frames %d, packets of rejected sessions %d",
+                sessions.size(), activeSessionCount, droppedFrameCount, rejectedPacketCount);
+    }
+
+    private void apply(PeripheralState state, SocketAddress source) {
+        if (metrics != null) {
+            metrics.packetDecoded();
+        }
+
+        final Object key = (state.getSession() != PeripheralState.NO_SESSION) ? (Object) state.getSession() : source;
+        final long now = System.nanoTime();
+        Session session = sessionsByKey.get(key);
+        if (session == null) {
+            session = createSession(key, now);
+            if (session == null) {
+                rejectedPacketCount++;
+                return;
+            }
+        }
+
+        if (session.add(state, now)) {
+            burstSessions.add(session);
+        }
+    }
+
+    private void decodeFailed(IOException e) {
+        if (metrics != null) {
+            metrics.packetFailed();
+        }
+        e.printStackTrace();
+    }
+
+    private Session createSession(Object key, long now) {
+        if (sessions.size() >= maxSessions) {
+            evictIdleSessions(now);
+        }
+        if (sessions.size() >= maxSessions) {
+            if (rejectedPacketCount == 0) {
+                System.err.println("Maximum number of sessions (" + maxSessions + ") reached, ignoring messages of new sessions.");
+            }
+            return null;
+        }
+
+        final Session session = new Session(sessionName(key), new ScreenState(screenUnpacker, screenListener));
+        sessionsByKey.put(key, session);
+        sessions.add(session);
+        System.out.println("New session: " + session.getName());
+        screenListener.renderRequested();
+
+        return session;
+    }
+
+    private void evictIdleSessions(long now) {
+        final int sessionCount = sessions.size();
+        final Iterator<Map.Entry<Object, Session>> iterator = sessionsByKey.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Session session = iterator.next().getValue();
+            if (now - session.getLastPacketNanos() >= idleTimeoutNanos) {
+                iterator.remove();
+                sessions.remove(session);
+                burstSessions.remove(session);
+                System.out.println("Idle session dropped: " + session.getName());
+            }
+        }
+
+        if (sessions.size() != sessionCount) {
+            screenListener.renderRequested();
+        }
+    }
+
+    private static String sessionName(Object key) {
+        if (key instanceof Long) {
+            return "session " + key;
+        }
+
+        if (key instanceof InetSocketAddress) {
+            final InetSocketAddress address = (InetSocketAddress) key;
+            return address.getAddress().getHostAddress() + ":" + address.getPort();
+        }
+
+        return String.valueOf(key);
+    }
+}
@@ -0,0 +1,145 @@
+package se.cha.chip8.screen;
+
+/**
+ * Folds the peripheral state messages of a burst of packets into one update of the screen.
+ * <p>
+ * Every message is applied to the bit packed screen (screen deltas depend on all previous deltas), but the screen is
+ * only unpacked and handed to the render thread once per burst, with the rows changed by any message of the burst.
+ * Only the latest screen of a burst can be rendered anyway, the earlier screens are counted as dropped frames.
+ * <p>
+ * Key states are folded into the latest key state. A beep is started right away, and is latched on until the end of
+ * the burst: a beep that also ends within the burst is ended by the next message, in the next burst, so no beep is lost
+ * or cut to nothing within a burst, and every beep lasts about one frame. The end of a beep started in an earlier burst
+ * is passed on right away.
+ * <p>
+ * The screen passed on is timed from the receive time of the first screen of the burst, see {@link Target#setChip8ScreenTimes(long, long)}.
+ */
+public class StateCoalescer {
+
+    private final Target target;
+    private final ScreenFrameAssembler screenFrameAssembler = new ScreenFrameAssembler();
+    private final Metrics metrics = Metrics.get(); // Null unless metrics are on
+
+    // Burst state
+    private int burstScreenCount = 0;
+    private long burstReceiveNanos = 0;
+    private int firstDirtyRow = Integer.MAX_VALUE;
+    private int lastDirtyRow = -1;
+    private int keyState = 0x0000;
+    private boolean soundState = false;
+    private boolean passedSoundState = false;
+    private boolean soundOnLatched = false;
+    private boolean peripheralStateChanged = false;
+
+    // Totals
+    private long packetCount = 0;
+    private long burstCount = 0;
+    private long droppedFrameCount = 0;
+
+    public StateCoalescer(Target target) {
+        this.target = target;
+    }
+
+    /**
+     * Add a message of the current burst, received now.
+     */
+    public void add(PeripheralState state) {
+        add(state, System.nanoTime());
+    }
+
+    /**
+     * Add a message of the current burst.
+     *
+     * @param receiveNanos the time the message was received, {@link System#nanoTime()}
+     */
+    public void add(PeripheralState state, long receiveNanos) {
+        packetCount++;
+
+        if (screenFrameAssembler.apply(state)) {
+            if (burstScreenCount == 0) {
+                burstReceiveNanos = receiveNanos;
+            }
+            burstScreenCount++;
+            firstDirtyRow = Math.min(firstDirtyRow, screenFrameAssembler.getFirstDirtyRow());
+            lastDirtyRow = Math.max(lastDirtyRow, screenFrameAssembler.getLastDirtyRow());
+        }
+
+        if (state.getKeys() != keyState) {
+            keyState = state.getKeys();
+            peripheralStateChanged = true;
+        }
+
+        soundState = state.isSound();
+        if ((soundState != passedSoundState) && (soundState || !soundOnLatched)) {
+            // A beep starting, or a beep started in an earlier burst ending
+            target.setChip8PeripheralState(keyState, soundState);
+            passedSoundState = soundState;
+            soundOnLatched = soundState;
+            peripheralStateChanged = false;
+        }
+    }
+
+    /**
+     * End the current burst, pass on the latest screen and key state.
+     */
+    public void flush() {
+        if (burstScreenCount > 0) {
+            target.setChip8ScreenTimes(burstReceiveNanos, System.nanoTime());
+            target.setChip8ScreenData(screenFrameAssembler.getFrame(), screenFrameAssembler.getWidth(), screenFrameAssembler.getHeight(),
+                    screenFrameAssembler.getPlanes(), firstDirtyRow, lastDirtyRow);
+            droppedFrameCount += burstScreenCount - 1;
+            if ((metrics != null) && (burstScreenCount > 1)) {
+                metrics.screensCoalesced(burstScreenCount - 1);
+            }
+        }
+
+        if (peripheralStateChanged) {
+            // A beep ending in the burst it started in is still on
+            target.setChip8PeripheralState(keyState, passedSoundState);
+        }
+
+        soundOnLatched = false;
+        burstScreenCount = 0;
+        firstDirtyRow = Integer.MAX_VALUE;
+        lastDirtyRow = -1;
+        peripheralStateChanged = false;
+        burstCount++;
+    }
+
+    public long getPacketCount() {
+        return packetCount;
+    }
+
+    public long getBurstCount() {
+        return burstCount;
+    }
+
+    /**
+     * Screens received, but replaced by a later screen of the same burst before being rendered.
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    public ScreenFrameAssembler getScreenFrameAssembler() {
+        return screenFrameAssembler;
+    }
+
+    /**
+     * Where the coalesced state goes, the screen frame.
+     */
+    public interface Target {
+        /**
+         * The times of the screen passed on by the next {@link #setChip8ScreenData}, {@link System#nanoTime()}.
+         *
+         * @param receiveNanos the time the first screen of the burst was received
+         * @param decodeNanos  the time all messages of the burst were decoded and applied
+         */
+        default void setChip8ScreenTimes(long receiveNanos, long decodeNanos) {
+        }
+
+        void setChip8ScreenData(byte[] imageBitData, int screenWidth, int screenHeight, int screenPlanes, int firstRow, int lastRow);
+
+        void setChip8PeripheralState(int keyState, boolean soundState);
+    }
+}
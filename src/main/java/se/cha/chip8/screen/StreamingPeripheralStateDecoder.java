@@ -0,0 +1,217 @@
+package se.cha.chip8.screen;
+
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageTypeException;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.core.buffer.ArrayBufferInput;
+import org.msgpack.core.buffer.ByteBufferInput;
+import org.msgpack.core.buffer.MessageBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decoder reading the message straight from a msgpack-core {@link MessageUnpacker}.
+ * <p>
+ * The unpacker, the returned state and the screen buffers are all reused between messages,
+ * so decoding a message does not produce any garbage to speak of. Screen deltas vary in size, they are read into one
+ * buffer as large as the largest delta so far, and passed on with their length. Screen data longer than the largest
+ * screen, {@link ScreenFrameAssembler#MAX_SCREEN_BYTES}, a delta longer than the largest delta,
+ * {@link ScreenFrameAssembler#MAX_DELTA_BYTES}, or either longer than the rest of the message, is rejected before
+ * anything is allocated for it.
+ * Not thread safe, use one decoder per listener thread.
+ * <p>
+ * Direct buffers are read in place when msgpack-core is allowed to access them, which on JDK 17+ requires
+ * {@code --add-opens java.base/java.nio=ALL-UNNAMED --add-opens java.base/sun.nio.ch=ALL-UNNAMED}
+ * (set in the jar manifest). Otherwise they are copied to a reused array first.
+ */
+public class StreamingPeripheralStateDecoder implements PeripheralStateDecoder {
+
+    private static final byte[] KEY_SOUND = "sound".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_KEYS = "keys".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_SCREEN = "screen".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_SCREEN_WIDTH = "screenWidth".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_SCREEN_HEIGHT = "screenHeight".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_SCREEN_PLANES = "screenPlanes".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_SEQUENCE = "sequence".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_SCREEN_DELTA = "screenDelta".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_SESSION = "session".getBytes(StandardCharsets.UTF_8);
+
+    private static final boolean DIRECT_BUFFER_SUPPORTED = isDirectBufferSupported();
+
+    private final ArrayBufferInput input = new ArrayBufferInput(new byte[0]);
+    private final ByteBufferInput bufferInput = new ByteBufferInput(ByteBuffer.allocate(0));
+    private final MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(input);
+
+    private final PeripheralState state = new PeripheralState();
+    private final byte[] keyBuffer = new byte[32];
+    private byte[] screenBuffer = new byte[0];
+    private byte[] screenDeltaBuffer = new byte[0];
+    private byte[] copyBuffer = new byte[0];
+    private int inputLength = 0;
+
+    @Override
+    public PeripheralState decode(byte[] data, int offset, int length) throws IOException {
+        input.reset(data, offset, length);
+        unpacker.reset(input);
+        inputLength = length;
+
+        return unpackState();
+    }
+
+    @Override
+    public PeripheralState decode(ByteBuffer data) throws IOException {
+        if (data.hasArray()) {
+            return decode(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+
+        if (data.isDirect() && DIRECT_BUFFER_SUPPORTED) {
+            // Decoding through a buffer input wraps a slice of the data, the position of the buffer itself is not moved
+            bufferInput.reset(data);
+            unpacker.reset(bufferInput);
+            inputLength = data.remaining();
+
+            return unpackState();
+        }
+
+        final int length = data.remaining();
+        if (copyBuffer.length < length) {
+            copyBuffer = new byte[length];
+        }
+        final int position = data.position();
+        for (int i = 0; i < length; i++) {
+            copyBuffer[i] = data.get(position + i);
+        }
+
+        return decode(copyBuffer, 0, length);
+    }
+
+    private PeripheralState unpackState() throws IOException {
+        state.setSound(false);
+        state.setKeys(0);
+        state.setScreen(null);
+        state.setScreenWidth(0);
+        state.setScreenHeight(0);
+        state.setScreenPlanes(0);
+        state.setSequence(PeripheralState.NO_SEQUENCE);
+        state.setScreenDelta(null);
+        state.setSession(PeripheralState.NO_SESSION);
+
+        final int entryCount = unpacker.unpackMapHeader();
+        for (int i = 0; i < entryCount; i++) {
+            final int keyLength = readKey();
+
+            if (isKey(KEY_SOUND, keyLength)) {
+                state.setSound(unpacker.unpackBoolean());
+            } else if (isKey(KEY_KEYS, keyLength)) {
+                state.setKeys(unpacker.unpackInt());
+            } else if (isKey(KEY_SCREEN, keyLength)) {
+                final int screenLength = readScreenBytes(false);
+                state.setScreen((screenLength >= 0) ? screenBuffer : null);
+            } else if (isKey(KEY_SCREEN_WIDTH, keyLength)) {
+                state.setScreenWidth(unpacker.unpackInt());
+            } else if (isKey(KEY_SCREEN_HEIGHT, keyLength)) {
+                state.setScreenHeight(unpacker.unpackInt());
+            } else if (isKey(KEY_SCREEN_PLANES, keyLength)) {
+                state.setScreenPlanes(unpacker.unpackInt());
+            } else if (isKey(KEY_SEQUENCE, keyLength)) {
+                state.setSequence(unpacker.unpackLong());
+            } else if (isKey(KEY_SCREEN_DELTA, keyLength)) {
+                final int screenDeltaLength = readScreenBytes(true);
+                state.setScreenDelta((screenDeltaLength >= 0) ? screenDeltaBuffer : null, Math.max(0, screenDeltaLength));
+            } else if (isKey(KEY_SESSION, keyLength)) {
+                state.setSession(unpacker.unpackLong());
+            } else {
+                unpacker.skipValue();
+            }
+        }
+
+        return state;
+    }
+
+    /**
+     * Read a map key into the key buffer, without creating a string.
+     *
+     * @return the key length in bytes, or -1 if the key is too long to be any of the known keys
+     */
+    private int readKey() throws IOException {
+        final int keyLength = unpacker.unpackRawStringHeader();
+        if (keyLength > keyBuffer.length) {
+            unpacker.readPayload(keyLength);
+            return -1;
+        }
+
+        unpacker.readPayload(keyBuffer, 0, keyLength);
+        return keyLength;
+    }
+
+    private boolean isKey(byte[] key, int keyLength) {
+        return (key.length == keyLength) && Arrays.equals(key, 0, keyLength, keyBuffer, 0, keyLength);
+    }
+
+    /**
+     * Read screen (or screen delta) data, either as MsgPack binary (i.e. Go []byte) or as an array of integers (i.e. Rust Vec&lt;u8&gt;),
+     * into the screen buffer (or the screen delta buffer).
+     *
+     * @return the number of bytes read, -1 for nil
+     */
+    private int readScreenBytes(boolean delta) throws IOException {
+        if (unpacker.tryUnpackNil()) {
+            return -1;
+        }
+
+        final MessageFormat format = unpacker.getNextFormat();
+        switch (format.getValueType()) {
+            case BINARY: {
+                final int size = unpacker.unpackBinaryHeader();
+                unpacker.readPayload(screenBuffer(size, delta), 0, size);
+                return size;
+            }
+            case ARRAY: {
+                final int size = unpacker.unpackArrayHeader();
+                final byte[] screen = screenBuffer(size, delta);
+                for (int i = 0; i < size; i++) {
+                    screen[i] = (byte) unpacker.unpackInt();
+                }
+                return size;
+            }
+            default:
+                throw new MessageTypeException("Unexpected screen data format " + format);
+        }
+    }
+
+    private static boolean isDirectBufferSupported() {
+        try {
+            MessageBuffer.wrap(ByteBuffer.allocateDirect(1));
+            return true;
+        } catch (RuntimeException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private byte[] screenBuffer(int size, boolean delta) throws InvalidMessageException {
+        // Every byte of screen data takes at least one byte of the message, as binary or as array elements
+        final long remainingBytes = inputLength - unpacker.getTotalReadBytes();
+        final int maxSize = delta ? ScreenFrameAssembler.MAX_DELTA_BYTES : ScreenFrameAssembler.MAX_SCREEN_BYTES;
+        if ((size > maxSize) || (size > remainingBytes)) {
+            throw new InvalidMessageException((delta ? "Screen delta" : "Screen data") + " of " + size + " bytes, in a message with "
+                    + remainingBytes + " bytes left, the largest is " + maxSize + " bytes.");
+        }
+
+        if (delta) {
+            if (screenDeltaBuffer.length < size) {
+                screenDeltaBuffer = new byte[size];
+            }
+            return screenDeltaBuffer;
+        }
+
+        if (screenBuffer.length != size) {
+            screenBuffer = new byte[size];
+        }
+
+        return screenBuffer;
+    }
+}
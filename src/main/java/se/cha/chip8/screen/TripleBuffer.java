@@ -0,0 +1,69 @@
+package se.cha.chip8.screen;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lock free hand over of buffers from one writer thread to one reader thread.
+ * <p>
+ * The writer fills the back buffer and publishes it, the reader takes the latest published buffer as its front buffer.
+ * Publishing and taking swap a buffer with the middle buffer in one atomic operation, so the writer never waits for
+ * the reader, and the reader always gets the latest complete buffer. Buffers published in between are skipped.
+ * All buffers are created up front, nothing is allocated when buffers are handed over.
+ */
+public class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 0b011;
+    // Set in the middle index when the middle buffer was published after the reader last took a buffer
+    private static final int PUBLISHED = 0b100;
+
+    private final Object[] buffers = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    // Owned by the writer and the reader thread respectively
+    private int back = 0;
+    private int front = 2;
+
+    public TripleBuffer(Supplier<T> bufferFactory) {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = bufferFactory.get();
+        }
+    }
+
+    /**
+     * The buffer for the writer to fill. Only to be called by the writer thread.
+     */
+    @SuppressWarnings("unchecked")
+    public T getBackBuffer() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Publish the back buffer to the reader, and get a new back buffer. Only to be called by the writer thread.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | PUBLISHED) & INDEX_MASK;
+    }
+
+    /**
+     * Take the latest published buffer as front buffer, if any buffer was published since the last call.
+     * Only to be called by the reader thread.
+     *
+     * @return true if the front buffer is a newly published buffer
+     */
+    public boolean update() {
+        if ((middle.get() & PUBLISHED) == 0) {
+            return false;
+        }
+
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * The latest buffer taken by {@link #update()}. Only to be called by the reader thread.
+     */
+    @SuppressWarnings("unchecked")
+    public T getFrontBuffer() {
+        return (T) buffers[front];
+    }
+}
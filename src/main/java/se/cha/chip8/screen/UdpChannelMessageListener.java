@@ -0,0 +1,69 @@
+package se.cha.chip8.screen;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * UDP listener receiving packets into one reused direct buffer.
+ * The received packet data is handed to the processor as a read only view of the receive buffer, it is never copied.
+ */
+public class UdpChannelMessageListener extends AbstractUdpMessageListener {
+
+    private final UDPPacketBufferProcessor processor;
+    private final ByteBuffer receiveDataView;
+
+    public UdpChannelMessageListener(UDPPacketBufferProcessor listener, int listenerPort) {
+        this(listener, Configuration.builder().listenerPort(listenerPort).build());
+    }
+
+    /**
+     * @see AbstractUdpMessageListener#AbstractUdpMessageListener(Configuration, boolean)
+     */
+    public UdpChannelMessageListener(UDPPacketBufferProcessor listener, Configuration configuration) {
+        super(configuration, true);
+        processor = listener;
+        receiveDataView = getReceiveBuffer().asReadOnlyBuffer();
+    }
+
+    @Override
+    protected void onPacketReceived(ByteBuffer receiveBuffer, int length, SocketAddress source, long receiveNanos) {
+        receiveDataView.clear();
+        receiveDataView.limit(length);
+        processor.onPacketReceived(receiveDataView, source, receiveNanos);
+    }
+
+    @Override
+    protected void onPacketsDrained() {
+        processor.onPacketsDrained();
+    }
+
+    public interface UDPPacketBufferProcessor {
+        /**
+         * @param data read only view of the received packet data, from position to limit.
+         *             The view, and its content, is reused for the next packet and must not be retained after the call returns.
+         */
+        void onPacketReceived(ByteBuffer data);
+
+        /**
+         * @param source the address the packet was sent from
+         * @see #onPacketReceived(ByteBuffer)
+         */
+        default void onPacketReceived(ByteBuffer data, SocketAddress source) {
+            onPacketReceived(data);
+        }
+
+        /**
+         * @param receiveNanos the time the packet was received, {@link System#nanoTime()}
+         * @see #onPacketReceived(ByteBuffer, SocketAddress)
+         */
+        default void onPacketReceived(ByteBuffer data, SocketAddress source, long receiveNanos) {
+            onPacketReceived(data, source);
+        }
+
+        /**
+         * All packets received so far are passed to {@link #onPacketReceived(ByteBuffer)}, a burst of packets has ended.
+         */
+        default void onPacketsDrained() {
+        }
+    }
+}
@@ -1,29 +1,113 @@
 package se.cha.chip8.screen;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.msgpack.jackson.dataformat.MessagePackFactory;
-
 import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes received packets and passes the state on to the screen frame, one coalesced update per burst of packets.
+ */
+public class UdpDataProcessor implements UdpPacketMessageListener.UDPPacketDataProcessor, UdpChannelMessageListener.UDPPacketBufferProcessor {
+
+    private static final long REPORT_INTERVAL_NANOS = 10_000_000_000L;
 
-public class UdpDataProcessor implements UdpPacketMessageListener.UDPPacketDataProcessor {
+    private final PeripheralStateDecoder decoder = new FallbackPeripheralStateDecoder();
+    private final StateCoalescer stateCoalescer;
+    private final Metrics metrics = Metrics.get(); // Null unless metrics are on
+    private final boolean printStatistics;
+
+    private long reportStart = 0;
+    private long reportPacketCount = 0;
+    private long reportBurstCount = 0;
+    private long reportDroppedFrameCount = 0;
+
+    /**
+     * @param target          where the decoded state goes, the screen state of the screen frame
+     * @param printStatistics print packet coalescing statistics every 10 seconds
+     */
+    public UdpDataProcessor(StateCoalescer.Target target, boolean printStatistics) {
+        stateCoalescer = new StateCoalescer(target);
+        this.printStatistics = printStatistics;
+    }
 
     @Override
     public void onPacketReceived(byte[] data) {
-        try {
-            final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
-            final PeripheralState peripheralState = objectMapper.readValue(data, PeripheralState.class);
+        onPacketReceived(data, null, System.nanoTime());
+    }
 
-            final ScreenFrame screenFrame = ScreenFrame.getOrCreateSingleton();
+    @Override
+    public void onPacketReceived(byte[] data, SocketAddress source, long receiveNanos) {
+        if (metrics != null) {
+            metrics.packetReceived();
+        }
 
-            if (peripheralState.getScreen() != null) {
-                screenFrame.setChip8ScreenData(peripheralState.getScreen());
-            }
+        try {
+            apply(decoder.decode(data, 0, data.length), receiveNanos);
+        } catch (IOException e) {
+            decodeFailed(e);
+        }
+    }
 
-            screenFrame.setChip8KeyState(peripheralState.getKeys());
-            screenFrame.setChip8SoundState(peripheralState.isSound());
+    @Override
+    public void onPacketReceived(ByteBuffer data) {
+        onPacketReceived(data, null, System.nanoTime());
+    }
 
+    @Override
+    public void onPacketReceived(ByteBuffer data, SocketAddress source, long receiveNanos) {
+        if (metrics != null) {
+            metrics.packetReceived();
+        }
+
+        try {
+            apply(decoder.decode(data), receiveNanos);
         } catch (IOException e) {
-            e.printStackTrace();
+            decodeFailed(e);
+        }
+    }
+
+    private void apply(PeripheralState peripheralState, long receiveNanos) {
+        if (metrics != null) {
+            metrics.packetDecoded();
+        }
+        stateCoalescer.add(peripheralState, receiveNanos);
+    }
+
+    private void decodeFailed(IOException e) {
+        if (metrics != null) {
+            metrics.packetFailed();
         }
+        e.printStackTrace();
+    }
+
+    @Override
+    public void onPacketsDrained() {
+        stateCoalescer.flush();
+
+        if (printStatistics) {
+            final long now = System.nanoTime();
+            if (reportStart == 0) {
+                reportStart = now;
+            } else if (now - reportStart >= REPORT_INTERVAL_NANOS) {
+                System.out.println(getCoalescingReport());
+                reportStart = now;
+                reportPacketCount = stateCoalescer.getPacketCount();
+                reportBurstCount = stateCoalescer.getBurstCount();
+                reportDroppedFrameCount = stateCoalescer.getDroppedFrameCount();
+            }
+        }
+    }
+
+    /**
+     * Packet coalescing statistics since the last report.
+     */
+    public String getCoalescingReport() {
+        final long packets = stateCoalescer.getPacketCount() - reportPacketCount;
+        final long bursts = stateCoalescer.getBurstCount() - reportBurstCount;
+        return String.format("Packet coalescing: %d packets in %d bursts (avg %.2f packets per burst), dropped frames %d",
+                packets,
+                bursts,
+                (bursts > 0) ? (double) packets / bursts : 0.0,
+                stateCoalescer.getDroppedFrameCount() - reportDroppedFrameCount);
     }
 }
@@ -0,0 +1,43 @@
+package se.cha.chip8.screen;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Lets a byte array based {@link UdpPacketMessageListener.UDPPacketDataProcessor} receive packets from a
+ * {@link UdpChannelMessageListener}. Each packet is copied to a new array of the exact packet length.
+ */
+public class UdpPacketDataProcessorAdapter implements UdpChannelMessageListener.UDPPacketBufferProcessor {
+
+    private final UdpPacketMessageListener.UDPPacketDataProcessor processor;
+
+    public UdpPacketDataProcessorAdapter(UdpPacketMessageListener.UDPPacketDataProcessor processor) {
+        this.processor = processor;
+    }
+
+    @Override
+    public void onPacketReceived(ByteBuffer data) {
+        final byte[] dataArray = new byte[data.remaining()];
+        data.duplicate().get(dataArray);
+        processor.onPacketReceived(dataArray);
+    }
+
+    @Override
+    public void onPacketReceived(ByteBuffer data, SocketAddress source) {
+        final byte[] dataArray = new byte[data.remaining()];
+        data.duplicate().get(dataArray);
+        processor.onPacketReceived(dataArray, source);
+    }
+
+    @Override
+    public void onPacketReceived(ByteBuffer data, SocketAddress source, long receiveNanos) {
+        final byte[] dataArray = new byte[data.remaining()];
+        data.duplicate().get(dataArray);
+        processor.onPacketReceived(dataArray, source, receiveNanos);
+    }
+
+    @Override
+    public void onPacketsDrained() {
+        processor.onPacketsDrained();
+    }
+}
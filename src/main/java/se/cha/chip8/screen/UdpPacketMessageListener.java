@@ -1,63 +1,64 @@
 package se.cha.chip8.screen;
 
-import java.io.IOException;
-import java.net.*;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-public class UdpPacketMessageListener implements Runnable {
+/**
+ * UDP listener handing each received packet to the processor as a byte array of its own.
+ */
+public class UdpPacketMessageListener extends AbstractUdpMessageListener {
 
-    private static final int BYTE_BUFFER_SIZE = 1024; // 1kb read buffer
+    private final UDPPacketDataProcessor processor;
 
-    int port;
-    byte[] receiveData;
-    DatagramSocket udpListeningSocket;
-    UDPPacketDataProcessor processor;
-    boolean continueListen = true;
+    public UdpPacketMessageListener(UDPPacketDataProcessor listener, int listenerPort) {
+        this(listener, Configuration.builder().listenerPort(listenerPort).build());
+    }
 
     /**
-     * In IPv4, any address between 224.0.0.0 to 239.255.255.255 can be used as a multicast address.
+     * @see AbstractUdpMessageListener#AbstractUdpMessageListener(Configuration, boolean)
      */
-    public UdpPacketMessageListener(UDPPacketDataProcessor listener, int listenerPort) {
-        port = listenerPort;
+    public UdpPacketMessageListener(UDPPacketDataProcessor listener, Configuration configuration) {
+        super(configuration, false);
         processor = listener;
-        receiveData = new byte[BYTE_BUFFER_SIZE];
-        try {
-            udpListeningSocket = new DatagramSocket(port);
-        } catch (IOException e) {
-            System.err.println("Listen socket setup: " + port);
-            e.printStackTrace();
-        }
     }
 
-    public void stop() {
-        continueListen = false;
-        //udpListeningSocket.disconnect();
-        udpListeningSocket.close();
+    @Override
+    protected void onPacketReceived(ByteBuffer receiveBuffer, int length, SocketAddress source, long receiveNanos) {
+        final byte[] data = Arrays.copyOf(receiveBuffer.array(), length);
+        // System.out.println("Received packet of length " + data.length + " bytes: '" + new String(data, 0, data.length, StandardCharsets.UTF_8) + "'");
+        // System.out.println("Base64 data:      " + Base64.getEncoder().encodeToString(data));
+        processor.onPacketReceived(data, source, receiveNanos);
     }
 
     @Override
-    public void run() {
-        while (continueListen) {
-            final DatagramPacket receivedPacket = new DatagramPacket(receiveData, receiveData.length);
-            try {
-                udpListeningSocket.receive(receivedPacket);
-                final byte[] data = Arrays.copyOfRange(receivedPacket.getData(), receivedPacket.getOffset(), receivedPacket.getLength());
-                // System.out.println("Received packet of length " + data.length + " bytes: '" + new String(data, 0, data.length, StandardCharsets.UTF_8) + "'");
-                // System.out.println("Base64 data:      " + Base64.getEncoder().encodeToString(data));
-                processor.onPacketReceived(data);
-            } catch (IOException e) {
-                if (continueListen) {
-                    System.out.println("UDP socket listener caught an exception during receive: " + e.getMessage());
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        System.out.println("Ending UDP listener thread.");
+    protected void onPacketsDrained() {
+        processor.onPacketsDrained();
     }
 
     public interface UDPPacketDataProcessor {
         void onPacketReceived(byte[] data);
+
+        /**
+         * @param source the address the packet was sent from
+         * @see #onPacketReceived(byte[])
+         */
+        default void onPacketReceived(byte[] data, SocketAddress source) {
+            onPacketReceived(data);
+        }
+
+        /**
+         * @param receiveNanos the time the packet was received, {@link System#nanoTime()}
+         * @see #onPacketReceived(byte[], SocketAddress)
+         */
+        default void onPacketReceived(byte[] data, SocketAddress source, long receiveNanos) {
+            onPacketReceived(data, source);
+        }
+
+        /**
+         * All packets received so far are passed to {@link #onPacketReceived(byte[])}, a burst of packets has ended.
+         */
+        default void onPacketsDrained() {
+        }
     }
 }
-
@@ -0,0 +1,62 @@
+package se.cha.chip8.screen;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * YUV4MPEG2 video stream frame sink, for piping to ffmpeg like "ffmpeg -i - out.mp4".
+ * <p>
+ * Frames are converted to BT.601 limited range Y'CbCr without chroma subsampling (4:4:4), the monitor size is not
+ * required to be even, and the thin CRT lines keep their color. The stream header is written with the first frame,
+ * all frames of a stream must have the same size.
+ */
+public class Y4mFrameSink implements FrameSink {
+
+    // Frame rate written in the header when frames are rendered uncapped
+    private static final int DEFAULT_FRAME_RATE = 60;
+    private static final byte[] FRAME_HEADER = "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream outputStream;
+    private final int frameRate;
+    private int width = -1;
+    private int height = -1;
+    private byte[] frameBytes = new byte[0];
+
+    public Y4mFrameSink(OutputStream outputStream, int frameRate) {
+        this.outputStream = outputStream;
+        this.frameRate = (frameRate > 0) ? frameRate : DEFAULT_FRAME_RATE;
+    }
+
+    @Override
+    public void writeFrame(int[] argbPixels, int width, int height) throws IOException {
+        if (this.width < 0) {
+            this.width = width;
+            this.height = height;
+            frameBytes = new byte[width * height * 3];
+            outputStream.write(String.format("YUV4MPEG2 W%d H%d F%d:1 Ip A1:1 C444\n", width, height, frameRate).getBytes(StandardCharsets.US_ASCII));
+        } else if ((width != this.width) || (height != this.height)) {
+            throw new IOException("Frame size " + width + "x" + height + " differs from the stream size " + this.width + "x" + this.height + ".");
+        }
+
+        // Planar, all Y' values, then all Cb values, then all Cr values
+        final int pixelCount = width * height;
+        for (int i = 0; i < pixelCount; i++) {
+            final int argb = argbPixels[i];
+            final int r = (argb >> 16) & 0xFF;
+            final int g = (argb >> 8) & 0xFF;
+            final int b = argb & 0xFF;
+            frameBytes[i] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+            frameBytes[pixelCount + i] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+            frameBytes[2 * pixelCount + i] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+        }
+
+        outputStream.write(FRAME_HEADER);
+        outputStream.write(frameBytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+}
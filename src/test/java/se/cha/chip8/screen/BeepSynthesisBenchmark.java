@@ -0,0 +1,28 @@
+package se.cha.chip8.screen;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Beep sample synthesis, one fill of the audio line (100 ms of 44.1 kHz two channel samples).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BeepSynthesisBenchmark {
+
+    private static final int SAMPLE_COUNT = 4410;
+
+    private final byte[] sampleBuffer = new byte[SAMPLE_COUNT * 2];
+    private int soundWaveIndex = 0;
+
+    @Benchmark
+    public byte[] synthesize() {
+        soundWaveIndex = BeepGenerator.synthesize(sampleBuffer, SAMPLE_COUNT, soundWaveIndex, 220, 0.5);
+        return sampleBuffer;
+    }
+}
@@ -0,0 +1,105 @@
+package se.cha.chip8.screen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compare JMH json results of this build with the results of a baseline build.
+ * <p>
+ * A benchmark is reported as a regression if it is more than the threshold (percent) slower than the baseline,
+ * and the difference is larger than the measurement errors of both runs.
+ * <p>
+ * Usage: {@code BenchmarkReport <result json> [<baseline json>] [<threshold percent>]}
+ */
+public class BenchmarkReport {
+
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: BenchmarkReport <result json> [<baseline json>] [<threshold percent>]");
+            System.exit(2);
+        }
+
+        final File resultFile = new File(args[0]);
+        final File baselineFile = (args.length > 1) ? new File(args[1]) : null;
+        final double thresholdPercent = (args.length > 2) ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+
+        final Map<String, JsonNode> results = readResults(resultFile);
+        final Map<String, JsonNode> baseline = ((baselineFile != null) && baselineFile.isFile()) ? readResults(baselineFile) : new LinkedHashMap<>();
+
+        System.out.println();
+        System.out.println("Benchmark report, " + resultFile + ((baseline.isEmpty()) ? " (no baseline found" + ((baselineFile != null) ? " at " + baselineFile : "") + ")" : " compared to " + baselineFile));
+        System.out.println(String.format("%-70s %16s %16s %9s %-10s", "Benchmark", "Baseline", "Result", "Change", "Unit"));
+
+        int regressions = 0;
+        int improvements = 0;
+        for (Map.Entry<String, JsonNode> resultEntry : results.entrySet()) {
+            final JsonNode result = resultEntry.getValue();
+            final JsonNode baselineResult = baseline.get(resultEntry.getKey());
+            final double score = result.path("primaryMetric").path("score").asDouble();
+            final String unit = result.path("primaryMetric").path("scoreUnit").asText();
+
+            if (baselineResult == null) {
+                System.out.println(String.format("%-70s %16s %16.3f %9s %-10s", resultEntry.getKey(), "-", score, "-", unit));
+                continue;
+            }
+
+            final double baselineScore = baselineResult.path("primaryMetric").path("score").asDouble();
+            final double error = errorOf(result) + errorOf(baselineResult);
+            final double changePercent = (baselineScore != 0.0) ? 100.0 * (score - baselineScore) / baselineScore : 0.0;
+
+            // Average and sample time is time per operation, lower is better. Throughput is operations per time, higher is better.
+            final boolean higherIsBetter = "thrpt".equals(result.path("mode").asText());
+            final double slowdownPercent = higherIsBetter ? -changePercent : changePercent;
+            final boolean significant = Math.abs(score - baselineScore) > error;
+
+            String verdict = "";
+            if (significant && (slowdownPercent > thresholdPercent)) {
+                verdict = "REGRESSION";
+                regressions++;
+            } else if (significant && (slowdownPercent < -thresholdPercent)) {
+                verdict = "improved";
+                improvements++;
+            }
+
+            System.out.println(String.format("%-70s %16.3f %16.3f %+8.1f%% %-10s %s", resultEntry.getKey(), baselineScore, score, changePercent, unit, verdict));
+        }
+
+        System.out.println();
+        System.out.println(regressions + " regression(s), " + improvements + " improvement(s), threshold " + thresholdPercent + "%");
+    }
+
+    /**
+     * Read JMH json results, keyed by benchmark name and parameters.
+     */
+    private static Map<String, JsonNode> readResults(File file) throws IOException {
+        final Map<String, JsonNode> results = new LinkedHashMap<>();
+
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            final StringBuilder key = new StringBuilder(result.path("benchmark").asText().replace(BenchmarkReport.class.getPackage().getName() + ".", ""));
+            final JsonNode params = result.path("params");
+            final Iterator<Map.Entry<String, JsonNode>> paramIterator = params.fields();
+            while (paramIterator.hasNext()) {
+                final Map.Entry<String, JsonNode> param = paramIterator.next();
+                key.append(" ").append(param.getKey()).append("=").append(param.getValue().asText());
+            }
+
+            results.put(key.toString(), result);
+        }
+
+        return results;
+    }
+
+    private static double errorOf(JsonNode result) {
+        final double error = result.path("primaryMetric").path("scoreError").asDouble();
+        // A single measurement iteration gives no error estimate ("NaN")
+        return Double.isNaN(error) ? 0.0 : error;
+    }
+}
@@ -0,0 +1,78 @@
+package se.cha.chip8.screen;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phosphor glow blur of the upscaled phosphor screen; the original Blur2 convolutions compared to the box blur engine.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class BlurBenchmark {
+
+    private static final int RADIUS = 30;
+
+    private BufferedImage phosphorImage;
+    private int[] phosphorData;
+    private int[] blurredData;
+    private Blur boxBlur;
+    private Blur parallelBoxBlur;
+    private PhosphorGlow phosphorGlow;
+
+    @Setup
+    public void setup() {
+        phosphorImage = new BufferedImage(940, 720, BufferedImage.TYPE_INT_ARGB);
+        final Graphics graphics = phosphorImage.getGraphics();
+        graphics.setColor(new Color(0x33, 0x99, 0x00));
+        for (int y = 40; y < 680; y += 40) {
+            for (int x = 40 + (y % 80); x < 900; x += 80) {
+                graphics.fillRect(x, y, 40, 40);
+            }
+        }
+        graphics.dispose();
+
+        phosphorData = phosphorImage.getRGB(0, 0, phosphorImage.getWidth(), phosphorImage.getHeight(), null, 0, phosphorImage.getWidth());
+        blurredData = new int[phosphorData.length];
+        boxBlur = new Blur(phosphorImage.getWidth(), phosphorImage.getHeight(), RADIUS / 3.0, PostProcessingPipeline.singleThreaded());
+        parallelBoxBlur = new Blur(phosphorImage.getWidth(), phosphorImage.getHeight(), RADIUS / 3.0, new PostProcessingPipeline(Runtime.getRuntime().availableProcessors()));
+        phosphorGlow = new PhosphorGlow(phosphorImage.getWidth(), phosphorImage.getHeight(), RADIUS, 30, new PostProcessingPipeline(Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Benchmark
+    public BufferedImage blur2Fast() {
+        return Blur2.blur(phosphorImage, RADIUS, true);
+    }
+
+    @Benchmark
+    public BufferedImage blur2Exact() {
+        return Blur2.blur(phosphorImage, RADIUS, false);
+    }
+
+    @Benchmark
+    public int[] boxBlur() {
+        boxBlur.blur(phosphorData, blurredData);
+        return blurredData;
+    }
+
+    @Benchmark
+    public int[] boxBlurParallel() {
+        parallelBoxBlur.blur(phosphorData, blurredData);
+        return blurredData;
+    }
+
+    /**
+     * Parallel box blur, and blending of the glow with the phosphor picture.
+     */
+    @Benchmark
+    public BufferedImage phosphorGlow() {
+        phosphorGlow.render(phosphorData);
+        return phosphorGlow.getImage();
+    }
+}
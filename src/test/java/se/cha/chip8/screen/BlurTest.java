@@ -0,0 +1,119 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BlurTest {
+
+    @Test
+    public void testBoxesForGauss() {
+        // sigma 10 with three boxes, from the box blur gaussian approximation article
+        assertArrayEquals(new int[]{19, 19, 21}, Blur.boxesForGauss(10, 3));
+        assertArrayEquals(new int[]{1, 1, 1}, Blur.boxesForGauss(0, 3));
+    }
+
+    @Test
+    public void testSameAsNaiveBoxBlur() {
+        final int width = 37;
+        final int height = 23;
+        final int[] source = randomPixels(width, height);
+        final int[] original = source.clone();
+
+        final Blur blur = new Blur(width, height, 3.0, PostProcessingPipeline.singleThreaded());
+        final int[] target = new int[width * height];
+        blur.blur(source, target);
+
+        int[] expected = source;
+        for (int boxSize : Blur.boxesForGauss(3.0, 3)) {
+            expected = naiveBoxBlur(expected, width, height, (boxSize - 1) / 2);
+        }
+
+        assertArrayEquals(original, source);
+        assertArrayEquals(expected, target);
+    }
+
+    @Test
+    public void testParallelSameAsSerial() {
+        final int width = 400;
+        final int height = 300;
+        final int[] source = randomPixels(width, height);
+
+        final int[] serialTarget = new int[width * height];
+        new Blur(width, height, 10.0, PostProcessingPipeline.singleThreaded()).blur(source, serialTarget);
+        final int[] parallelTarget = new int[width * height];
+        final PostProcessingPipeline pipeline = new PostProcessingPipeline(4);
+        new Blur(width, height, 10.0, pipeline).blur(source, parallelTarget);
+        pipeline.shutdown();
+
+        assertArrayEquals(serialTarget, parallelTarget);
+    }
+
+    @Test
+    public void testUniformPixelsUnchanged() {
+        final int[] source = new int[50 * 40];
+        Arrays.fill(source, 0xFF339900);
+        final int[] target = new int[source.length];
+
+        // A radius larger than the image, all pixels outside the image are edge pixels
+        new Blur(50, 40, 30.0, PostProcessingPipeline.singleThreaded()).blur(source, target);
+
+        assertArrayEquals(source, target);
+    }
+
+    private static int[] naiveBoxBlur(int[] source, int width, int height, int radius) {
+        final int[] horizontal = new int[source.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int[] sums = new int[4];
+                for (int k = -radius; k <= radius; k++) {
+                    add(sums, source[y * width + Math.min(Math.max(x + k, 0), width - 1)]);
+                }
+                horizontal[y * width + x] = average(sums, radius);
+            }
+        }
+
+        final int[] target = new int[source.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int[] sums = new int[4];
+                for (int k = -radius; k <= radius; k++) {
+                    add(sums, horizontal[Math.min(Math.max(y + k, 0), height - 1) * width + x]);
+                }
+                target[y * width + x] = average(sums, radius);
+            }
+        }
+
+        return target;
+    }
+
+    private static void add(int[] sums, int pixel) {
+        for (int channel = 0; channel < 4; channel++) {
+            sums[channel] += (pixel >>> (24 - channel * 8)) & 0xFF;
+        }
+    }
+
+    /**
+     * Average with the same fixed point rounding as the blur.
+     */
+    private static int average(int[] sums, int radius) {
+        final int scale = (1 << 16) / (radius + radius + 1);
+        int pixel = 0;
+        for (int channel = 0; channel < 4; channel++) {
+            pixel |= ((sums[channel] * scale + 0x8000) >>> 16) << (24 - channel * 8);
+        }
+        return pixel;
+    }
+
+    private static int[] randomPixels(int width, int height) {
+        final int[] pixels = new int[width * height];
+        final Random random = new Random(width * height);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+}
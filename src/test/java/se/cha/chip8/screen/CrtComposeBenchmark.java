@@ -0,0 +1,82 @@
+package se.cha.chip8.screen;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One CRT composition pass (ScreenFrame.updateCrt without presenting), run headless.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class CrtComposeBenchmark {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+
+    /**
+     * Glow strength in percent, 0 is no glow.
+     */
+    @Param({"0", "30"})
+    public int glowStrength;
+
+    @Param({"false", "true"})
+    public boolean crtEffects;
+
+    private CrtComposer crtComposer;
+    private int[][] screens;
+    private int frame = 0;
+
+    @Setup
+    public void setup() {
+        final Configuration configuration = Configuration.builder()
+                .brightColor(new Color(0x33, 0x99, 0x00))
+                .darkColor(new Color(0x08, 0x18, 0x00, 0x40))
+                .glowStrength(glowStrength)
+                .crtEffects(crtEffects)
+                .build();
+        crtComposer = new CrtComposer(configuration);
+
+        // Two random screens to alternate between, every pixel changing with a probability of one half
+        final Random random = new Random(42);
+        screens = new int[2][WIDTH * HEIGHT];
+        for (int[] screen : screens) {
+            for (int i = 0; i < screen.length; i++) {
+                screen[i] = random.nextBoolean() ? 1 : 0;
+            }
+        }
+
+        // Draw the static monitor frame outside of the measurements
+        crtComposer.updatePhosphor(screens[0], WIDTH, HEIGHT);
+        crtComposer.compose(0x0000, false);
+    }
+
+    /**
+     * A new screen every frame, the whole phosphor area is redrawn.
+     */
+    @Benchmark
+    public BufferedImage changedScreen() {
+        frame++;
+        crtComposer.updatePhosphor(screens[frame & 1], WIDTH, HEIGHT);
+        crtComposer.compose(0x0000, false);
+        return crtComposer.getImage();
+    }
+
+    /**
+     * Only a key light toggles, the phosphor has settled.
+     */
+    @Benchmark
+    public BufferedImage changedKeys() {
+        frame++;
+        crtComposer.updatePhosphor(screens[0], WIDTH, HEIGHT);
+        crtComposer.compose(frame & 0x0001, false);
+        return crtComposer.getImage();
+    }
+}
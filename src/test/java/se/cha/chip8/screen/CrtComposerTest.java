@@ -0,0 +1,95 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CrtComposerTest {
+
+    private static final Color BRIGHT = new Color(0x33, 0x99, 0x00);
+    private static final Color DARK = new Color(0x08, 0x18, 0x00);
+    private static final Color[] PALETTE = {DARK, BRIGHT};
+
+    @Test
+    public void testResize() {
+        final CrtComposer crtComposer = new CrtComposer(Configuration.builder().brightColor(BRIGHT).darkColor(DARK).renderThreads(1).build());
+        final Dimension baseSize = crtComposer.getBaseSize();
+        final int[] screen = new int[64 * 32];
+        Arrays.fill(screen, 1);
+
+        crtComposer.updatePhosphor(screen, 64, 32);
+        crtComposer.compose(0x0000, false);
+        assertEquals(baseSize.width, crtComposer.getImage().getWidth());
+
+        // Fully lit and faded in, nothing changes
+        for (int frame = 0; frame < 10; frame++) {
+            crtComposer.updatePhosphor(screen, 64, 32);
+        }
+        assertFalse(crtComposer.updatePhosphor(screen, 64, 32));
+
+        // A new size is a full frame, with the unchanged phosphor drawn again
+        final int width = baseSize.width / 2;
+        final int height = baseSize.height / 2;
+        crtComposer.resize(width, height);
+        assertTrue(crtComposer.updatePhosphor(screen, 64, 32));
+        crtComposer.compose(0x0000, false);
+        crtComposer.shutdown();
+
+        assertEquals(width, crtComposer.getImage().getWidth());
+        assertEquals(height, crtComposer.getImage().getHeight());
+        assertEquals(new Rectangle(0, 0, width, height), crtComposer.getDirtyAreas().get(0));
+
+        // The middle of the screen is lit
+        final int middle = crtComposer.getImage().getRGB(width * 460 / 1432, height * 520 / 1071);
+        assertTrue(((middle >>> 8) & 0xFF) > DARK.getGreen());
+    }
+
+    @Test
+    public void testResolutionChangeToBlankScreen() {
+        final CrtComposer crtComposer = new CrtComposer(Configuration.builder().brightColor(BRIGHT).darkColor(DARK).renderThreads(1).build());
+        final Dimension baseSize = crtComposer.getBaseSize();
+        final int[] litScreen = new int[64 * 32];
+        Arrays.fill(litScreen, 1);
+        crtComposer.updatePhosphor(litScreen, 64, 32);
+        crtComposer.compose(0x0000, false);
+
+        // A SUPER-CHIP high resolution switch, followed by a clear screen
+        assertTrue(crtComposer.updatePhosphor(new int[128 * 64], 128, 64));
+        crtComposer.compose(0x0000, false);
+        assertFalse(crtComposer.getDirtyAreas().isEmpty());
+
+        // The middle of the screen is as dark as on a monitor that only ever showed the blank screen
+        final CrtComposer blankComposer = new CrtComposer(Configuration.builder().brightColor(BRIGHT).darkColor(DARK).renderThreads(1).build());
+        blankComposer.updatePhosphor(new int[128 * 64], 128, 64);
+        blankComposer.compose(0x0000, false);
+        final int x = baseSize.width * 460 / 1432;
+        final int y = baseSize.height * 520 / 1071;
+        assertEquals(Integer.toHexString(blankComposer.getImage().getRGB(x, y)), Integer.toHexString(crtComposer.getImage().getRGB(x, y)));
+        crtComposer.shutdown();
+        blankComposer.shutdown();
+    }
+
+    @Test
+    public void testUpscalerWholeBlockFactors() {
+        final PhosphorUpscaler upscaler = new PhosphorUpscaler(100, 60, new Rectangle(5, 5, 90, 50), PALETTE);
+        final PhosphorPersistence phosphor = new PhosphorPersistence(PhosphorPersistence.DecayCurve.EXPONENTIAL, 130, 60);
+        final int[] pixels = new int[8 * 4];
+        Arrays.fill(pixels, 1);
+        phosphor.update(pixels, 8, 4);
+        upscaler.render(phosphor);
+
+        // 8 x 4 pixels in 90 x 50, blocks of 11 x 12 centered; columns 6 to 93 and rows 6 to 53
+        final int[] row = Arrays.copyOfRange(upscaler.getImageData(), 20 * 100, 21 * 100);
+        assertEquals(DARK.getRGB(), row[5]);
+        assertNotEquals(DARK.getRGB(), row[6]);
+        assertNotEquals(DARK.getRGB(), row[93]);
+        assertEquals(DARK.getRGB(), row[94]);
+        assertEquals(DARK.getRGB(), upscaler.getImageData()[5 * 100 + 50]);
+        assertNotEquals(DARK.getRGB(), upscaler.getImageData()[6 * 100 + 50]);
+        assertNotEquals(DARK.getRGB(), upscaler.getImageData()[53 * 100 + 50]);
+        assertEquals(DARK.getRGB(), upscaler.getImageData()[54 * 100 + 50]);
+    }
+}
@@ -0,0 +1,86 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CrtRemapTest {
+
+    private static final Color BRIGHT = new Color(0x33, 0x99, 0x00);
+    private static final Color DARK = new Color(0x08, 0x18, 0x00);
+    private static final Color[] PALETTE = {DARK, BRIGHT};
+    private static final Rectangle PICTURE_AREA = new Rectangle(40, 40, 320, 160);
+
+    @Test
+    public void testCurvedTube() {
+        final CrtRemap crtRemap = new CrtRemap(400, 240, PICTURE_AREA, PALETTE, PostProcessingPipeline.singleThreaded());
+        crtRemap.render(litPhosphor(64, 32));
+        final int[] imageData = crtRemap.getImageData();
+
+        // Lit in the middle of the screen, brighter than at the edge of the screen (vignette)
+        final int middle = brightestGreen(imageData, 200, 120);
+        final int edge = brightestGreen(imageData, 60, 120);
+        assertTrue(middle > edge);
+        assertTrue(edge > DARK.getGreen());
+
+        // The corners of the picture area bend away, outside of the curved tube is unlit phosphor
+        assertTrue(green(imageData, 41, 41) <= DARK.getGreen());
+        assertTrue(green(imageData, 5, 121) <= DARK.getGreen());
+    }
+
+    @Test
+    public void testScreenSizeChange() {
+        final CrtRemap crtRemap = new CrtRemap(400, 240, PICTURE_AREA, PALETTE, PostProcessingPipeline.singleThreaded());
+        crtRemap.render(litPhosphor(64, 32));
+        final int[] lowResolution = crtRemap.getImageData().clone();
+
+        // All screen pixels lit looks the same in any screen resolution
+        crtRemap.render(litPhosphor(128, 64));
+        assertArrayEquals(lowResolution, crtRemap.getImageData());
+    }
+
+    @Test
+    public void testParallelSameAsSingleThreaded() {
+        final PhosphorPersistence phosphor = new PhosphorPersistence(PhosphorPersistence.DecayCurve.EXPONENTIAL, 130, 60);
+        final int[] pixels = new int[64 * 32];
+        for (int i = 0; i < pixels.length; i += 3) {
+            pixels[i] = 1;
+        }
+        phosphor.update(pixels, 64, 32);
+
+        final CrtRemap singleThreaded = new CrtRemap(400, 240, PICTURE_AREA, PALETTE, PostProcessingPipeline.singleThreaded());
+        singleThreaded.render(phosphor);
+        final PostProcessingPipeline pipeline = new PostProcessingPipeline(4);
+        final CrtRemap parallel = new CrtRemap(400, 240, PICTURE_AREA, PALETTE, pipeline);
+        parallel.render(phosphor);
+        pipeline.shutdown();
+
+        assertArrayEquals(singleThreaded.getImageData(), parallel.getImageData());
+    }
+
+    private static PhosphorPersistence litPhosphor(int width, int height) {
+        final PhosphorPersistence phosphor = new PhosphorPersistence(PhosphorPersistence.DecayCurve.EXPONENTIAL, 130, 60);
+        final int[] pixels = new int[width * height];
+        Arrays.fill(pixels, 1);
+        phosphor.update(pixels, width, height);
+        return phosphor;
+    }
+
+    /**
+     * Green of the brightest pixel in a few rows, not to compare scanlines with scanline gaps.
+     */
+    private static int brightestGreen(int[] imageData, int x, int y) {
+        int brightest = 0;
+        for (int row = y; row < y + 3; row++) {
+            brightest = Math.max(brightest, green(imageData, x, row));
+        }
+        return brightest;
+    }
+
+    private static int green(int[] imageData, int x, int y) {
+        return (imageData[y * 400 + x] >>> 8) & 0xFF;
+    }
+}
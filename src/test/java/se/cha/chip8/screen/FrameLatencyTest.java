@@ -0,0 +1,80 @@
+package se.cha.chip8.screen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class FrameLatencyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+
+    @Test
+    public void testScreenTimedFromFirstReceive() throws IOException {
+        final ScreenState screenState = new ScreenState(new ScreenUnpacker(), () -> {
+        });
+        final UdpDataProcessor processor = new UdpDataProcessor(screenState, false);
+
+        // A burst of two screens, the first received 5 ms ago
+        final long firstReceiveNanos = System.nanoTime() - 5_000_000L;
+        processor.onPacketReceived(message(0x80), null, firstReceiveNanos);
+        processor.onPacketReceived(message(0x40), null, firstReceiveNanos + 1_000_000L);
+        processor.onPacketsDrained();
+
+        final ScreenState.ScreenBuffer screen = screenState.getScreen();
+        assertEquals(1, screen.getFrameNumber());
+        assertEquals(firstReceiveNanos, screen.getReceiveNanos());
+        assertTrue(screen.getDecodeNanos() >= screen.getReceiveNanos());
+        assertTrue(screen.getUnpackNanos() >= screen.getDecodeNanos());
+
+        final FrameLatency frameLatency = new FrameLatency(Configuration.LatencyReport.OFF);
+        final long presentNanos = screen.getUnpackNanos() + 2_000_000L;
+        frameLatency.framePresented(screen, presentNanos);
+        assertEquals(1, frameLatency.getTotalLatencies().getCount());
+        assertEquals(presentNanos - firstReceiveNanos, frameLatency.getTotalLatencies().getMax());
+        assertEquals(2_000_000L, frameLatency.getRenderLatencies().getMax());
+
+        // The same screen presented again, like while the phosphor fades, is not a new frame
+        frameLatency.framePresented(screenState.getCurrentScreen(), presentNanos + 16_000_000L);
+        assertEquals(1, frameLatency.getTotalLatencies().getCount());
+    }
+
+    @Test
+    public void testInitialScreenNotRecorded() {
+        final ScreenState screenState = new ScreenState(new ScreenUnpacker(), () -> {
+        });
+        final FrameLatency frameLatency = new FrameLatency(Configuration.LatencyReport.OFF);
+
+        frameLatency.framePresented(screenState.getScreen(), System.nanoTime());
+        assertEquals(0, frameLatency.getTotalLatencies().getCount());
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        final ScreenState screenState = new ScreenState(new ScreenUnpacker(), () -> {
+        });
+        screenState.setChip8ScreenTimes(1_000_000L, 1_500_000L);
+        screenState.setChip8ScreenData(new byte[256], 64, 32, 1, 0, 31);
+
+        final FrameLatency frameLatency = new FrameLatency(Configuration.LatencyReport.JSON);
+        final ScreenState.ScreenBuffer screen = screenState.getScreen();
+        frameLatency.framePresented(screen, screen.getUnpackNanos());
+
+        final JsonNode json = new ObjectMapper().readTree(frameLatency.toJson());
+        assertEquals(1, json.get("frames").asInt());
+        assertEquals(0.5, json.get("decode").get("max_ms").asDouble(), 0.001);
+    }
+
+    private byte[] message(int firstScreenByte) throws IOException {
+        final PeripheralState state = new PeripheralState();
+        state.setScreen(new byte[256]);
+        state.getScreen()[0] = (byte) firstScreenByte;
+        state.setScreenWidth(64);
+        state.setScreenHeight(32);
+        return objectMapper.writeValueAsBytes(state);
+    }
+}
@@ -0,0 +1,70 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameSchedulerTest {
+
+    @Test
+    public void testFrameRateDoesNotDrift() throws InterruptedException {
+        final FrameScheduler frameScheduler = new FrameScheduler(100, 2, 0);
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            Thread.sleep(3); // "Render"
+            frameScheduler.awaitNextFrame();
+        }
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // 50 frames at 100 fps, render time must not add to the frame interval
+        assertTrue("Elapsed " + elapsedMillis + " ms", elapsedMillis >= 490);
+        assertTrue("Elapsed " + elapsedMillis + " ms", elapsedMillis < 650);
+    }
+
+    @Test
+    public void testFallingBehindSkipsFrames() throws InterruptedException {
+        final FrameScheduler frameScheduler = new FrameScheduler(100, 2, 0);
+
+        frameScheduler.awaitNextFrame();
+        Thread.sleep(100); // About ten frames late
+
+        final long start = System.nanoTime();
+        frameScheduler.awaitNextFrame();
+        frameScheduler.awaitNextFrame();
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertFalse(frameScheduler.getPacingReport(), frameScheduler.getPacingReport().endsWith("skipped frames 0"));
+        // Realigned to now, the next frame is one frame interval later
+        assertTrue("Elapsed " + elapsedMillis + " ms", elapsedMillis >= 9 && elapsedMillis < 40);
+    }
+
+    @Test
+    public void testUncappedFadeFramesPaced() throws InterruptedException {
+        final FrameScheduler frameScheduler = new FrameScheduler(FrameScheduler.UNCAPPED, 2, 0);
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            frameScheduler.awaitFadeFrame();
+            frameScheduler.awaitNextFrame();
+        }
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // The first frame starts immediately, the next 9 at the fade frame rate
+        assertTrue("Elapsed " + elapsedMillis + " ms", elapsedMillis >= 9 * 1000 / FrameScheduler.UNCAPPED_FADE_FRAME_RATE - 5);
+
+        // A capped frame rate is paced by the frames, not the fade
+        final FrameScheduler cappedScheduler = new FrameScheduler(1, 2, 0);
+        cappedScheduler.awaitNextFrame();
+        final long cappedStart = System.nanoTime();
+        cappedScheduler.awaitFadeFrame();
+        assertTrue((System.nanoTime() - cappedStart) < 500_000_000L);
+    }
+
+    @Test(expected = InterruptedException.class)
+    public void testInterruptedWhileWaiting() throws InterruptedException {
+        final FrameScheduler frameScheduler = new FrameScheduler(1, 2, 0);
+        Thread.currentThread().interrupt();
+        frameScheduler.awaitNextFrame();
+    }
+}
@@ -0,0 +1,104 @@
+package se.cha.chip8.screen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FrameSinkTest {
+
+    // 3x1 frame, white, red and semi transparent black
+    private static final int[] PIXELS = {0xFFFFFFFF, 0xFFFF0000, 0x80000000};
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRawRgba() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (FrameSink frameSink = new RawRgbaFrameSink(output)) {
+            frameSink.writeFrame(PIXELS, 3, 1);
+            frameSink.writeFrame(PIXELS, 3, 1);
+        }
+
+        final byte[] frame = {-1, -1, -1, -1, -1, 0, 0, -1, 0, 0, 0, (byte) 0x80};
+        final byte[] bytes = output.toByteArray();
+        assertEquals(24, bytes.length);
+        assertArrayEquals(frame, Arrays.copyOfRange(bytes, 0, 12));
+        assertArrayEquals(frame, Arrays.copyOfRange(bytes, 12, 24));
+    }
+
+    @Test
+    public void testY4m() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (FrameSink frameSink = new Y4mFrameSink(output, 30)) {
+            frameSink.writeFrame(PIXELS, 3, 1);
+            frameSink.writeFrame(PIXELS, 3, 1);
+        }
+
+        final String header = "YUV4MPEG2 W3 H1 F30:1 Ip A1:1 C444\n";
+        final String frameHeader = "FRAME\n";
+        final byte[] bytes = output.toByteArray();
+        assertEquals(header.length() + 2 * (frameHeader.length() + 9), bytes.length);
+        assertEquals(header + frameHeader, new String(bytes, 0, header.length() + frameHeader.length(), StandardCharsets.US_ASCII));
+
+        // Y' planes, then Cb, then Cr, in limited range
+        final int frameStart = header.length() + frameHeader.length();
+        assertEquals(235, bytes[frameStart] & 0xFF); // White
+        assertEquals(82, bytes[frameStart + 1] & 0xFF); // Red
+        assertEquals(16, bytes[frameStart + 2] & 0xFF); // Black
+        assertEquals(128, bytes[frameStart + 3] & 0xFF);
+        assertEquals(90, bytes[frameStart + 4] & 0xFF);
+        assertEquals(240, bytes[frameStart + 7] & 0xFF);
+    }
+
+    @Test(expected = IOException.class)
+    public void testY4mFrameSizeChange() throws IOException {
+        final FrameSink frameSink = new Y4mFrameSink(new ByteArrayOutputStream(), 60);
+        frameSink.writeFrame(PIXELS, 3, 1);
+        frameSink.writeFrame(PIXELS, 1, 3);
+    }
+
+    @Test
+    public void testPngSequence() throws IOException {
+        final File directory = new File(temporaryFolder.getRoot(), "frames");
+        try (FrameSink frameSink = FrameSink.open("png:" + directory.getPath(), 60)) {
+            frameSink.writeFrame(PIXELS, 3, 1);
+            frameSink.writeFrame(PIXELS, 3, 1);
+        }
+
+        assertTrue(new File(directory, "frame-000001.png").isFile());
+        final BufferedImage image = ImageIO.read(new File(directory, "frame-000000.png"));
+        assertEquals(3, image.getWidth());
+        assertEquals(1, image.getHeight());
+        for (int x = 0; x < PIXELS.length; x++) {
+            assertEquals(PIXELS[x], image.getRGB(x, 0));
+        }
+    }
+
+    @Test
+    public void testOpen() throws IOException {
+        final File file = new File(temporaryFolder.getRoot(), "frames.y4m");
+        try (FrameSink frameSink = FrameSink.open("Y4M:" + file.getPath(), 60)) {
+            assertTrue(frameSink instanceof Y4mFrameSink);
+        }
+        assertTrue(file.isFile());
+
+        assertTrue(FrameSink.isStandardOutput("raw:-"));
+        assertFalse(FrameSink.isStandardOutput("raw:frames.rgba"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOpenUnknownFormat() throws IOException {
+        FrameSink.open("gif:frames", 60);
+    }
+}
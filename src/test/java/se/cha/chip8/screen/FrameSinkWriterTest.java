@@ -0,0 +1,102 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class FrameSinkWriterTest {
+
+    @Test
+    public void testFramesWrittenInOrder() {
+        final List<Integer> writtenFrames = new ArrayList<>();
+        final FrameSinkWriter frameSinkWriter = new FrameSinkWriter(new FrameSink() {
+            @Override
+            public void writeFrame(int[] argbPixels, int width, int height) {
+                writtenFrames.add(argbPixels[0]);
+            }
+
+            @Override
+            public void close() {
+            }
+        }, 4);
+
+        final BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB);
+        for (int frame = 0; frame < 100; frame++) {
+            image.setRGB(0, 0, frame);
+            while (!frameSinkWriter.offer(image)) {
+                Thread.yield();
+            }
+        }
+        frameSinkWriter.close();
+
+        assertEquals(100, writtenFrames.size());
+        for (int frame = 0; frame < 100; frame++) {
+            assertEquals(frame, (int) writtenFrames.get(frame));
+        }
+        assertEquals(100, frameSinkWriter.getWrittenFrameCount());
+    }
+
+    @Test
+    public void testSlowSinkDropsFrames() throws InterruptedException {
+        final CountDownLatch sinkBlocked = new CountDownLatch(1);
+        final CountDownLatch releaseSink = new CountDownLatch(1);
+        final FrameSinkWriter frameSinkWriter = new FrameSinkWriter(new FrameSink() {
+            @Override
+            public void writeFrame(int[] argbPixels, int width, int height) {
+                sinkBlocked.countDown();
+                try {
+                    releaseSink.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        }, 2);
+
+        final BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB);
+        assertTrue(frameSinkWriter.offer(image));
+        sinkBlocked.await();
+
+        // One frame in the sink, one queued, the rest dropped without waiting
+        assertTrue(frameSinkWriter.offer(image));
+        for (int frame = 0; frame < 10; frame++) {
+            assertFalse(frameSinkWriter.offer(image));
+        }
+
+        releaseSink.countDown();
+        frameSinkWriter.close();
+        assertEquals(2, frameSinkWriter.getWrittenFrameCount());
+        assertEquals(10, frameSinkWriter.getDroppedFrameCount());
+    }
+
+    @Test
+    public void testFailedSinkDropsFrames() {
+        final FrameSinkWriter frameSinkWriter = new FrameSinkWriter(new FrameSink() {
+            @Override
+            public void writeFrame(int[] argbPixels, int width, int height) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void close() {
+            }
+        }, 2);
+
+        final BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB);
+        frameSinkWriter.offer(image);
+        frameSinkWriter.close();
+
+        assertFalse(frameSinkWriter.offer(image));
+        assertEquals(0, frameSinkWriter.getWrittenFrameCount());
+        assertEquals(2, frameSinkWriter.getDroppedFrameCount());
+    }
+}
@@ -0,0 +1,121 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Renders recorded message sequences (src/test/resources/golden/*.msgpack) and compares frames with golden images.
+ * <p>
+ * Frames are rendered in the original monitor size, and compared scaled down by {@link #GOLDEN_SCALE_DOWN}, with a
+ * {@link PerceptualDiff}. On a mismatch the rendered frame and a diff image are written to target/golden-images.
+ * The render time of every frame is written there too, and summarized on standard output.
+ * <p>
+ * After an intended change of the rendering, write new golden images with {@code mvn test -Dtest=GoldenImageTest -Dgolden.update=true},
+ * and look at them before committing them.
+ */
+public class GoldenImageTest {
+
+    private static final int GOLDEN_SCALE_DOWN = 4;
+    private static final double PIXEL_THRESHOLD = 0.03;
+    // Different pixels allowed, a lit CHIP-8 pixel too many or too few is about 10 pixels
+    private static final int MAX_DIFFERENT_PIXELS = 4;
+
+    private static final File GOLDEN_SOURCE_DIRECTORY = new File("src/test/resources/golden");
+    private static final File OUTPUT_DIRECTORY = new File("target/golden-images");
+
+    private static final Color BRIGHT = new Color(0x33, 0x99, 0x00);
+    private static final Color DARK = new Color(0x07, 0x16, 0x00);
+
+    @Test
+    public void testMonochrome() throws IOException {
+        final Configuration configuration = Configuration.builder()
+                .brightColor(BRIGHT)
+                .darkColor(DARK)
+                .renderThreads(2)
+                .build();
+
+        // Keys 1 and C lit and sound on at frame 20, the ball trail fading in both frames
+        renderAndCompare("monochrome", configuration, 20, 47);
+    }
+
+    @Test
+    public void testXoChipCrtEffects() throws IOException {
+        final Configuration configuration = Configuration.builder()
+                .brightColor(BRIGHT)
+                .darkColor(DARK)
+                .xoChipColors(new Color[]{new Color(0xCC, 0x33, 0x00), new Color(0xFF, 0xCC, 0x33)})
+                .crtEffects(true)
+                .glowStrength(60)
+                .renderThreads(2)
+                .build();
+
+        renderAndCompare("xo-chip", configuration, 23);
+    }
+
+    private void renderAndCompare(String recordingName, Configuration configuration, int... goldenFrames) throws IOException {
+        final List<byte[]> messages = RenderHarness.readRecording("/golden/" + recordingName + ".msgpack");
+        assertTrue("Recording shorter than the golden frames", Arrays.stream(goldenFrames).allMatch(frame -> frame < messages.size()));
+        final RenderHarness harness = new RenderHarness(configuration);
+        OUTPUT_DIRECTORY.mkdirs();
+
+        final StringBuilder failures = new StringBuilder();
+        try {
+            for (int frame = 0; frame < messages.size(); frame++) {
+                final BufferedImage image = harness.renderFrame(messages.get(frame));
+                final int goldenFrame = frame;
+                if (Arrays.stream(goldenFrames).anyMatch(f -> f == goldenFrame)) {
+                    final String failure = compareWithGolden(recordingName + "-" + frame, image);
+                    if (failure != null) {
+                        failures.append(failure).append("\n");
+                    }
+                }
+            }
+        } finally {
+            harness.shutdown();
+        }
+
+        System.out.println(harness.getRenderTimeReport(recordingName));
+        harness.writeRenderTimes(new File(OUTPUT_DIRECTORY, recordingName + "-render-times.csv"));
+
+        assertTrue(failures.toString(), failures.length() == 0);
+    }
+
+    /**
+     * @return a description of the mismatch, or null if the image matches the golden image
+     */
+    private String compareWithGolden(String goldenName, BufferedImage image) throws IOException {
+        final BufferedImage scaledImage = PerceptualDiff.downscale(image, GOLDEN_SCALE_DOWN);
+
+        if (Boolean.getBoolean("golden.update")) {
+            GOLDEN_SOURCE_DIRECTORY.mkdirs();
+            ImageIO.write(scaledImage, "png", new File(GOLDEN_SOURCE_DIRECTORY, goldenName + ".png"));
+            return null;
+        }
+
+        final BufferedImage goldenImage;
+        try (InputStream goldenResource = getClass().getResourceAsStream("/golden/" + goldenName + ".png")) {
+            assertNotNull("No golden image " + goldenName + ".png, write it with -Dgolden.update=true", goldenResource);
+            goldenImage = ImageIO.read(goldenResource);
+        }
+
+        final PerceptualDiff.Result result = new PerceptualDiff(PIXEL_THRESHOLD).compare(goldenImage, scaledImage);
+        if (result.getDifferentPixelCount() <= MAX_DIFFERENT_PIXELS) {
+            return null;
+        }
+
+        ImageIO.write(scaledImage, "png", new File(OUTPUT_DIRECTORY, goldenName + "-actual.png"));
+        ImageIO.write(result.getDiffImage(), "png", new File(OUTPUT_DIRECTORY, goldenName + "-diff.png"));
+        return String.format("%s: %d pixels differ (largest difference %.3f), see %s",
+                goldenName, result.getDifferentPixelCount(), result.getLargestDifference(), new File(OUTPUT_DIRECTORY, goldenName + "-diff.png"));
+    }
+}
@@ -0,0 +1,26 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KernelUdpCountersTest {
+
+    @Test
+    public void testParse() {
+        final List<String> lines = Arrays.asList(
+                "   sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode ref pointer drops            ",
+                "  101: 00000000:270F 00000000:0000 07 00000000:00000300 00:00000000 00000000  1000        0 98765 2 0000000000000000 17        ",
+                "  102: 0100007F:270E 00000000:0000 07 00000000:00000000 00:00000000 00000000  1000        0 98766 2 0000000000000000 5         ",
+                "  103: 00000000000000000000000000000000:270F 00000000000000000000000000000000:0000 07 00000000:00000010 00:00000000 00000000  1000        0 98767 2 0000000000000000 3");
+
+        final KernelUdpCounters counters = KernelUdpCounters.parse(lines, 9999);
+        assertEquals(20, counters.getDrops());
+        assertEquals(0x310, counters.getReceiveQueueBytes());
+
+        assertEquals(0, KernelUdpCounters.parse(lines, 1234).getDrops());
+    }
+}
@@ -0,0 +1,53 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        int previousIndex = -1;
+        for (long value = 0; value < 1 << 20; value += 1 + value / 100) {
+            final int index = LatencyHistogram.bucketIndex(value);
+            assertTrue("Value " + value, index >= previousIndex);
+            assertTrue("Value " + value, LatencyHistogram.bucketLowestValue(index) <= value);
+            assertTrue("Value " + value, LatencyHistogram.bucketHighestValue(index) >= value);
+            // About 3% relative precision
+            assertTrue("Value " + value, LatencyHistogram.bucketHighestValue(index) - LatencyHistogram.bucketLowestValue(index) <= value / 32 + 1);
+            previousIndex = index;
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(millis * 1_000_000L);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMin());
+        assertEquals(100_000_000, histogram.getMax());
+        assertEquals(50_500_000, histogram.getMean(), 1.0);
+        assertEquals(50_000_000, histogram.getValueAtPercentile(50), 50_000_000 * 0.04);
+        assertEquals(99_000_000, histogram.getValueAtPercentile(99), 99_000_000 * 0.04);
+        assertEquals(100_000_000, histogram.getValueAtPercentile(100));
+        assertTrue(histogram.toHistogramText().contains("#"));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testOutOfRange() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getMin());
+        assertTrue(histogram.getValueAtPercentile(100) > 1_000_000_000_000L);
+    }
+}
@@ -0,0 +1,69 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void testPrometheusText() {
+        final Metrics metrics = new Metrics();
+        metrics.frameRendered(2_000_000L);
+        metrics.frameRendered(3_000_000L);
+        metrics.framesSkipped(4);
+        metrics.packetReceived();
+        metrics.packetReceived();
+        metrics.packetDecoded();
+        metrics.packetFailed();
+        metrics.keyPacketSent();
+        metrics.audioUnderrun();
+
+        final String text = metrics.toPrometheusText();
+        assertTrue(text, text.contains("# TYPE chip8_frames_rendered_total counter\nchip8_frames_rendered_total 2\n"));
+        assertTrue(text, text.contains("chip8_compose_seconds_sum 0.005000000\nchip8_compose_seconds_count 2\n"));
+        assertTrue(text, text.contains("chip8_frames_skipped_total 4\n"));
+        assertTrue(text, text.contains("chip8_screens_coalesced_total 0\n"));
+        assertTrue(text, text.contains("chip8_packets_received_total 2\n"));
+        assertTrue(text, text.contains("chip8_packets_decoded_total 1\n"));
+        assertTrue(text, text.contains("chip8_packets_failed_total 1\n"));
+        assertTrue(text, text.contains("chip8_key_packets_sent_total 1\n"));
+        assertTrue(text, text.contains("chip8_audio_underruns_total 1\n"));
+        assertTrue(text, text.contains("\njvm_memory_heap_used_bytes "));
+        assertTrue(text, text.contains("\njvm_gc_collections_total{gc=\""));
+
+        // Every line is a comment or a sample
+        for (String line : text.split("\n")) {
+            assertTrue(line, line.startsWith("# HELP ") || line.startsWith("# TYPE ") || line.matches("[a-z0-9_]+(\\{[^}]*\\})? -?[0-9.]+"));
+        }
+    }
+
+    @Test
+    public void testServer() throws IOException {
+        final Metrics metrics = new Metrics();
+        metrics.packetReceived();
+        final MetricsServer metricsServer = new MetricsServer(metrics, 0);
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + metricsServer.getPort() + "/metrics").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+            final String body;
+            try (InputStream inputStream = connection.getInputStream()) {
+                body = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            assertTrue(body, body.contains("chip8_packets_received_total 1\n"));
+
+            final HttpURLConnection postConnection = (HttpURLConnection) new URL("http://localhost:" + metricsServer.getPort() + "/metrics").openConnection();
+            postConnection.setRequestMethod("POST");
+            assertEquals(405, postConnection.getResponseCode());
+        } finally {
+            metricsServer.stop();
+        }
+    }
+}
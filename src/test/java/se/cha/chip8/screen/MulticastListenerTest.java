@@ -0,0 +1,70 @@
+package se.cha.chip8.screen;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MulticastListenerTest {
+
+    private static final int PORT = 39_999;
+
+    @Test
+    public void testOneSendReachesAllScreens() throws Exception {
+        final NetworkInterface loopback = loopbackInterface();
+        Assume.assumeNotNull(loopback);
+
+        final InetAddress group = InetAddress.getByName("230.0.0.19");
+        final Configuration configuration = Configuration.builder()
+                .listenerPort(PORT)
+                .multicastGroup(group)
+                .multicastInterface(loopback)
+                .build();
+
+        // Two screens on the same host, group and port
+        final BlockingQueue<String> firstReceived = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> secondReceived = new LinkedBlockingQueue<>();
+        final UdpPacketMessageListener firstListener = new UdpPacketMessageListener(data -> firstReceived.add(new String(data, StandardCharsets.US_ASCII)), configuration);
+        final UdpChannelMessageListener secondListener = new UdpChannelMessageListener(data -> secondReceived.add(StandardCharsets.US_ASCII.decode(data).toString()), configuration);
+        final Thread firstThread = new Thread(firstListener);
+        final Thread secondThread = new Thread(secondListener);
+        firstThread.start();
+        secondThread.start();
+
+        try (DatagramChannel sender = DatagramChannel.open(StandardProtocolFamily.INET)) {
+            sender.setOption(StandardSocketOptions.IP_MULTICAST_IF, loopback);
+            sender.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            sender.send(ByteBuffer.wrap("screen".getBytes(StandardCharsets.US_ASCII)), new InetSocketAddress(group, PORT));
+
+            assertEquals("screen", firstReceived.poll(5, TimeUnit.SECONDS));
+            assertEquals("screen", secondReceived.poll(5, TimeUnit.SECONDS));
+        } finally {
+            firstListener.stop();
+            secondListener.stop();
+            firstThread.join(5000);
+            secondThread.join(5000);
+        }
+    }
+
+    private static NetworkInterface loopbackInterface() {
+        try {
+            final NetworkInterface loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+            return ((loopback != null) && loopback.isUp()) ? loopback : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
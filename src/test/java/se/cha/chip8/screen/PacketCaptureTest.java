@@ -0,0 +1,124 @@
+package se.cha.chip8.screen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class PacketCaptureTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final File file = temporaryFolder.newFile("capture.c8cap");
+        final SocketAddress ipv4Source = new InetSocketAddress(InetAddress.getByName("192.168.1.2"), 9998);
+        final SocketAddress ipv6Source = new InetSocketAddress(InetAddress.getByName("::1"), 65535);
+        final long start = System.nanoTime();
+
+        try (PacketCaptureWriter writer = new PacketCaptureWriter(file)) {
+            writer.write(start + 1_000, packet(3, 1), 3, ipv4Source);
+            writer.write(start + 2_000, packet(5, 2), 5, ipv6Source);
+            writer.endBurst();
+            writer.write(start + 3_000, packet(0, 3), 0, null);
+            writer.endBurst();
+            assertEquals(3, writer.getPacketCount());
+        }
+
+        try (PacketCaptureReader reader = new PacketCaptureReader(file)) {
+            assertTrue(reader.next());
+            assertPacket(reader, 3, 1);
+            final long firstTimestamp = reader.getTimestampNanos();
+            assertEquals(ipv4Source, reader.getSource());
+            assertFalse(reader.isEndOfBurst());
+
+            assertTrue(reader.next());
+            assertPacket(reader, 5, 2);
+            assertEquals(ipv6Source, reader.getSource());
+            assertTrue(reader.isEndOfBurst());
+            assertEquals(1_000, reader.getTimestampNanos() - firstTimestamp);
+
+            assertTrue(reader.next());
+            assertPacket(reader, 0, 3);
+            assertNull(reader.getSource());
+            assertTrue(reader.isEndOfBurst());
+
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void testRecordsAcrossChunks() throws IOException {
+        final File file = temporaryFolder.newFile("capture.c8cap");
+        final int packetSize = 60_000;
+        final int packetCount = PacketCaptureWriter.CHUNK_SIZE / packetSize + 10;
+
+        try (PacketCaptureWriter writer = new PacketCaptureWriter(file)) {
+            for (int i = 0; i < packetCount; i++) {
+                writer.write(System.nanoTime(), packet(packetSize, i), packetSize, null);
+            }
+        }
+        assertTrue(file.length() > PacketCaptureWriter.CHUNK_SIZE);
+
+        try (PacketCaptureReader reader = new PacketCaptureReader(file)) {
+            for (int i = 0; i < packetCount; i++) {
+                assertTrue("Packet " + i, reader.next());
+                assertPacket(reader, packetSize, i);
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void testReadCaptureNotClosed() throws IOException {
+        final File file = temporaryFolder.newFile("capture.c8cap");
+
+        // Like a capturing process that died, the file is not truncated
+        final PacketCaptureWriter writer = new PacketCaptureWriter(file);
+        writer.write(System.nanoTime(), packet(10, 1), 10, null);
+        writer.write(System.nanoTime(), packet(10, 2), 10, null);
+        assertEquals(PacketCaptureWriter.CHUNK_SIZE, file.length());
+
+        try (PacketCaptureReader reader = new PacketCaptureReader(file)) {
+            assertTrue(reader.next());
+            assertPacket(reader, 10, 1);
+            assertTrue(reader.next());
+            assertPacket(reader, 10, 2);
+            assertFalse(reader.next());
+        }
+        writer.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotACaptureFile() throws IOException {
+        new PacketCaptureReader(temporaryFolder.newFile("empty"));
+    }
+
+    /**
+     * A packet of the given length with bytes counting up from the seed, left with its position at the end like a received packet.
+     */
+    private static ByteBuffer packet(int length, int seed) {
+        final ByteBuffer packet = ByteBuffer.allocate(length + 1);
+        for (int i = 0; i < length; i++) {
+            packet.put((byte) (seed + i));
+        }
+        return packet;
+    }
+
+    private static void assertPacket(PacketCaptureReader reader, int length, int seed) {
+        final ByteBuffer data = reader.getData();
+        assertEquals(length, data.remaining());
+        for (int i = 0; i < length; i++) {
+            assertEquals((byte) (seed + i), data.get(data.position() + i));
+        }
+    }
+}
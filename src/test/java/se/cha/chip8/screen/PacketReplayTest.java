@@ -0,0 +1,75 @@
+package se.cha.chip8.screen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PacketReplayTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testBurstsReplayed() throws IOException {
+        final File file = capture(new int[][]{{1, 2, 3}, {4}, {5, 6}}, 0);
+        final List<String> events = new ArrayList<>();
+
+        final PacketReplay packetReplay = new PacketReplay(file, PacketReplay.AS_FAST_AS_POSSIBLE, new UdpChannelMessageListener.UDPPacketBufferProcessor() {
+            @Override
+            public void onPacketReceived(ByteBuffer data) {
+                events.add(Byte.toString(data.get(data.position())));
+            }
+
+            @Override
+            public void onPacketsDrained() {
+                events.add("|");
+            }
+        });
+        packetReplay.run();
+
+        assertEquals("[1, 2, 3, |, 4, |, 5, 6, |]", events.toString());
+        assertEquals(6, packetReplay.getPacketCount());
+        assertEquals(3, packetReplay.getBurstLatencies().getCount());
+    }
+
+    @Test
+    public void testReplaySpeed() throws IOException {
+        // Five bursts, 50 ms apart
+        final File file = capture(new int[][]{{1}, {2}, {3}, {4}, {5}}, 50_000_000L);
+        final UdpChannelMessageListener.UDPPacketBufferProcessor processor = data -> {
+        };
+
+        final long start = System.nanoTime();
+        new PacketReplay(file, 2.0, processor).run();
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // 200 ms captured, replayed in 100 ms
+        assertTrue("Elapsed " + elapsedMillis + " ms", elapsedMillis >= 95);
+        assertTrue("Elapsed " + elapsedMillis + " ms", elapsedMillis < 190);
+    }
+
+    /**
+     * Capture one byte packets, in bursts the given time apart.
+     */
+    private File capture(int[][] bursts, long burstIntervalNanos) throws IOException {
+        final File file = temporaryFolder.newFile();
+        final long start = System.nanoTime();
+        try (PacketCaptureWriter writer = new PacketCaptureWriter(file)) {
+            for (int burst = 0; burst < bursts.length; burst++) {
+                for (int packet : bursts[burst]) {
+                    writer.write(start + burst * burstIntervalNanos, ByteBuffer.wrap(new byte[]{(byte) packet}), 1, null);
+                }
+                writer.endBurst();
+            }
+        }
+        return file;
+    }
+}
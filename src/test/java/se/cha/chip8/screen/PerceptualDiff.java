@@ -0,0 +1,157 @@
+package se.cha.chip8.screen;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Compares images the way they look, not bit by bit. The difference of two pixels is their distance in the YIQ color
+ * space, weighted for how sensitive the eye is to brightness and color differences (Kotsarenko and Ramos, "Measuring
+ * perceived color difference using YIQ NTSC transmission color space"). Pixels more different than a threshold are counted.
+ * Alpha is ignored, the compared images are opaque.
+ */
+class PerceptualDiff {
+
+    // Largest possible YIQ difference, black to white
+    private static final double MAX_DELTA = 35215.0;
+
+    private final double maxDelta;
+
+    /**
+     * @param threshold how different two pixels may be before they are counted, 0 (identical) to 1 (black and white),
+     *                  0.1 is hard to see
+     */
+    PerceptualDiff(double threshold) {
+        maxDelta = MAX_DELTA * threshold * threshold;
+    }
+
+    /**
+     * Compare two images of the same size.
+     */
+    Result compare(BufferedImage expected, BufferedImage actual) {
+        if ((expected.getWidth() != actual.getWidth()) || (expected.getHeight() != actual.getHeight())) {
+            throw new IllegalArgumentException("Image size " + actual.getWidth() + "x" + actual.getHeight() + " differs from "
+                    + expected.getWidth() + "x" + expected.getHeight() + ".");
+        }
+
+        final int width = expected.getWidth();
+        final int height = expected.getHeight();
+        final int[] expectedPixels = expected.getRGB(0, 0, width, height, null, 0, width);
+        final int[] actualPixels = actual.getRGB(0, 0, width, height, null, 0, width);
+        final BufferedImage diffImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        int differentPixelCount = 0;
+        double largestDelta = 0.0;
+        for (int i = 0; i < expectedPixels.length; i++) {
+            final double delta = colorDelta(expectedPixels[i], actualPixels[i]);
+            largestDelta = Math.max(largestDelta, delta);
+
+            final int diffPixel;
+            if (delta > maxDelta) {
+                differentPixelCount++;
+                diffPixel = 0xFF0000;
+            } else {
+                // Faded expected image, for orientation
+                final int gray = 0xC0 + (int) (yiqY(expectedPixels[i]) / 4);
+                diffPixel = (gray << 16) | (gray << 8) | gray;
+            }
+            diffImage.setRGB(i % width, i / width, diffPixel);
+        }
+
+        return new Result(differentPixelCount, Math.sqrt(largestDelta / MAX_DELTA), diffImage);
+    }
+
+    static double colorDelta(int rgb1, int rgb2) {
+        if (((rgb1 ^ rgb2) & 0xFFFFFF) == 0) {
+            return 0.0;
+        }
+
+        final double y = yiqY(rgb1) - yiqY(rgb2);
+        final double i = yiqI(rgb1) - yiqI(rgb2);
+        final double q = yiqQ(rgb1) - yiqQ(rgb2);
+        return 0.5053 * y * y + 0.299 * i * i + 0.1957 * q * q;
+    }
+
+    private static double yiqY(int rgb) {
+        return red(rgb) * 0.29889531 + green(rgb) * 0.58662247 + blue(rgb) * 0.11448223;
+    }
+
+    private static double yiqI(int rgb) {
+        return red(rgb) * 0.59597799 - green(rgb) * 0.27417610 - blue(rgb) * 0.32180189;
+    }
+
+    private static double yiqQ(int rgb) {
+        return red(rgb) * 0.21147017 - green(rgb) * 0.52261711 + blue(rgb) * 0.31114694;
+    }
+
+    private static int red(int rgb) {
+        return (rgb >> 16) & 0xFF;
+    }
+
+    private static int green(int rgb) {
+        return (rgb >> 8) & 0xFF;
+    }
+
+    private static int blue(int rgb) {
+        return rgb & 0xFF;
+    }
+
+    /**
+     * Scale an image down by averaging blocks of {@code factor} x {@code factor} pixels.
+     * The differences of single pixels are smoothed out, but anything the size of a block or larger remains.
+     */
+    static BufferedImage downscale(BufferedImage image, int factor) {
+        final int width = image.getWidth() / factor;
+        final int height = image.getHeight() / factor;
+        final int[] pixels = image.getRGB(0, 0, width * factor, height * factor, null, 0, width * factor);
+        final BufferedImage scaledImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                for (int by = 0; by < factor; by++) {
+                    for (int bx = 0; bx < factor; bx++) {
+                        final int rgb = pixels[(y * factor + by) * width * factor + x * factor + bx];
+                        red += red(rgb);
+                        green += green(rgb);
+                        blue += blue(rgb);
+                    }
+                }
+                final int blockSize = factor * factor;
+                scaledImage.setRGB(x, y, ((red / blockSize) << 16) | ((green / blockSize) << 8) | (blue / blockSize));
+            }
+        }
+
+        return scaledImage;
+    }
+
+    static class Result {
+        private final int differentPixelCount;
+        private final double largestDifference;
+        private final BufferedImage diffImage;
+
+        Result(int differentPixelCount, double largestDifference, BufferedImage diffImage) {
+            this.differentPixelCount = differentPixelCount;
+            this.largestDifference = largestDifference;
+            this.diffImage = diffImage;
+        }
+
+        int getDifferentPixelCount() {
+            return differentPixelCount;
+        }
+
+        /**
+         * The largest difference of any pixel, 0 to 1 like the threshold.
+         */
+        double getLargestDifference() {
+            return largestDifference;
+        }
+
+        /**
+         * The expected image faded, with the pixels counted as different in red.
+         */
+        BufferedImage getDiffImage() {
+            return diffImage;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package se.cha.chip8.screen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of a received peripheral state message, as done by UdpDataProcessor for every packet.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// Opened like in the jar manifest, so direct buffers are decoded in place
+@Fork(value = 1, jvmArgsAppend = {"--add-opens=java.base/java.nio=ALL-UNNAMED", "--add-opens=java.base/sun.nio.ch=ALL-UNNAMED"})
+@State(Scope.Thread)
+public class PeripheralStateDecodeBenchmark {
+
+    @Param({"64x32", "128x64"})
+    public String screenSize;
+
+    private final PeripheralStateDecoder streamingDecoder = new StreamingPeripheralStateDecoder();
+    private final PeripheralStateDecoder jacksonDecoder = new JacksonPeripheralStateDecoder();
+
+    private byte[] message;
+    private ByteBuffer directMessage;
+
+    @Setup
+    public void setup() throws IOException {
+        final int width = Integer.parseInt(screenSize.substring(0, screenSize.indexOf('x')));
+        final int height = Integer.parseInt(screenSize.substring(screenSize.indexOf('x') + 1));
+
+        final PeripheralState peripheralState = new PeripheralState();
+        peripheralState.setSound(true);
+        peripheralState.setKeys(0x0421);
+        peripheralState.setScreen(new byte[width * height / 8]);
+        new Random(42).nextBytes(peripheralState.getScreen());
+        peripheralState.setScreenWidth(width);
+        peripheralState.setScreenHeight(height);
+
+        message = new ObjectMapper(new MessagePackFactory()).writeValueAsBytes(peripheralState);
+        directMessage = ByteBuffer.allocateDirect(message.length);
+        directMessage.put(message).flip();
+        directMessage = directMessage.asReadOnlyBuffer();
+    }
+
+    @Benchmark
+    public PeripheralState streaming() throws IOException {
+        return streamingDecoder.decode(message, 0, message.length);
+    }
+
+    @Benchmark
+    public PeripheralState streamingDirectBuffer() throws IOException {
+        return streamingDecoder.decode(directMessage);
+    }
+
+    @Benchmark
+    public PeripheralState jackson() throws IOException {
+        return jacksonDecoder.decode(message, 0, message.length);
+    }
+}
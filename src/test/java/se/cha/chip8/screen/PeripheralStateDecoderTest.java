@@ -0,0 +1,239 @@
+package se.cha.chip8.screen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PeripheralStateDecoderTest {
+
+    private final PeripheralStateDecoder streamingDecoder = new StreamingPeripheralStateDecoder();
+    private final PeripheralStateDecoder jacksonDecoder = new JacksonPeripheralStateDecoder();
+
+    @Test
+    public void testBinaryScreen() throws IOException {
+        final byte[] screen = randomScreen(256);
+
+        final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packMapHeader(5);
+        packer.packString("sound").packBoolean(true);
+        packer.packString("keys").packInt(0xA05F);
+        packer.packString("screen").packBinaryHeader(screen.length).writePayload(screen);
+        packer.packString("screenWidth").packInt(64);
+        packer.packString("screenHeight").packInt(32);
+        packer.close();
+
+        final PeripheralState state = assertSameResult(packer.toByteArray());
+        assertTrue(state.isSound());
+        assertEquals(0xA05F, state.getKeys());
+        assertArrayEquals(screen, state.getScreen());
+        assertEquals(64, state.getScreenWidth());
+        assertEquals(32, state.getScreenHeight());
+    }
+
+    @Test
+    public void testIntegerArrayScreen() throws IOException {
+        final byte[] screen = randomScreen(256);
+
+        final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packMapHeader(5);
+        packer.packString("screenHeight").packInt(32);
+        packer.packString("screen").packArrayHeader(screen.length);
+        for (byte screenByte : screen) {
+            packer.packInt(screenByte & 0xFF);
+        }
+        packer.packString("keys").packInt(0);
+        packer.packString("sound").packBoolean(false);
+        packer.packString("screenWidth").packInt(64);
+        packer.close();
+
+        final PeripheralState state = assertSameResult(packer.toByteArray());
+        assertArrayEquals(screen, state.getScreen());
+    }
+
+    @Test
+    public void testNoScreen() throws IOException {
+        final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packMapHeader(2);
+        packer.packString("sound").packBoolean(true);
+        packer.packString("keys").packInt(0x0010);
+        packer.close();
+
+        final PeripheralState state = assertSameResult(packer.toByteArray());
+        assertNull(state.getScreen());
+        assertEquals(0x0010, state.getKeys());
+    }
+
+    @Test
+    public void testJacksonEncodedState() throws IOException {
+        final PeripheralState expected = new PeripheralState();
+        expected.setSound(true);
+        expected.setKeys(0xFFFF);
+        expected.setScreen(randomScreen(256));
+        expected.setScreenWidth(64);
+        expected.setScreenHeight(32);
+
+        final byte[] data = new ObjectMapper(new MessagePackFactory()).writeValueAsBytes(expected);
+
+        assertEquals(expected, assertSameResult(data));
+    }
+
+    @Test
+    public void testXoChipScreen() throws IOException {
+        final PeripheralState expected = new PeripheralState();
+        expected.setScreen(randomScreen(2 * 128 * 64 / 8));
+        expected.setScreenWidth(128);
+        expected.setScreenHeight(64);
+        expected.setScreenPlanes(2);
+
+        final byte[] data = new ObjectMapper(new MessagePackFactory()).writeValueAsBytes(expected);
+
+        assertEquals(expected, assertSameResult(data));
+    }
+
+    @Test
+    public void testScreenDelta() throws IOException {
+        final PeripheralState expected = new PeripheralState();
+        expected.setSequence(0xFFFFFFF0L);
+        expected.setScreenDelta(new byte[]{3, 2, 1, 0x7F});
+
+        final byte[] data = new ObjectMapper(new MessagePackFactory()).writeValueAsBytes(expected);
+
+        assertEquals(expected, assertSameResult(data));
+    }
+
+    @Test
+    public void testScreenDeltasOfVaryingSize() throws IOException {
+        final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+        for (int size : new int[]{300, 4, 0, 2048, 19}) {
+            final PeripheralState expected = new PeripheralState();
+            expected.setSequence(size);
+            expected.setScreenDelta(randomScreen(size));
+
+            final PeripheralState state = assertSameResult(objectMapper.writeValueAsBytes(expected));
+            assertEquals(expected, state);
+            assertEquals(size, state.getScreenDeltaLength());
+            assertArrayEquals(expected.getScreenDelta(), Arrays.copyOf(state.getScreenDelta(), state.getScreenDeltaLength()));
+        }
+    }
+
+    @Test
+    public void testForgedScreenSizeRejected() throws IOException {
+        // 17 bytes claiming almost 2 GB of screen
+        final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packMapHeader(1);
+        packer.packString("screen").packBinaryHeader(0x7FF00000).writePayload(new byte[4]);
+        packer.close();
+        final byte[] forged = packer.toByteArray();
+        assertEquals(17, forged.length);
+
+        // Longer than any delta, though the message is long enough
+        final MessageBufferPacker deltaPacker = MessagePack.newDefaultBufferPacker();
+        deltaPacker.packMapHeader(1);
+        deltaPacker.packString("screenDelta").packArrayHeader(ScreenFrameAssembler.MAX_DELTA_BYTES + 1);
+        for (int i = 0; i <= ScreenFrameAssembler.MAX_DELTA_BYTES; i++) {
+            deltaPacker.packInt(0);
+        }
+        deltaPacker.close();
+
+        for (byte[] data : new byte[][]{forged, deltaPacker.toByteArray()}) {
+            for (PeripheralStateDecoder decoder : new PeripheralStateDecoder[]{streamingDecoder, new FallbackPeripheralStateDecoder()}) {
+                try {
+                    decoder.decode(data, 0, data.length);
+                    fail("Forged screen size decoded by " + decoder.getClass().getSimpleName());
+                } catch (PeripheralStateDecoder.InvalidMessageException e) {
+                    // Rejected before allocating
+                }
+                try {
+                    final ByteBuffer directBuffer = ByteBuffer.allocateDirect(data.length);
+                    directBuffer.put(data).flip();
+                    decoder.decode(directBuffer);
+                    fail("Forged screen size decoded by " + decoder.getClass().getSimpleName());
+                } catch (PeripheralStateDecoder.InvalidMessageException e) {
+                    // Rejected before allocating
+                }
+            }
+        }
+
+        // The decoder is fine for the next message, and for a delta of every row of the largest screen
+        testScreenDelta();
+        final PeripheralState expected = new PeripheralState();
+        expected.setSequence(1);
+        expected.setScreenDelta(randomScreen(ScreenFrameAssembler.MAX_DELTA_BYTES));
+        assertEquals(expected, assertSameResult(new ObjectMapper(new MessagePackFactory()).writeValueAsBytes(expected)));
+    }
+
+    @Test
+    public void testSession() throws IOException {
+        final PeripheralState expected = new PeripheralState();
+        expected.setKeys(0x0010);
+        expected.setSession(0xFFFFFFFEL);
+
+        final byte[] data = new ObjectMapper(new MessagePackFactory()).writeValueAsBytes(expected);
+
+        assertEquals(expected, assertSameResult(data));
+    }
+
+    @Test
+    public void testReusedDecoder() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            testBinaryScreen();
+            testNoScreen();
+            testIntegerArrayScreen();
+            testScreenDelta();
+            testSession();
+        }
+    }
+
+    @Test
+    public void testByteBuffers() throws IOException {
+        final PeripheralState expected = new PeripheralState();
+        expected.setKeys(0x1234);
+        expected.setScreen(randomScreen(256));
+        expected.setScreenWidth(64);
+        expected.setScreenHeight(32);
+        final byte[] data = new ObjectMapper(new MessagePackFactory()).writeValueAsBytes(expected);
+
+        final ByteBuffer directBuffer = ByteBuffer.allocateDirect(1024);
+        directBuffer.position(7);
+        directBuffer.put(data);
+        directBuffer.flip().position(7);
+
+        final ByteBuffer heapBuffer = ByteBuffer.allocate(1024);
+        heapBuffer.position(7);
+        heapBuffer.put(data);
+        heapBuffer.flip().position(7);
+
+        for (ByteBuffer buffer : new ByteBuffer[]{directBuffer, directBuffer.asReadOnlyBuffer(), heapBuffer, heapBuffer.asReadOnlyBuffer()}) {
+            assertEquals(expected, streamingDecoder.decode(buffer));
+            assertEquals(expected, jacksonDecoder.decode(buffer));
+            assertEquals(7, buffer.position());
+        }
+    }
+
+    private PeripheralState assertSameResult(byte[] data) throws IOException {
+        // Decode with offset to make sure offset and length are respected
+        final byte[] paddedData = new byte[data.length + 6];
+        System.arraycopy(data, 0, paddedData, 3, data.length);
+
+        final PeripheralState jacksonState = jacksonDecoder.decode(paddedData, 3, data.length);
+        final PeripheralState streamingState = streamingDecoder.decode(paddedData, 3, data.length);
+
+        assertEquals(jacksonState, streamingState);
+        return streamingState;
+    }
+
+    private static byte[] randomScreen(int size) {
+        final byte[] screen = new byte[size];
+        new Random(size).nextBytes(screen);
+        return screen;
+    }
+}
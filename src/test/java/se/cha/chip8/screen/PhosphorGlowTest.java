@@ -0,0 +1,71 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PhosphorGlowTest {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 120;
+    private static final int DARK = 0xFF081800;
+    private static final int LIT = 0xFF339900;
+
+    @Test
+    public void testNoGlow() {
+        final int[] phosphorData = litBlockPicture();
+
+        final PhosphorGlow phosphorGlow = new PhosphorGlow(WIDTH, HEIGHT, 30, 0, PostProcessingPipeline.singleThreaded());
+        phosphorGlow.render(phosphorData);
+
+        assertArrayEquals(rgb(phosphorData), imageData(phosphorGlow));
+    }
+
+    @Test
+    public void testGlowAroundLitPixels() {
+        final int[] phosphorData = litBlockPicture();
+
+        final PhosphorGlow phosphorGlow = new PhosphorGlow(WIDTH, HEIGHT, 30, 50, PostProcessingPipeline.singleThreaded());
+        phosphorGlow.render(phosphorData);
+        final int[] glowData = imageData(phosphorGlow);
+
+        // Glow around the lit block, fading with the distance, and no glow far away from it
+        assertTrue(green(glowData[60 * WIDTH + 100]) > green(glowData[60 * WIDTH + 110]));
+        final int nextToBlock = green(glowData[60 * WIDTH + 110]);
+        final int awayFromBlock = green(glowData[60 * WIDTH + 120]);
+        assertTrue(nextToBlock > awayFromBlock);
+        assertTrue(awayFromBlock > green(DARK));
+        assertEquals(green(DARK), green(glowData[5 * WIDTH + 5]));
+    }
+
+    /**
+     * A dark picture with a lit 20 x 20 block in the middle.
+     */
+    private static int[] litBlockPicture() {
+        final int[] phosphorData = new int[WIDTH * HEIGHT];
+        Arrays.fill(phosphorData, DARK);
+        for (int y = 50; y < 70; y++) {
+            Arrays.fill(phosphorData, y * WIDTH + 90, y * WIDTH + 110, LIT);
+        }
+        return phosphorData;
+    }
+
+    private static int[] imageData(PhosphorGlow phosphorGlow) {
+        return ((DataBufferInt) phosphorGlow.getImage().getRaster().getDataBuffer()).getData();
+    }
+
+    private static int[] rgb(int[] pixels) {
+        final int[] rgb = new int[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            rgb[i] = pixels[i] & 0x00FFFFFF;
+        }
+        return rgb;
+    }
+
+    private static int green(int pixel) {
+        return (pixel >>> 8) & 0xFF;
+    }
+}
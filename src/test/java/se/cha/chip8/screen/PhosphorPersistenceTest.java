@@ -0,0 +1,98 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.awt.*;
+
+import static org.junit.Assert.*;
+
+public class PhosphorPersistenceTest {
+
+    private static final int LIT = 1;
+    private static final int UNLIT = 0;
+
+    @Test
+    public void testExponentialDecay() {
+        final PhosphorPersistence phosphor = new PhosphorPersistence(PhosphorPersistence.DecayCurve.EXPONENTIAL, 100, 60);
+        final int[] pixels = {LIT, UNLIT};
+
+        assertTrue(phosphor.update(pixels, 2, 1));
+        assertEquals(PhosphorPersistence.MAX_INTENSITY, phosphor.getIntensity()[0]);
+        assertEquals(0, phosphor.getIntensity()[1]);
+        assertEquals(1, phosphor.getChangedPixelCount());
+
+        // 100 ms at 60 fps is 6 frames to fade to 10%
+        pixels[0] = UNLIT;
+        for (int frame = 0; frame < 6; frame++) {
+            assertTrue(phosphor.update(pixels, 2, 1));
+        }
+        assertTrue(phosphor.getIntensity()[0] <= PhosphorPersistence.MAX_INTENSITY / 10);
+        assertTrue(phosphor.getIntensity()[0] > 0);
+
+        // Decay always ends at zero, and then nothing changes
+        int frames = 0;
+        while (phosphor.update(pixels, 2, 1)) {
+            frames++;
+            assertTrue(frames < 100);
+        }
+        assertEquals(0, phosphor.getIntensity()[0]);
+        assertEquals(0, phosphor.getChangedPixelCount());
+    }
+
+    @Test
+    public void testLinearDecay() {
+        final PhosphorPersistence phosphor = new PhosphorPersistence(PhosphorPersistence.DecayCurve.LINEAR, 1000, 10);
+        final int[] pixels = {LIT};
+        phosphor.update(pixels, 1, 1);
+
+        pixels[0] = UNLIT;
+        phosphor.update(pixels, 1, 1);
+        final int step = PhosphorPersistence.MAX_INTENSITY - phosphor.getIntensity()[0];
+        phosphor.update(pixels, 1, 1);
+        assertEquals(PhosphorPersistence.MAX_INTENSITY - 2 * step, phosphor.getIntensity()[0]);
+    }
+
+    @Test
+    public void testUpscaledBlocks() {
+        final PhosphorPersistence phosphor = new PhosphorPersistence(PhosphorPersistence.DecayCurve.EXPONENTIAL, 100, 60);
+        final PhosphorUpscaler upscaler = new PhosphorUpscaler(30, 30, new Rectangle(5, 5, 20, 10), new Color[]{Color.BLACK, Color.GREEN});
+
+        phosphor.update(new int[]{LIT, UNLIT, UNLIT, LIT}, 2, 2);
+        upscaler.render(phosphor);
+
+        final int lit = upscaler.getImage().getRGB(11, 7); // Pixel (0, 0), not a scanline row
+        final int unlit = upscaler.getImage().getRGB(16, 7); // Pixel (1, 0)
+        assertNotEquals(lit, unlit);
+        assertEquals(Color.BLACK.getRGB(), unlit);
+        assertEquals(Color.BLACK.getRGB(), upscaler.getImage().getRGB(4, 4)); // Background
+        assertEquals(lit, upscaler.getImage().getRGB(24, 14)); // Pixel (1, 1)
+        assertEquals(Color.BLACK.getRGB(), upscaler.getImage().getRGB(25, 14)); // Background
+
+        // Scanline rows are darker
+        final int scanline = upscaler.getImage().getRGB(11, 6);
+        assertTrue((scanline & 0xFF00) < (lit & 0xFF00));
+    }
+
+    @Test
+    public void testPaletteColors() {
+        final PhosphorPersistence phosphor = new PhosphorPersistence(PhosphorPersistence.DecayCurve.EXPONENTIAL, 100, 60);
+        final PhosphorUpscaler upscaler = new PhosphorUpscaler(2, 1, new Rectangle(0, 0, 2, 1), new Color[]{Color.BLACK, Color.GREEN, Color.RED, Color.BLUE});
+
+        phosphor.update(new int[]{2, 3}, 2, 1);
+        upscaler.render(phosphor);
+        assertEquals(0, upscaler.getImage().getRGB(0, 0) & 0x00FF00); // Row 0 is a scanline row, dimmer but in the same color
+        assertTrue((upscaler.getImage().getRGB(0, 0) & 0xFF0000) > 0);
+        assertTrue((upscaler.getImage().getRGB(1, 0) & 0x0000FF) > 0);
+
+        // A lit pixel changing color is a change, an unlit pixel fades in the color it was lit with
+        assertTrue(phosphor.update(new int[]{1, 0}, 2, 1));
+        assertEquals(1, phosphor.getColor()[0]);
+        assertEquals(3, phosphor.getColor()[1]);
+        assertTrue(phosphor.getIntensity()[1] < PhosphorPersistence.MAX_INTENSITY);
+
+        // Still lit in the same color, only the fading pixel changes
+        assertTrue(phosphor.update(new int[]{1, 0}, 2, 1));
+        assertEquals(1, phosphor.getChangedPixelCount());
+        assertEquals(1, phosphor.getChangedPixels()[0]);
+    }
+}
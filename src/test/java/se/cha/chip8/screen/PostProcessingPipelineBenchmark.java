@@ -0,0 +1,66 @@
+package se.cha.chip8.screen;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Post-processing stages at 4K resolution, over the number of pipeline threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PostProcessingPipelineBenchmark {
+
+    private static final int WIDTH = 3840;
+    private static final int HEIGHT = 2160;
+
+    @Param({"1", "2", "4", "8"})
+    public int renderThreads;
+
+    private PostProcessingPipeline pipeline;
+    private PhosphorGlow phosphorGlow;
+    private int[] phosphorData;
+    private int[] overlayData;
+    private int[] imageData;
+
+    @Setup
+    public void setup() {
+        pipeline = new PostProcessingPipeline(renderThreads);
+        phosphorGlow = new PhosphorGlow(WIDTH, HEIGHT, 120, 30, pipeline);
+
+        final Random random = new Random(42);
+        phosphorData = new int[WIDTH * HEIGHT];
+        overlayData = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < phosphorData.length; i++) {
+            phosphorData[i] = random.nextBoolean() ? 0xFF339900 : 0xFF081800;
+            overlayData[i] = random.nextInt();
+        }
+        imageData = new int[WIDTH * HEIGHT];
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Benchmark
+    public int[] glow() {
+        phosphorGlow.render(phosphorData);
+        return phosphorGlow.getImageData();
+    }
+
+    @Benchmark
+    public int[] composite() {
+        pipeline.run(HEIGHT, (from, to) -> {
+            for (int i = from * WIDTH; i < to * WIDTH; i++) {
+                imageData[i] = Pixels.over(overlayData[i], phosphorData[i]);
+            }
+        });
+        return imageData;
+    }
+}
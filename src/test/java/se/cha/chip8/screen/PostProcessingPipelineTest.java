@@ -0,0 +1,77 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+public class PostProcessingPipelineTest {
+
+    @Test
+    public void testEveryIndexProcessedOnce() {
+        final PostProcessingPipeline pipeline = new PostProcessingPipeline(4);
+        for (int size : new int[]{0, 1, 8, 9, 100, 1071}) {
+            final AtomicIntegerArray processed = new AtomicIntegerArray(size);
+            pipeline.run(size, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    processed.incrementAndGet(i);
+                }
+            });
+
+            for (int i = 0; i < size; i++) {
+                assertEquals("index " + i + " of " + size, 1, processed.get(i));
+            }
+        }
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void testSingleThreadedOneStripeOnCallingThread() {
+        final Thread callingThread = Thread.currentThread();
+        final int[] stripes = new int[1];
+
+        PostProcessingPipeline.singleThreaded().run(1000, (from, to) -> {
+            assertSame(callingThread, Thread.currentThread());
+            assertEquals(0, from);
+            assertEquals(1000, to);
+            stripes[0]++;
+        });
+
+        assertEquals(1, stripes[0]);
+    }
+
+    @Test
+    public void testParallelCompositionSameAsSingleThreaded() {
+        final int[] singleThreadedImage = composeRandomScreens(1);
+        final int[] parallelImage = composeRandomScreens(4);
+
+        assertTrue(Arrays.equals(singleThreadedImage, parallelImage));
+    }
+
+    private static int[] composeRandomScreens(int renderThreads) {
+        final Configuration configuration = Configuration.builder()
+                .brightColor(new Color(0x33, 0x99, 0x00))
+                .darkColor(new Color(0x08, 0x18, 0x00, 0x40))
+                .glowStrength(30)
+                .renderThreads(renderThreads)
+                .build();
+        final CrtComposer crtComposer = new CrtComposer(configuration);
+
+        final Random random = new Random(64);
+        final int[] screen = new int[64 * 32];
+        for (int frame = 0; frame < 3; frame++) {
+            for (int i = 0; i < screen.length; i++) {
+                screen[i] = random.nextBoolean() ? 1 : 0;
+            }
+            crtComposer.updatePhosphor(screen, 64, 32);
+            crtComposer.compose(random.nextInt(0x10000), random.nextBoolean());
+        }
+
+        crtComposer.shutdown();
+        return crtComposer.getImage().getRGB(0, 0, crtComposer.getImage().getWidth(), crtComposer.getImage().getHeight(), null, 0, crtComposer.getImage().getWidth());
+    }
+}
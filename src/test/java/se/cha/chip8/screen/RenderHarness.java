@@ -0,0 +1,115 @@
+package se.cha.chip8.screen;
+
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Renders recorded CHIP-8 state messages headless, through the same pipeline as the screen; decoding, packet coalescing,
+ * unpacking, phosphor, glow, CRT effects, bezel and lights. One frame is rendered per message, like an emulator sending
+ * a message per frame, and the render time of every frame is recorded.
+ * <p>
+ * A recording is the messages back to back, each message a 4 byte (big endian) length followed by the MsgPack message.
+ */
+class RenderHarness {
+
+    private final ScreenState screenState = new ScreenState(new ScreenUnpacker(), () -> {
+    });
+    private final UdpDataProcessor processor = new UdpDataProcessor(screenState, false);
+    private final CrtComposer crtComposer;
+    private final List<Long> renderTimes = new ArrayList<>();
+
+    RenderHarness(Configuration configuration) {
+        crtComposer = new CrtComposer(configuration);
+    }
+
+    static List<byte[]> readRecording(String resourceName) throws IOException {
+        final InputStream resource = RenderHarness.class.getResourceAsStream(resourceName);
+        if (resource == null) {
+            throw new IOException("No recording " + resourceName);
+        }
+
+        final List<byte[]> messages = new ArrayList<>();
+        try (DataInputStream input = new DataInputStream(resource)) {
+            while (true) {
+                final int length;
+                try {
+                    length = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                final byte[] message = new byte[length];
+                input.readFully(message);
+                messages.add(message);
+            }
+        }
+
+        return messages;
+    }
+
+    /**
+     * Receive a message, as one burst of packets, and render a frame.
+     *
+     * @return the rendered frame, valid until the next frame is rendered
+     */
+    BufferedImage renderFrame(byte[] message) {
+        processor.onPacketReceived(message);
+        processor.onPacketsDrained();
+        screenState.takeRenderRequest();
+
+        final long start = System.nanoTime();
+        crtComposer.render(screenState);
+        renderTimes.add(System.nanoTime() - start);
+
+        return crtComposer.getImage();
+    }
+
+    /**
+     * Render time statistics of the frames rendered.
+     */
+    String getRenderTimeReport(String name) {
+        final long[] sortedTimes = renderTimes.stream().mapToLong(Long::longValue).sorted().toArray();
+        final double totalMillis = Arrays.stream(sortedTimes).sum() / 1_000_000.0;
+
+        return String.format("Render time %s: %d frames, avg %.3f ms, p50 %.3f ms, p95 %.3f ms, max %.3f ms (first frame %.3f ms)",
+                name,
+                sortedTimes.length,
+                (sortedTimes.length > 0) ? totalMillis / sortedTimes.length : 0.0,
+                percentileMillis(sortedTimes, 0.50),
+                percentileMillis(sortedTimes, 0.95),
+                percentileMillis(sortedTimes, 1.0),
+                renderTimes.isEmpty() ? 0.0 : renderTimes.get(0) / 1_000_000.0);
+    }
+
+    private static double percentileMillis(long[] sortedTimes, double percentile) {
+        if (sortedTimes.length == 0) {
+            return 0.0;
+        }
+
+        final int index = (int) Math.ceil(percentile * sortedTimes.length) - 1;
+        return sortedTimes[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    /**
+     * Write the render time of every frame, one frame per line.
+     */
+    void writeRenderTimes(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            writer.println("frame,render_nanos");
+            for (int frame = 0; frame < renderTimes.size(); frame++) {
+                writer.println(frame + "," + renderTimes.get(frame));
+            }
+        }
+    }
+
+    void shutdown() {
+        crtComposer.shutdown();
+    }
+}
@@ -0,0 +1,54 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RenderLoopTest {
+
+    private final Configuration configuration = Configuration.builder()
+            .brightColor(Color.GREEN).darkColor(Color.BLACK).frameRate(FrameScheduler.UNCAPPED).build();
+
+    @Test
+    public void testRendersOnRequestAndWhileFading() throws InterruptedException {
+        final AtomicInteger frames = new AtomicInteger(0);
+        final AtomicInteger fadeFrames = new AtomicInteger(0);
+        final RenderLoop.RenderRequestFlag renderRequests = new RenderLoop.RenderRequestFlag();
+        final RenderLoop renderLoop = new RenderLoop("Test render", configuration, false, renderRequests,
+                () -> {
+                    frames.incrementAndGet();
+                    return fadeFrames.getAndDecrement() > 0;
+                });
+
+        renderLoop.start();
+        try {
+            // The initial render, then idle
+            awaitFrames(frames, 1);
+            Thread.sleep(50);
+            assertEquals(1, frames.get());
+
+            // A request renders, and a fade of 3 frames renders 3 more, paced even though uncapped
+            fadeFrames.set(3);
+            final long start = System.nanoTime();
+            renderRequests.requestRender();
+            renderLoop.wakeUp();
+            awaitFrames(frames, 5);
+            final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue("Elapsed " + elapsedMillis + " ms", elapsedMillis >= 3 * 1000 / FrameScheduler.UNCAPPED_FADE_FRAME_RATE - 5);
+            Thread.sleep(50);
+            assertEquals(5, frames.get());
+        } finally {
+            renderLoop.stop();
+        }
+    }
+
+    private static void awaitFrames(AtomicInteger frames, int count) throws InterruptedException {
+        for (int wait = 0; (wait < 500) && (frames.get() < count); wait++) {
+            Thread.sleep(2);
+        }
+        assertEquals(count, frames.get());
+    }
+}
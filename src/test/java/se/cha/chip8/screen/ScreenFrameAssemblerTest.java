@@ -0,0 +1,161 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ScreenFrameAssemblerTest {
+
+    private final Random random = new Random(64 * 32);
+
+    @Test
+    public void testDeltaSequence() {
+        final ScreenFrameAssembler assembler = new ScreenFrameAssembler();
+        byte[] frame = randomFrame();
+        assembler.applyKeyframe(frame, 64, 32, 10);
+
+        for (long sequence = 11; sequence < 20; sequence++) {
+            final byte[] nextFrame = frame.clone();
+            nextFrame[(int) sequence * 8] ^= 0x18; // Change row 11..19
+            nextFrame[255] ^= 0x01; // and the last row
+
+            assertTrue(assembler.applyDelta(ScreenFrameAssembler.encodeDelta(frame, nextFrame, 64, 32), sequence));
+            assertArrayEquals(nextFrame, assembler.getFrame());
+            assertEquals(sequence, assembler.getFirstDirtyRow());
+            assertEquals(31, assembler.getLastDirtyRow());
+
+            frame = nextFrame;
+        }
+
+        assertEquals(9, assembler.getDeltaCount());
+        assertEquals(0, assembler.getDroppedDeltaCount());
+    }
+
+    @Test
+    public void testSequenceGapWaitsForKeyframe() {
+        final ScreenFrameAssembler assembler = new ScreenFrameAssembler();
+        final byte[] frame = randomFrame();
+        assembler.applyKeyframe(frame, 64, 32, 1);
+
+        final byte[] nextFrame = randomFrame();
+        final byte[] delta = ScreenFrameAssembler.encodeDelta(frame, nextFrame, 64, 32);
+
+        assertFalse(assembler.applyDelta(delta, 3)); // Delta 2 is lost
+        assertTrue(assembler.isAwaitingKeyframe());
+        assertFalse(assembler.applyDelta(delta, 4));
+        assertArrayEquals(frame, assembler.getFrame());
+
+        assembler.applyKeyframe(nextFrame, 64, 32, 5);
+        assertFalse(assembler.isAwaitingKeyframe());
+        assertArrayEquals(nextFrame, assembler.getFrame());
+        assertEquals(2, assembler.getDroppedDeltaCount());
+    }
+
+    @Test
+    public void testDuplicateDeltaIgnored() {
+        final ScreenFrameAssembler assembler = new ScreenFrameAssembler();
+        final byte[] frame = randomFrame();
+        final byte[] nextFrame = randomFrame();
+        final byte[] delta = ScreenFrameAssembler.encodeDelta(frame, nextFrame, 64, 32);
+
+        assembler.applyKeyframe(frame, 64, 32, 0xFFFFFFFFL);
+        assertTrue(assembler.applyDelta(delta, 0)); // Sequence number wraps
+        assertFalse(assembler.applyDelta(delta, 0));
+        assertFalse(assembler.isAwaitingKeyframe());
+        assertArrayEquals(nextFrame, assembler.getFrame());
+    }
+
+    @Test
+    public void testMalformedDelta() {
+        final ScreenFrameAssembler assembler = new ScreenFrameAssembler();
+        final byte[] frame = randomFrame();
+        assembler.applyKeyframe(frame, 64, 32, 1);
+
+        assertFalse(assembler.applyDelta(new byte[]{31, 6, 4, 1, 2, 3, 4}, 2)); // Span past end of row
+        assertTrue(assembler.isAwaitingKeyframe());
+        assertArrayEquals(frame, assembler.getFrame());
+    }
+
+    @Test
+    public void testDeltaBeforeKeyframe() {
+        final ScreenFrameAssembler assembler = new ScreenFrameAssembler();
+        assertFalse(assembler.applyDelta(new byte[]{0, 0, 1, 1}, 1));
+        assertEquals(1, assembler.getDroppedDeltaCount());
+    }
+
+    @Test
+    public void testPlanesDelta() {
+        final ScreenFrameAssembler assembler = new ScreenFrameAssembler();
+        final byte[] frame = new byte[2 * 128 * 64 / 8];
+        random.nextBytes(frame);
+        assembler.applyKeyframe(frame, 128, 64, 2, 1);
+        assertEquals(2, assembler.getPlanes());
+
+        // Change row 5 of the second plane only
+        final byte[] nextFrame = frame.clone();
+        nextFrame[(64 + 5) * 16 + 3] ^= 0x42;
+
+        assertTrue(assembler.applyDelta(ScreenFrameAssembler.encodeDelta(frame, nextFrame, 128, 2 * 64), 2));
+        assertArrayEquals(nextFrame, assembler.getFrame());
+        assertEquals(5, assembler.getFirstDirtyRow());
+        assertEquals(5, assembler.getLastDirtyRow());
+
+        // Every row of both planes of the largest two plane screen can be addressed
+        assertTrue(ScreenFrameAssembler.isValidScreenSize(256, 128, 2));
+        assertFalse(ScreenFrameAssembler.isValidScreenSize(256, 129, 2));
+        assertTrue(ScreenFrameAssembler.isValidScreenSize(256, 256, 1));
+
+        // Rows past the second plane
+        assertFalse(assembler.applyDelta(new byte[]{(byte) 128, 0, 1, 1}, 3));
+        assertTrue(assembler.isAwaitingKeyframe());
+    }
+
+    @Test
+    public void testInvalidKeyframesDropped() {
+        final ScreenFrameAssembler assembler = new ScreenFrameAssembler();
+        final byte[] frame = randomFrame();
+        assertTrue(assembler.applyKeyframe(frame, 64, 32, 1));
+
+        // Too large, not whole bytes wide, too many planes, and a screen not matching the size
+        assertFalse(assembler.applyKeyframe(new byte[256], 0x10000, 0x10000, 2));
+        assertFalse(assembler.applyKeyframe(new byte[256], 60, 32, 3));
+        assertFalse(assembler.applyKeyframe(new byte[512], 64, 32, 3, 4));
+        assertFalse(assembler.applyKeyframe(new byte[100], 64, 32, 5));
+        assertFalse(assembler.applyKeyframe(new byte[256], -64, 32, 6));
+        // More rows through both planes than a delta can address
+        assertFalse(assembler.applyKeyframe(new byte[2 * 32 * 256], 256, 256, 2, 8));
+        assertEquals(6, assembler.getInvalidKeyframeCount());
+
+        // The last valid frame is kept
+        assertArrayEquals(frame, assembler.getFrame());
+        assertEquals(64, assembler.getWidth());
+        assertEquals(32, assembler.getHeight());
+        assertEquals(1, assembler.getSequence());
+
+        // Unset sizes are the default size
+        assertTrue(assembler.applyKeyframe(new byte[256], 0, 0, 0, 7));
+        assertEquals(64, assembler.getWidth());
+        assertEquals(32, assembler.getHeight());
+        assertEquals(1, assembler.getPlanes());
+    }
+
+    @Test
+    public void testInvalidScreenSizeDropped() {
+        final ScreenState screenState = new ScreenState(new ScreenUnpacker(), () -> {
+        });
+        screenState.setChip8ScreenData(new byte[256], 64, 32, 1, 0, 31);
+        screenState.setChip8ScreenData(new byte[256], Integer.MAX_VALUE, 2, 1, 0, 1);
+        screenState.setChip8ScreenData(new byte[256], 60, 32, 1, 0, 31);
+        assertEquals(2, screenState.getInvalidScreenCount());
+        assertEquals(64, screenState.getScreen().getWidth());
+        assertEquals(32, screenState.getScreen().getHeight());
+    }
+
+    private byte[] randomFrame() {
+        final byte[] frame = new byte[64 * 32 / 8];
+        random.nextBytes(frame);
+        return frame;
+    }
+}
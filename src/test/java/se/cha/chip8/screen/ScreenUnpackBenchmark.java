@@ -0,0 +1,83 @@
+package se.cha.chip8.screen;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unpacking of a bit packed screen, lookup table unpacker compared to the original per pixel loop.
+ * Also a two plane (XO-CHIP) screen of the same size, through the lookup table unpacker.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScreenUnpackBenchmark {
+
+    @Param({"64x32", "128x64"})
+    public String screenSize;
+
+    private final Color brightColor = new Color(0x33, 0x99, 0x00);
+
+    private int width;
+    private int height;
+    private byte[] packedScreen;
+    private byte[] packedPlanes;
+    private int[] pixels;
+    private BufferedImage image;
+    private ScreenUnpacker screenUnpacker;
+
+    @Setup
+    public void setup() {
+        width = Integer.parseInt(screenSize.substring(0, screenSize.indexOf('x')));
+        height = Integer.parseInt(screenSize.substring(screenSize.indexOf('x') + 1));
+
+        packedScreen = new byte[width * height / 8];
+        new Random(42).nextBytes(packedScreen);
+        packedPlanes = new byte[2 * width * height / 8];
+        new Random(42).nextBytes(packedPlanes);
+        pixels = new int[width * height];
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        screenUnpacker = new ScreenUnpacker();
+    }
+
+    @Benchmark
+    public int[] lookupTable() {
+        screenUnpacker.unpack(packedScreen, width, height, 0, height - 1, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public int[] lookupTableTwoPlanes() {
+        screenUnpacker.unpack(packedPlanes, width, height, 2, 0, height - 1, pixels);
+        return pixels;
+    }
+
+    /**
+     * The original ScreenFrame.setChip8ScreenData loop.
+     */
+    @Benchmark
+    public BufferedImage perPixelLoop() {
+        final int pixelOn = new Color(brightColor.getRed(), brightColor.getGreen(), brightColor.getBlue(), 0xFF).getRGB();
+        final int pixelOff = new Color(brightColor.getRed(), brightColor.getGreen(), brightColor.getBlue(), 0x00).getRGB();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int streamPixelIndex = x + (y * width);
+                final int streamByteIndex = streamPixelIndex / 8;
+                final int streamBitInByteIndex = streamPixelIndex % 8;
+
+                final int streamBitValue = (packedScreen[streamByteIndex] >> (7 - streamBitInByteIndex)) & 0x00000001;
+                pixels[streamPixelIndex] = streamBitValue == 1 ? pixelOn : pixelOff;
+            }
+        }
+
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        return image;
+    }
+}
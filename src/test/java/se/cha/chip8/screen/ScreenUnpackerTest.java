@@ -0,0 +1,96 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ScreenUnpackerTest {
+
+    private static final int ON = 1;
+    private static final int OFF = 0;
+
+    private final ScreenUnpacker screenUnpacker = new ScreenUnpacker();
+
+    @Test
+    public void testSameAsPerPixelUnpack() {
+        for (int[] size : new int[][]{{64, 32}, {128, 64}, {13, 7}, {1, 1}}) {
+            final int width = size[0];
+            final int height = size[1];
+            final byte[] packed = new byte[(width * height + 7) / 8];
+            new Random(width).nextBytes(packed);
+
+            final int[] pixels = new int[width * height];
+            screenUnpacker.unpack(packed, width, height, 0, height - 1, pixels);
+
+            for (int i = 0; i < pixels.length; i++) {
+                final int bit = (packed[i / 8] >> (7 - (i % 8))) & 1;
+                assertEquals("Pixel " + i + " of " + width + "x" + height, (bit == 1) ? ON : OFF, pixels[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testRowRange() {
+        final byte[] packed = new byte[64 * 32 / 8];
+        Arrays.fill(packed, (byte) 0xFF);
+        final int[] pixels = new int[64 * 32];
+
+        screenUnpacker.unpack(packed, 64, 32, 3, 4, pixels);
+
+        assertEquals(0, pixels[3 * 64 - 1]);
+        assertEquals(ON, pixels[3 * 64]);
+        assertEquals(ON, pixels[5 * 64 - 1]);
+        assertEquals(0, pixels[5 * 64]);
+    }
+
+    @Test
+    public void testShortData() {
+        final int[] pixels = new int[64 * 32];
+        screenUnpacker.unpack(new byte[]{(byte) 0x80}, 64, 32, 0, 31, pixels);
+
+        assertEquals(ON, pixels[0]);
+        assertEquals(OFF, pixels[1]);
+        assertEquals(OFF, pixels[64 * 32 - 1]);
+    }
+
+    @Test
+    public void testPlanes() {
+        for (int[] size : new int[][]{{128, 64}, {13, 7}}) {
+            final int width = size[0];
+            final int height = size[1];
+            final int planeSize = width * height;
+            final byte[] packed = new byte[(planeSize * 2 + 7) / 8];
+            new Random(width).nextBytes(packed);
+
+            final int[] pixels = new int[planeSize];
+            Arrays.fill(pixels, 7);
+            screenUnpacker.unpack(packed, width, height, 2, 0, height - 1, pixels);
+
+            for (int i = 0; i < pixels.length; i++) {
+                final int firstPlaneBit = (packed[i / 8] >> (7 - (i % 8))) & 1;
+                final int secondPlaneBit = (packed[(planeSize + i) / 8] >> (7 - ((planeSize + i) % 8))) & 1;
+                assertEquals("Pixel " + i + " of " + width + "x" + height, firstPlaneBit | (secondPlaneBit << 1), pixels[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testPlanesRowRange() {
+        // First plane all lit, second plane lit in row 4 only
+        final byte[] packed = new byte[2 * 128 * 64 / 8];
+        Arrays.fill(packed, 0, 128 * 64 / 8, (byte) 0xFF);
+        Arrays.fill(packed, 128 * 64 / 8 + 4 * 16, 128 * 64 / 8 + 5 * 16, (byte) 0xFF);
+        final int[] pixels = new int[128 * 64];
+
+        screenUnpacker.unpack(packed, 128, 64, 2, 3, 4, pixels);
+
+        assertEquals(0, pixels[3 * 128 - 1]);
+        assertEquals(1, pixels[3 * 128]);
+        assertEquals(3, pixels[4 * 128]);
+        assertEquals(3, pixels[5 * 128 - 1]);
+        assertEquals(0, pixels[5 * 128]);
+    }
+}
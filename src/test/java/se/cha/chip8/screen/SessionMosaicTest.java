@@ -0,0 +1,109 @@
+package se.cha.chip8.screen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SessionMosaicTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+    private final Configuration configuration = Configuration.builder()
+            .brightColor(Color.GREEN).darkColor(Color.BLACK).renderThreads(2).outputSize(new Dimension(320, 200)).build();
+
+    @Test
+    public void testSessionsTiled() throws IOException, InterruptedException {
+        final SessionServer sessionServer = new SessionServer(() -> {
+        }, 8, false);
+        sessionServer.onPacketReceived(message(1), null);
+        sessionServer.onPacketReceived(message(2), null);
+        sessionServer.onPacketsDrained();
+
+        final SessionMosaic sessionMosaic = new SessionMosaic(configuration);
+        try {
+            final Dimension availableSize = new Dimension(640, 400);
+            sessionMosaic.render(sessionServer.getSessions(), availableSize);
+            assertEquals(640, sessionMosaic.getImage().getWidth());
+            assertEquals(400, sessionMosaic.getImage().getHeight());
+            assertEquals(Collections.singletonList(new Rectangle(0, 0, 640, 400)), sessionMosaic.getDirtyAreas());
+            for (Session session : sessionServer.getSessions()) {
+                assertNotNull(session.getCrtComposer());
+            }
+
+            // Once the phosphor settles nothing changes, until a session changes
+            for (int frame = 0; (frame < 1000) && sessionMosaic.render(sessionServer.getSessions(), availableSize); frame++) {
+                assertFalse(sessionMosaic.getDirtyAreas().isEmpty());
+            }
+            assertFalse(sessionMosaic.render(sessionServer.getSessions(), availableSize));
+            assertTrue(sessionMosaic.getDirtyAreas().isEmpty());
+
+            sessionServer.onPacketReceived(message(2, 0x00), null);
+            sessionServer.onPacketsDrained();
+            sessionMosaic.render(sessionServer.getSessions(), availableSize);
+            assertFalse(sessionMosaic.getDirtyAreas().isEmpty());
+            for (Rectangle area : sessionMosaic.getDirtyAreas()) {
+                assertTrue(area.toString(), new Rectangle(0, 0, 640, 400).contains(area));
+            }
+        } finally {
+            sessionMosaic.shutdown();
+        }
+    }
+
+    @Test
+    public void testHeadlessFramesWritten() throws IOException, InterruptedException {
+        final List<Dimension> frameSizes = Collections.synchronizedList(new ArrayList<>());
+        final HeadlessMosaic headlessMosaic = new HeadlessMosaic(configuration);
+        final SessionServer sessionServer = new SessionServer(headlessMosaic, 64, false);
+        headlessMosaic.initialize(sessionServer, new FrameSink() {
+            @Override
+            public void writeFrame(int[] argbPixels, int width, int height) {
+                assertEquals(width * height, argbPixels.length);
+                frameSizes.add(new Dimension(width, height));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        try {
+            // More sessions than fit in the output size, the frames keep the output size
+            for (int session = 0; session < 40; session++) {
+                sessionServer.onPacketReceived(message(session), null);
+            }
+            sessionServer.onPacketsDrained();
+
+            for (int wait = 0; (wait < 500) && (frameSizes.size() < 5); wait++) {
+                Thread.sleep(10);
+            }
+        } finally {
+            headlessMosaic.stopRendering();
+        }
+
+        assertTrue(frameSizes.size() >= 5);
+        for (Dimension frameSize : new ArrayList<>(frameSizes)) {
+            assertEquals(new Dimension(320, 200), frameSize);
+        }
+    }
+
+    private byte[] message(long session) throws IOException {
+        return message(session, 0x80);
+    }
+
+    private byte[] message(long session, int firstScreenByte) throws IOException {
+        final PeripheralState state = new PeripheralState();
+        state.setScreen(new byte[256]);
+        state.getScreen()[0] = (byte) firstScreenByte;
+        state.setScreenWidth(64);
+        state.setScreenHeight(32);
+        state.setSession(session);
+        return objectMapper.writeValueAsBytes(state);
+    }
+}
@@ -0,0 +1,133 @@
+package se.cha.chip8.screen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.awt.*;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SessionServerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+
+    @Test
+    public void testSessionsBySourceAndId() throws IOException {
+        final AtomicInteger renderRequests = new AtomicInteger(0);
+        final SessionServer sessionServer = new SessionServer(renderRequests::incrementAndGet, 8, false);
+        final InetSocketAddress firstSource = new InetSocketAddress("127.0.0.1", 40001);
+        final InetSocketAddress secondSource = new InetSocketAddress("127.0.0.1", 40002);
+
+        sessionServer.onPacketReceived(message(0x0001, 0x80, PeripheralState.NO_SESSION), firstSource);
+        sessionServer.onPacketReceived(message(0x0002, 0x40, PeripheralState.NO_SESSION), secondSource);
+        // Session ids win over source addresses, both messages belong to session 7
+        sessionServer.onPacketReceived(message(0x0003, 0x20, 7), firstSource);
+        sessionServer.onPacketReceived(message(0x0004, 0x10, 7), secondSource);
+        sessionServer.onPacketsDrained();
+
+        final List<Session> sessions = sessionServer.getSessions();
+        assertEquals(3, sessions.size());
+        assertEquals("127.0.0.1:40001", sessions.get(0).getName());
+        assertEquals("127.0.0.1:40002", sessions.get(1).getName());
+        assertEquals("session 7", sessions.get(2).getName());
+
+        assertEquals(0x0001, sessions.get(0).getScreenState().getKeyState());
+        assertEquals(0x0002, sessions.get(1).getScreenState().getKeyState());
+        assertEquals(0x0004, sessions.get(2).getScreenState().getKeyState());
+
+        // Each session has a screen of its own, the latest screen of the burst
+        assertEquals(1, sessions.get(0).getScreenState().getScreen().getPixels()[0]);
+        assertEquals(0, sessions.get(0).getScreenState().getScreen().getPixels()[1]);
+        assertEquals(1, sessions.get(1).getScreenState().getScreen().getPixels()[1]);
+        assertEquals(1, sessions.get(2).getScreenState().getScreen().getPixels()[3]);
+        assertEquals(0, sessions.get(2).getScreenState().getScreen().getPixels()[2]);
+        assertEquals(1, sessions.get(2).getStateCoalescer().getDroppedFrameCount());
+
+        assertTrue(renderRequests.get() > 0);
+    }
+
+    @Test
+    public void testMaxSessions() throws IOException {
+        final SessionServer sessionServer = new SessionServer(() -> {
+        }, 2, false);
+        for (int session = 0; session < 5; session++) {
+            sessionServer.onPacketReceived(message(session, 0x80, session), null);
+        }
+        sessionServer.onPacketsDrained();
+
+        assertEquals(2, sessionServer.getSessions().size());
+        assertTrue(sessionServer.getSessionReport(System.nanoTime()).endsWith("packets of rejected sessions 3"));
+    }
+
+    @Test
+    public void testIdleSessionsDroppedForNewSessions() throws IOException, InterruptedException {
+        final SessionServer sessionServer = new SessionServer(() -> {
+        }, 2, 500_000_000L, false);
+        sessionServer.onPacketReceived(message(0x0001, 0x80, 1), null);
+        sessionServer.onPacketReceived(message(0x0002, 0x80, 2), null);
+        sessionServer.onPacketsDrained();
+
+        // Sessions that are not idle are kept
+        sessionServer.onPacketReceived(message(0x0003, 0x80, 3), null);
+        sessionServer.onPacketsDrained();
+        assertEquals(2, sessionServer.getSessions().size());
+
+        // Session 2 keeps sending, session 1 is silent and makes room for session 3
+        Thread.sleep(1000);
+        sessionServer.onPacketReceived(message(0x0002, 0x80, 2), null);
+        sessionServer.onPacketReceived(message(0x0003, 0x80, 3), null);
+        sessionServer.onPacketsDrained();
+
+        final List<Session> sessions = sessionServer.getSessions();
+        assertEquals(2, sessions.size());
+        assertEquals("session 2", sessions.get(0).getName());
+        assertEquals("session 3", sessions.get(1).getName());
+        assertEquals(0x0003, sessions.get(1).getScreenState().getKeyState());
+    }
+
+    @Test
+    public void testRenderSessions() throws IOException {
+        final SessionServer sessionServer = new SessionServer(() -> {
+        }, 8, false);
+        sessionServer.onPacketReceived(message(0x0001, 0x80, 1), null);
+        sessionServer.onPacketReceived(message(0x0002, 0x80, 2), null);
+        sessionServer.onPacketsDrained();
+
+        // Sessions rendered in the same size share the static monitor layers, and a single threaded pipeline
+        final Configuration configuration = Configuration.builder().brightColor(Color.GREEN).darkColor(Color.BLACK).build();
+        final PostProcessingPipeline pipeline = PostProcessingPipeline.singleThreaded();
+        final Dimension monitorSize = new Dimension(286, 214);
+        for (Session session : sessionServer.getSessions()) {
+            assertTrue(session.isRenderNeeded(monitorSize));
+            session.render(configuration, pipeline, monitorSize);
+            assertEquals(monitorSize.width, session.getCrtComposer().getImage().getWidth());
+            assertEquals(monitorSize.height, session.getCrtComposer().getImage().getHeight());
+        }
+
+        // Renders are needed until the phosphor settles, then only a change or a new size needs a render
+        final Session session = sessionServer.getSessions().get(0);
+        for (int frame = 0; (frame < 1000) && session.isRenderNeeded(monitorSize); frame++) {
+            session.render(configuration, pipeline, monitorSize);
+        }
+        assertFalse(session.isRenderNeeded(monitorSize));
+        assertTrue(session.isRenderNeeded(new Dimension(143, 107)));
+        session.getScreenState().setChip8KeyState(0x0003);
+        assertTrue(session.isRenderNeeded(monitorSize));
+    }
+
+    private byte[] message(int keys, int firstScreenByte, long session) throws IOException {
+        final PeripheralState state = new PeripheralState();
+        state.setKeys(keys);
+        state.setScreen(new byte[256]);
+        state.getScreen()[0] = (byte) firstScreenByte;
+        state.setScreenWidth(64);
+        state.setScreenHeight(32);
+        state.setSession(session);
+        return objectMapper.writeValueAsBytes(state);
+    }
+}
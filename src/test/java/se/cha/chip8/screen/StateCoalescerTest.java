@@ -0,0 +1,159 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StateCoalescerTest {
+
+    @Test
+    public void testBurstOfScreensIsOneUpdate() {
+        final RecordingTarget target = new RecordingTarget();
+        final StateCoalescer coalescer = new StateCoalescer(target);
+
+        final byte[] frame = new byte[256];
+        coalescer.add(keyframe(frame, 1));
+        coalescer.flush();
+        target.screens.clear();
+
+        // Three deltas changing row 3, row 20 and row 10, in one burst
+        byte[] previousFrame = frame;
+        final int[] rows = {3, 20, 10};
+        for (int i = 0; i < rows.length; i++) {
+            final byte[] nextFrame = previousFrame.clone();
+            nextFrame[rows[i] * 8] ^= 0x01;
+            coalescer.add(delta(ScreenFrameAssembler.encodeDelta(previousFrame, nextFrame, 64, 32), 2 + i));
+            previousFrame = nextFrame;
+        }
+        assertTrue(target.screens.isEmpty());
+
+        coalescer.flush();
+        assertEquals(1, target.screens.size());
+        assertArrayEquals(previousFrame, target.screens.get(0).data);
+        assertEquals(3, target.screens.get(0).firstRow);
+        assertEquals(20, target.screens.get(0).lastRow);
+
+        assertEquals(4, coalescer.getPacketCount());
+        assertEquals(2, coalescer.getBurstCount());
+        assertEquals(2, coalescer.getDroppedFrameCount());
+    }
+
+    @Test
+    public void testKeysFoldedAndSoundPassedOn() {
+        final RecordingTarget target = new RecordingTarget();
+        final StateCoalescer coalescer = new StateCoalescer(target);
+
+        coalescer.add(peripheralState(0x0001, false));
+        coalescer.add(peripheralState(0x0003, true));
+        coalescer.add(peripheralState(0x0007, true));
+
+        // The beep starts right away
+        assertEquals(1, target.peripheralStates.size());
+        assertEquals("3 true", target.peripheralStates.get(0));
+
+        // Only the latest key state is passed on at the end of the burst
+        coalescer.flush();
+        assertEquals(2, target.peripheralStates.size());
+        assertEquals("7 true", target.peripheralStates.get(1));
+        assertTrue(target.screens.isEmpty());
+
+        // The end of a beep started in an earlier burst is passed on right away
+        coalescer.add(peripheralState(0x0007, false));
+        assertEquals(3, target.peripheralStates.size());
+        assertEquals("7 false", target.peripheralStates.get(2));
+
+        // Nothing changed in the next burst
+        coalescer.flush();
+        coalescer.add(peripheralState(0x0007, false));
+        coalescer.flush();
+        assertEquals(3, target.peripheralStates.size());
+    }
+
+    @Test
+    public void testBeepWithinBurstLatched() {
+        final RecordingTarget target = new RecordingTarget();
+        final StateCoalescer coalescer = new StateCoalescer(target);
+
+        // A beep starting and ending within one burst
+        coalescer.add(peripheralState(0x0001, false));
+        coalescer.add(peripheralState(0x0003, true));
+        coalescer.add(peripheralState(0x0003, false));
+        coalescer.add(peripheralState(0x0007, false));
+        assertEquals(1, target.peripheralStates.size());
+        assertEquals("3 true", target.peripheralStates.get(0));
+
+        // The beep is still on at the end of the burst
+        coalescer.flush();
+        assertEquals(2, target.peripheralStates.size());
+        assertEquals("7 true", target.peripheralStates.get(1));
+
+        // and ends with the first message of the next burst
+        coalescer.add(peripheralState(0x0007, false));
+        assertEquals(3, target.peripheralStates.size());
+        assertEquals("7 false", target.peripheralStates.get(2));
+        coalescer.flush();
+        assertEquals(3, target.peripheralStates.size());
+
+        // A beep going on again in the next burst is not interrupted
+        coalescer.add(peripheralState(0x0007, true));
+        coalescer.add(peripheralState(0x0007, false));
+        coalescer.flush();
+        coalescer.add(peripheralState(0x0007, true));
+        coalescer.flush();
+        assertEquals(4, target.peripheralStates.size());
+        assertEquals("7 true", target.peripheralStates.get(3));
+    }
+
+    private static PeripheralState keyframe(byte[] screen, long sequence) {
+        final PeripheralState state = new PeripheralState();
+        state.setScreen(screen);
+        state.setScreenWidth(64);
+        state.setScreenHeight(32);
+        state.setSequence(sequence);
+        return state;
+    }
+
+    private static PeripheralState delta(byte[] screenDelta, long sequence) {
+        final PeripheralState state = new PeripheralState();
+        state.setScreenDelta(screenDelta);
+        state.setSequence(sequence);
+        return state;
+    }
+
+    private static PeripheralState peripheralState(int keys, boolean sound) {
+        final PeripheralState state = new PeripheralState();
+        state.setKeys(keys);
+        state.setSound(sound);
+        return state;
+    }
+
+    private static class RecordingTarget implements StateCoalescer.Target {
+        final List<Screen> screens = new ArrayList<>();
+        final List<String> peripheralStates = new ArrayList<>();
+
+        @Override
+        public void setChip8ScreenData(byte[] imageBitData, int screenWidth, int screenHeight, int screenPlanes, int firstRow, int lastRow) {
+            screens.add(new Screen(imageBitData.clone(), firstRow, lastRow));
+        }
+
+        @Override
+        public void setChip8PeripheralState(int keyState, boolean soundState) {
+            peripheralStates.add(Integer.toHexString(keyState) + " " + soundState);
+        }
+    }
+
+    private static class Screen {
+        final byte[] data;
+        final int firstRow;
+        final int lastRow;
+
+        Screen(byte[] data, int firstRow, int lastRow) {
+            this.data = data;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package se.cha.chip8.screen;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class TripleBufferTest {
+
+    @Test
+    public void testLatestPublishedBuffer() {
+        final TripleBuffer<int[]> tripleBuffer = new TripleBuffer<>(() -> new int[1]);
+        assertFalse(tripleBuffer.update());
+
+        tripleBuffer.getBackBuffer()[0] = 1;
+        tripleBuffer.publish();
+        tripleBuffer.getBackBuffer()[0] = 2;
+        tripleBuffer.publish();
+
+        // Buffer 1 is skipped, and buffer 2 is taken once
+        assertTrue(tripleBuffer.update());
+        assertEquals(2, tripleBuffer.getFrontBuffer()[0]);
+        assertFalse(tripleBuffer.update());
+        assertEquals(2, tripleBuffer.getFrontBuffer()[0]);
+
+        // The writer never gets the front buffer to fill
+        tripleBuffer.getBackBuffer()[0] = 3;
+        assertNotSame(tripleBuffer.getFrontBuffer(), tripleBuffer.getBackBuffer());
+        tripleBuffer.publish();
+        assertNotSame(tripleBuffer.getFrontBuffer(), tripleBuffer.getBackBuffer());
+        assertEquals(2, tripleBuffer.getFrontBuffer()[0]);
+        assertTrue(tripleBuffer.update());
+        assertEquals(3, tripleBuffer.getFrontBuffer()[0]);
+    }
+
+    @Test
+    public void testNoTornBuffers() throws InterruptedException {
+        final TripleBuffer<int[]> tripleBuffer = new TripleBuffer<>(() -> new int[256]);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+
+        // Each buffer is filled with one frame number, a torn buffer has mixed frame numbers
+        final Thread writer = new Thread(() -> {
+            for (int frame = 1; frame <= 200_000; frame++) {
+                Arrays.fill(tripleBuffer.getBackBuffer(), frame);
+                tripleBuffer.publish();
+            }
+            writing.set(false);
+        });
+        writer.start();
+
+        int lastFrame = 0;
+        while (true) {
+            final boolean written = !writing.get();
+            if (tripleBuffer.update()) {
+                final int[] buffer = tripleBuffer.getFrontBuffer();
+                final int frame = buffer[0];
+                for (int value : buffer) {
+                    assertEquals(frame, value);
+                }
+                assertTrue(frame > lastFrame);
+                lastFrame = frame;
+            } else if (written) {
+                break;
+            }
+        }
+        writer.join();
+
+        assertEquals(200_000, lastFrame);
+    }
+}